@@ -26,4 +26,7 @@ public interface EventConstants {
 
   String INITIALIZE = "initialize";
   String SELECTOR_INITIALIZE = SELECTOR_NAME + " = '" + INITIALIZE + "'";
+
+  String REPORT_JOB_COMPLETED = "report-job-completed";
+  String SELECTOR_REPORT_JOB_COMPLETED = SELECTOR_NAME + " = '" + REPORT_JOB_COMPLETED + "'";
 }
@@ -19,8 +19,10 @@
 package org.apache.fineract.cn.reporting.api.v1.client;
 
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportJob;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportSchedule;
 import java.util.List;
 import org.apache.fineract.cn.api.annotation.ThrowsException;
 import org.apache.fineract.cn.api.annotation.ThrowsExceptions;
@@ -64,14 +66,99 @@ public interface ReportManager {
   )
   @ThrowsExceptions({
       @ThrowsException(status = HttpStatus.NOT_FOUND, exception = ReportNotFoundException.class),
-      @ThrowsException(status = HttpStatus.BAD_REQUEST, exception = ReportParameterValidationException.class)
+      @ThrowsException(status = HttpStatus.BAD_REQUEST, exception = ReportParameterValidationException.class),
+      @ThrowsException(status = HttpStatus.TOO_MANY_REQUESTS, exception = ReportRejectedException.class)
   })
   ReportPage generateReport(@PathVariable("category") final String category,
                             @PathVariable("identifier") final String identifier,
                             @RequestBody final ReportRequest reportRequest,
                             @RequestParam(value = "pageIndex", required = false) final Integer pageIndex,
+                            @RequestParam(value = "size", required = false) final Integer size,
+                            @RequestParam(value = "cursor", required = false) final String cursor);
+
+  @RequestMapping(
+      value = "/categories/{category}/reports/{identifier}/jobs",
+      method = RequestMethod.POST,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  @ThrowsExceptions({
+      @ThrowsException(status = HttpStatus.NOT_FOUND, exception = ReportNotFoundException.class),
+      @ThrowsException(status = HttpStatus.BAD_REQUEST, exception = ReportParameterValidationException.class),
+      @ThrowsException(status = HttpStatus.TOO_MANY_REQUESTS, exception = ReportRejectedException.class)
+  })
+  ReportJob submitReportJob(@PathVariable("category") final String category,
+                            @PathVariable("identifier") final String identifier,
+                            @RequestBody final ReportRequest reportRequest,
                             @RequestParam(value = "size", required = false) final Integer size);
 
+  @RequestMapping(
+      value = "/jobs/{jobIdentifier}",
+      method = RequestMethod.GET,
+      produces = MediaType.ALL_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  @ThrowsExceptions({
+      @ThrowsException(status = HttpStatus.NOT_FOUND, exception = ReportNotFoundException.class)
+  })
+  ReportJob fetchReportJob(@PathVariable("jobIdentifier") final String jobIdentifier);
+
+  @RequestMapping(
+      value = "/jobs/{jobIdentifier}/pages/{pageIndex}",
+      method = RequestMethod.GET,
+      produces = MediaType.ALL_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  @ThrowsExceptions({
+      @ThrowsException(status = HttpStatus.NOT_FOUND, exception = ReportNotFoundException.class),
+      @ThrowsException(status = HttpStatus.CONFLICT, exception = ReportJobNotDoneException.class)
+  })
+  ReportPage fetchReportJobPage(@PathVariable("jobIdentifier") final String jobIdentifier,
+                                @PathVariable("pageIndex") final Integer pageIndex);
+
+  @RequestMapping(
+      value = "/requests/{requestId}",
+      method = RequestMethod.DELETE,
+      produces = MediaType.ALL_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  @ThrowsExceptions({
+      @ThrowsException(status = HttpStatus.NOT_FOUND, exception = ReportNotFoundException.class)
+  })
+  void cancelReportRequest(@PathVariable("requestId") final String requestId);
+
+  @RequestMapping(
+      value = "/schedules",
+      method = RequestMethod.POST,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  @ThrowsExceptions({
+      @ThrowsException(status = HttpStatus.NOT_FOUND, exception = ReportNotFoundException.class),
+      @ThrowsException(status = HttpStatus.BAD_REQUEST, exception = ReportParameterValidationException.class),
+      @ThrowsException(status = HttpStatus.CONFLICT, exception = ReportScheduleAlreadyExistsException.class)
+  })
+  void createReportSchedule(@RequestBody final ReportSchedule reportSchedule);
+
+  @RequestMapping(
+      value = "/schedules",
+      method = RequestMethod.GET,
+      produces = MediaType.ALL_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  List<ReportSchedule> fetchReportSchedules();
+
+  @RequestMapping(
+      value = "/schedules/{identifier}",
+      method = RequestMethod.DELETE,
+      produces = MediaType.ALL_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  @ThrowsExceptions({
+      @ThrowsException(status = HttpStatus.NOT_FOUND, exception = ReportNotFoundException.class)
+  })
+  void deleteReportSchedule(@PathVariable("identifier") final String identifier);
+
   @RequestMapping(
       value = "categories/{category}/definitions/{identifier}",
       method = RequestMethod.GET,
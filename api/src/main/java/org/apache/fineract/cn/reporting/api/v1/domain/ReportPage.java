@@ -30,6 +30,7 @@ public class ReportPage {
   private List<Row> rows;
   private Footer footer;
   private boolean hasMore;
+  private String cursor;
 
   public ReportPage() {
     super();
@@ -98,4 +99,12 @@ public class ReportPage {
   public boolean isHasMore() {
     return hasMore;
   }
+
+  public String getCursor() {
+    return this.cursor;
+  }
+
+  public void setCursor(final String cursor) {
+    this.cursor = cursor;
+  }
 }
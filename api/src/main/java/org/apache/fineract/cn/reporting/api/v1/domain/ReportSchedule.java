@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.api.v1.domain;
+
+public class ReportSchedule {
+
+  private String identifier;
+  private String category;
+  private String reportIdentifier;
+  private String cronExpression;
+  private ReportRequest reportRequest;
+  private Integer size;
+  private String lastRunOn;
+  private String lastJobIdentifier;
+  private String createdBy;
+  private String createdOn;
+
+  public ReportSchedule() {
+    super();
+  }
+
+  public String getIdentifier() {
+    return this.identifier;
+  }
+
+  public void setIdentifier(final String identifier) {
+    this.identifier = identifier;
+  }
+
+  public String getCategory() {
+    return this.category;
+  }
+
+  public void setCategory(final String category) {
+    this.category = category;
+  }
+
+  public String getReportIdentifier() {
+    return this.reportIdentifier;
+  }
+
+  public void setReportIdentifier(final String reportIdentifier) {
+    this.reportIdentifier = reportIdentifier;
+  }
+
+  public String getCronExpression() {
+    return this.cronExpression;
+  }
+
+  public void setCronExpression(final String cronExpression) {
+    this.cronExpression = cronExpression;
+  }
+
+  public ReportRequest getReportRequest() {
+    return this.reportRequest;
+  }
+
+  public void setReportRequest(final ReportRequest reportRequest) {
+    this.reportRequest = reportRequest;
+  }
+
+  public Integer getSize() {
+    return this.size;
+  }
+
+  public void setSize(final Integer size) {
+    this.size = size;
+  }
+
+  public String getLastRunOn() {
+    return this.lastRunOn;
+  }
+
+  public void setLastRunOn(final String lastRunOn) {
+    this.lastRunOn = lastRunOn;
+  }
+
+  public String getLastJobIdentifier() {
+    return this.lastJobIdentifier;
+  }
+
+  public void setLastJobIdentifier(final String lastJobIdentifier) {
+    this.lastJobIdentifier = lastJobIdentifier;
+  }
+
+  public String getCreatedBy() {
+    return this.createdBy;
+  }
+
+  public void setCreatedBy(final String createdBy) {
+    this.createdBy = createdBy;
+  }
+
+  public String getCreatedOn() {
+    return this.createdOn;
+  }
+
+  public void setCreatedOn(final String createdOn) {
+    this.createdOn = createdOn;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.service.internal.service.AdmissionRejectedException;
+import org.apache.fineract.cn.reporting.service.internal.service.BulkheadDataSource;
+import org.apache.fineract.cn.reporting.service.internal.service.ConnectionBulkheads;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands out connections of a database stand-in through a bulk bulkhead of two connections, one
+ * per tenant, that rejects right away instead of waiting.
+ */
+public class TestConnectionBulkheads {
+
+  private final StandIn database = new StandIn();
+  private ConnectionBulkheads connectionBulkheads;
+  private BulkheadDataSource dataSource;
+
+  @Before
+  public void partition() {
+    final HashMap<String, Object> properties = new HashMap<>();
+    properties.put("reporting.bulkheads.bulk.size", 2);
+    properties.put("reporting.bulkheads.bulk.tenantLimit", 1);
+    final StandardEnvironment environment = new StandardEnvironment();
+    environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+
+    this.connectionBulkheads = new ConnectionBulkheads(LoggerFactory.getLogger(TestConnectionBulkheads.class),
+        environment, 0L);
+    this.dataSource = new BulkheadDataSource(this.database, () -> this.connectionBulkheads);
+    TenantContextHolder.setIdentifier("first");
+    ConnectionBulkheads.set(ReportClass.BULK);
+  }
+
+  @After
+  public void clear() {
+    ConnectionBulkheads.clear();
+    TenantContextHolder.clear();
+  }
+
+  @Test
+  public void shouldNotWaitForItselfOnSameThread() throws SQLException {
+    this.dataSource.getConnection();
+    this.dataSource.getConnection();
+
+    Assert.assertEquals(2, this.database.connections);
+    Assert.assertEquals(1L, this.bulkhead().getAcquiredCount());
+    Assert.assertEquals(1, this.bulkhead().getInUse());
+  }
+
+  @Test
+  public void shouldReleaseOnceOnClose() throws SQLException {
+    final Connection connection = this.dataSource.getConnection();
+    connection.close();
+    connection.close();
+
+    Assert.assertEquals(0, this.bulkhead().getInUse());
+    Assert.assertNull(this.connectOnOtherThread("first"));
+    Assert.assertEquals(0, this.bulkhead().getInUse());
+  }
+
+  @Test
+  public void shouldReleaseIfConnectingFails() {
+    this.database.refusing = true;
+    try {
+      this.dataSource.getConnection();
+      Assert.fail("Connecting must fail.");
+    } catch (final SQLException sqlex) {
+      // expected
+    }
+
+    Assert.assertEquals(0, this.bulkhead().getInUse());
+    this.database.refusing = false;
+    Assert.assertNull(this.connectOnOtherThread("first"));
+  }
+
+  @Test
+  public void shouldRejectTenantOverItsLimitOnly() throws SQLException {
+    this.dataSource.getConnection();
+
+    Assert.assertTrue(this.connectOnOtherThread("first") instanceof AdmissionRejectedException);
+    Assert.assertNull(this.connectOnOtherThread("second"));
+    Assert.assertEquals(1L, this.bulkhead().getRejectedCount());
+    Assert.assertEquals(1, this.bulkhead().getInUse());
+  }
+
+  @Test
+  public void shouldRejectOverClassSize() throws SQLException {
+    this.dataSource.getConnection();
+    final Connection held = this.connectAndHoldOnOtherThread("second");
+
+    Assert.assertTrue(this.connectOnOtherThread("third") instanceof AdmissionRejectedException);
+    Assert.assertEquals(2, this.bulkhead().getInUse());
+
+    held.close();
+    Assert.assertNull(this.connectOnOtherThread("third"));
+  }
+
+  private ConnectionBulkheads.Bulkhead bulkhead() {
+    return this.connectionBulkheads.getBulkheads().get(ReportClass.BULK);
+  }
+
+  // a report of its own, which takes a connection, closes it and reports what it failed with, if anything
+  private Throwable connectOnOtherThread(final String tenant) {
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    this.runAs(tenant, () -> {
+      try {
+        this.dataSource.getConnection().close();
+      } catch (final SQLException | RuntimeException ex) {
+        failure.set(ex);
+      }
+    });
+    return failure.get();
+  }
+
+  private Connection connectAndHoldOnOtherThread(final String tenant) {
+    final AtomicReference<Connection> connection = new AtomicReference<>();
+    this.runAs(tenant, () -> {
+      try {
+        connection.set(this.dataSource.getConnection());
+      } catch (final SQLException sqlex) {
+        throw new IllegalStateException(sqlex);
+      }
+    });
+    Assert.assertNotNull(connection.get());
+    return connection.get();
+  }
+
+  private void runAs(final String tenant, final Runnable report) {
+    final Thread thread = new Thread(() -> {
+      TenantContextHolder.setIdentifier(tenant);
+      ConnectionBulkheads.set(ReportClass.BULK);
+      try {
+        report.run();
+      } finally {
+        ConnectionBulkheads.clear();
+        TenantContextHolder.clear();
+      }
+    });
+    thread.start();
+    try {
+      thread.join();
+    } catch (final InterruptedException iex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(iex);
+    }
+  }
+
+  private static class StandIn extends AbstractDataSource {
+
+    private volatile int connections;
+    private volatile boolean refusing;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      if (this.refusing) {
+        throw new SQLException("Connection refused.");
+      }
+      this.connections++;
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+          (proxy, method, args) -> null);
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+      return this.getConnection();
+    }
+  }
+}
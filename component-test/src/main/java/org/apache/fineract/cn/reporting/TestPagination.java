@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting;
+
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TestPagination {
+
+  @Test
+  public void shouldRoundTripLongCursor() {
+    final PageCursor pageCursor = PageCursor.decode(PageCursor.of(42L).encode());
+    Assert.assertEquals(Collections.singletonList(42L), pageCursor.getKeys());
+    Assert.assertTrue(pageCursor.getKeys().get(0) instanceof Long);
+  }
+
+  @Test
+  public void shouldRoundTripDecimalCursor() {
+    final BigDecimal fraction = new BigDecimal("1250.75");
+    final BigDecimal beyondLong = new BigDecimal("123456789012345678901");
+    final List<Object> keys = PageCursor.decode(PageCursor.of(fraction, beyondLong).encode()).getKeys();
+
+    Assert.assertTrue(keys.get(0) instanceof BigDecimal);
+    Assert.assertEquals(0, fraction.compareTo((BigDecimal) keys.get(0)));
+    Assert.assertTrue(keys.get(1) instanceof BigDecimal);
+    Assert.assertEquals(0, beyondLong.compareTo((BigDecimal) keys.get(1)));
+  }
+
+  @Test
+  public void shouldRoundTripMixedCursor() {
+    final PageCursor pageCursor = PageCursor.decode(PageCursor.of("CST-\"1\"", 7L).encode());
+    Assert.assertEquals(Arrays.asList("CST-\"1\"", 7L), pageCursor.getKeys());
+  }
+
+  @Test
+  public void shouldTreatMissingCursorAsFirstPage() {
+    Assert.assertNull(PageCursor.decode(null));
+    Assert.assertNull(PageCursor.decode(""));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectMalformedCursor() {
+    PageCursor.decode("not-a-cursor");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNestedCursorKeys() {
+    PageCursor.decode(PageCursor.of(Collections.singletonList(1L)).encode());
+  }
+
+  @Test
+  public void shouldDecodeCursorOfIssuingReport() {
+    final String cursor = PageCursor.bind(PageCursor.of("CST-0020").encode(), "Customer", "Listing");
+    Assert.assertEquals(Collections.singletonList("CST-0020"), PageCursor.decode(cursor, "Customer", "Listing").getKeys());
+    Assert.assertNull(PageCursor.bind(null, "Customer", "Listing"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectCursorOfOtherReport() {
+    final String cursor = PageCursor.bind(PageCursor.of("CST-0020").encode(), "Customer", "Listing");
+    PageCursor.decode(cursor, "Deposit", "Listing");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectUnboundCursor() {
+    PageCursor.decode(PageCursor.of("CST-0020").encode(), "Customer", "Listing");
+  }
+
+  @Test
+  public void shouldGeneratePageAtIndexWithoutCursor() {
+    final ReportSpecification reportSpecification = new OffsetOnlySpecification();
+    final ReportPage reportPage = reportSpecification.generateReport(emptyRequest(), 2, 10);
+    Assert.assertEquals("2/10", reportPage.getName());
+  }
+
+  @Test
+  public void shouldSeekPastSingleKey() {
+    final PageCursor pageCursor = PageCursor.of("CST-0020");
+    final BindParameters bindParameters = BindParameters.of(emptyRequest(), Pagination.of(0, 10, pageCursor));
+
+    Assert.assertEquals("cst.identifier > ?1", pageCursor.buildCriteria(bindParameters, "cst.identifier"));
+    Assert.assertEquals(Arrays.asList("CST-0020", 11), bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldSeekPastKeyTuple() {
+    final PageCursor pageCursor = PageCursor.decode(PageCursor.of("2018-01-31", 1017L).encode());
+    final Pagination pagination = Pagination.of(3, 10, pageCursor);
+    final BindParameters bindParameters = BindParameters.of(emptyRequest(), pagination);
+
+    Assert.assertEquals("(trx.transaction_date, trx.id) > (?1, ?2)",
+        pageCursor.buildCriteria(bindParameters, "trx.transaction_date", "trx.id"));
+
+    // a cursor replaces the offset, whatever the page index
+    final StringBuilder query = new StringBuilder();
+    pagination.appendLimit(query, bindParameters);
+    Assert.assertEquals(" LIMIT ?3", query.toString());
+    Assert.assertEquals(Arrays.asList("2018-01-31", 1017L, 11), bindParameters.getValues());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectCursorOfOtherOrdering() {
+    final PageCursor pageCursor = PageCursor.of("CST-0020");
+    final BindParameters bindParameters = BindParameters.of(emptyRequest(), Pagination.of(0, 10, pageCursor));
+    pageCursor.buildCriteria(bindParameters, "trx.transaction_date", "trx.id");
+  }
+
+  @Test
+  public void shouldFallBackToOffsetWithoutCursor() {
+    final Pagination pagination = Pagination.of(2, 10, null);
+    final BindParameters bindParameters = BindParameters.of(emptyRequest(), pagination);
+
+    final StringBuilder query = new StringBuilder();
+    pagination.appendLimit(query, bindParameters);
+    Assert.assertEquals(" LIMIT ?1 OFFSET ?2", query.toString());
+    Assert.assertEquals(Arrays.asList(11, 20), bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldTrimExtraRowAndPointCursorAtLastRow() {
+    final ReportPage reportPage = new ReportPage();
+    final List<Long> page = Pagination.of(0, 3, null).apply(reportPage, Arrays.asList(1L, 2L, 3L, 4L), PageCursor::of);
+
+    Assert.assertEquals(Arrays.asList(1L, 2L, 3L), page);
+    Assert.assertTrue(reportPage.isHasMore());
+    Assert.assertEquals(Collections.singletonList(3L), PageCursor.decode(reportPage.getCursor()).getKeys());
+  }
+
+  @Test
+  public void shouldEndOnFullLastPage() {
+    final ReportPage reportPage = new ReportPage();
+    final List<Long> page = Pagination.of(0, 3, null).apply(reportPage, Arrays.asList(1L, 2L, 3L), PageCursor::of);
+
+    Assert.assertEquals(3, page.size());
+    Assert.assertFalse(reportPage.isHasMore());
+    Assert.assertNull(reportPage.getCursor());
+  }
+
+  @Test
+  public void shouldKeepAllRowsWhenUnpaged() {
+    final ReportPage reportPage = new ReportPage();
+    final List<Long> page = Pagination.unpaged().apply(reportPage, Arrays.asList(1L, 2L, 3L), PageCursor::of);
+
+    Assert.assertEquals(Arrays.asList(1L, 2L, 3L), page);
+    Assert.assertFalse(reportPage.isHasMore());
+    Assert.assertNull(reportPage.getCursor());
+  }
+
+  @Test
+  public void shouldEndOnEmptyPage() {
+    final ReportPage reportPage = new ReportPage();
+    final List<Long> page = Pagination.of(1, 3, null).apply(reportPage, Collections.emptyList(), PageCursor::of);
+
+    Assert.assertTrue(page.isEmpty());
+    Assert.assertFalse(reportPage.isHasMore());
+    Assert.assertNull(reportPage.getCursor());
+  }
+
+  // pages by offset only, like specifications without keyset pagination
+  private static class OffsetOnlySpecification implements ReportSpecification {
+
+    @Override
+    public ReportDefinition getReportDefinition() {
+      return null;
+    }
+
+    @Override
+    public ReportPage generateReport(final ReportRequest reportRequest, final int pageIndex, final int size,
+                                     final PageCursor pageCursor) {
+      if (pageCursor != null) {
+        throw new IllegalArgumentException("Report does not support cursors.");
+      }
+      final ReportPage reportPage = new ReportPage();
+      reportPage.setName(pageIndex + "/" + size);
+      return reportPage;
+    }
+
+    @Override
+    public void validate(final ReportRequest reportRequest) {
+    }
+  }
+
+  private static ReportRequest emptyRequest() {
+    final ReportRequest reportRequest = new ReportRequest();
+    reportRequest.setQueryParameters(Collections.emptyList());
+    reportRequest.setDisplayableFields(Collections.emptyList());
+    return reportRequest;
+  }
+}
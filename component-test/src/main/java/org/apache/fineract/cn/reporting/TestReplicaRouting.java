@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.service.internal.service.ReplicaRouting;
+import org.apache.fineract.cn.reporting.service.internal.service.ReplicaRoutingDataSource;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Routes reports between two database stand-ins, the primary and a replica that has replayed
+ * nothing written during the test.
+ */
+public class TestReplicaRouting {
+
+  private final StandIn primary = new StandIn();
+  private final StandIn replica = new StandIn();
+  private ReplicaRouting replicaRouting;
+  private ReplicaRoutingDataSource dataSource;
+
+  @Before
+  public void route() {
+    this.replicaRouting = new ReplicaRouting(LoggerFactory.getLogger(TestReplicaRouting.class),
+        new StandardEnvironment(), true, 1, 60L, 5000L, 2) {
+      @Override
+      protected Optional<DataSource> replicaFor(final DataSource primary, final ReplicaRouting.Route route) {
+        return Optional.of(TestReplicaRouting.this.replica);
+      }
+    };
+    this.dataSource = new ReplicaRoutingDataSource(this.primary, () -> this.replicaRouting);
+    ReplicaRouting.set(this.replicaRouting.routeOf(new StaleReport()).orElseThrow(AssertionError::new));
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+  }
+
+  @After
+  public void clear() {
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    TransactionSynchronizationManager.setActualTransactionActive(false);
+    ReplicaRouting.clear();
+  }
+
+  @Test
+  public void shouldReadReplica() throws SQLException {
+    this.dataSource.getConnection();
+    this.sectionConnection();
+
+    Assert.assertEquals(0, this.primary.connections);
+    Assert.assertEquals(2, this.replica.connections);
+  }
+
+  @Test
+  public void shouldReadPrimaryAfterCapture() throws SQLException {
+    this.replicaRouting.requirePrimaryFor(LocalDateTime.now(Clock.systemUTC()));
+    this.dataSource.getConnection();
+    this.sectionConnection();
+
+    Assert.assertEquals(2, this.primary.connections);
+    Assert.assertEquals(0, this.replica.connections);
+  }
+
+  @Test
+  public void shouldReadReplicaAfterReplayedCapture() throws SQLException {
+    this.replicaRouting.requirePrimaryFor(LocalDateTime.now(Clock.systemUTC()).minusHours(1L));
+    this.dataSource.getConnection();
+
+    Assert.assertEquals(0, this.primary.connections);
+    Assert.assertEquals(1, this.replica.connections);
+  }
+
+  @Test
+  public void shouldFallBackToPrimaryIfReplicaRefusesConnections() throws SQLException {
+    this.replica.refusing = true;
+    this.dataSource.getConnection();
+    this.sectionConnection();
+
+    Assert.assertEquals(2, this.primary.connections);
+    Assert.assertEquals(1L, this.replicaRouting.getFallbackCount());
+  }
+
+  @Test
+  public void shouldReadPrimaryOutsideReports() throws SQLException {
+    ReplicaRouting.clear();
+    this.dataSource.getConnection();
+
+    Assert.assertEquals(1, this.primary.connections);
+    Assert.assertEquals(0, this.replica.connections);
+  }
+
+  @Test
+  public void shouldReadPrimaryUntilReplicaWasChecked() throws SQLException {
+    final ReplicaRouting checkedRouting = new ReplicaRouting(LoggerFactory.getLogger(TestReplicaRouting.class),
+        new StandardEnvironment(), true, 1, 60L, 5000L, 2) {
+      @Override
+      protected DataSource connectReplica(final String tenant, final String database) {
+        return TestReplicaRouting.this.replica;
+      }
+
+      @Override
+      protected double measureLag(final DataSource replica) {
+        return 0.0D;
+      }
+    };
+    final ReplicaRoutingDataSource checkedDataSource = new ReplicaRoutingDataSource(this.primary, () -> checkedRouting);
+    TenantContextHolder.setIdentifier("test");
+    try {
+      checkedDataSource.getConnection();
+      Assert.assertEquals(1, this.primary.connections);
+
+      // the check asks the primary once for the tenant's database
+      checkedRouting.checkReplicas();
+      ReplicaRouting.set(checkedRouting.routeOf(new StaleReport()).orElseThrow(AssertionError::new));
+      checkedDataSource.getConnection();
+      Assert.assertEquals(2, this.primary.connections);
+      Assert.assertEquals(1, this.replica.connections);
+      Assert.assertEquals("test", TenantContextHolder.checkedGetIdentifier());
+    } finally {
+      TenantContextHolder.clear();
+    }
+  }
+
+  // statement sections run outside of the report's transaction
+  private void sectionConnection() throws SQLException {
+    TransactionSynchronizationManager.setActualTransactionActive(false);
+    try {
+      this.dataSource.getConnection();
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+  }
+
+  private static class StandIn extends AbstractDataSource {
+
+    private int connections;
+    private boolean refusing;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      if (this.refusing) {
+        throw new SQLException("Connection refused.");
+      }
+      this.connections++;
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+          (proxy, method, args) -> null);
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+      return this.getConnection();
+    }
+  }
+
+  @Report(category = "Test", identifier = "Stale", maximumStaleness = 300L)
+  private static class StaleReport implements ReportSpecification {
+
+    @Override
+    public ReportDefinition getReportDefinition() {
+      return null;
+    }
+
+    @Override
+    public ReportPage generateReport(final ReportRequest reportRequest, final int pageIndex, final int size,
+                                     final PageCursor pageCursor) {
+      return null;
+    }
+
+    @Override
+    public void validate(final ReportRequest reportRequest) {
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting;
+
+import org.apache.fineract.cn.reporting.service.internal.service.AdmissionRejectedException;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportAdmission;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.HashMap;
+
+/**
+ * Admits reports with two permits per tenant and per report and one permit per tenant and
+ * report, rejecting right away instead of waiting. Permits are not bound to threads, so a single
+ * thread can play all tenants.
+ */
+public class TestReportAdmission {
+
+  private ReportAdmission reportAdmission;
+  private final HashMap<String, ReportAdmission.Statistics> statistics = new HashMap<>();
+
+  @Before
+  public void admit() {
+    this.reportAdmission = new ReportAdmission(LoggerFactory.getLogger(TestReportAdmission.class),
+        new StandardEnvironment(), 2, 2, 1, 0L);
+    this.reportAdmission.onTenant(this.statistics::put);
+  }
+
+  @Test
+  public void shouldRejectTenantOverItsShareOfReport() {
+    this.acquire("first", "Listing");
+
+    Assert.assertFalse(this.admits("first", "Listing"));
+    Assert.assertTrue(this.admits("second", "Listing"));
+    Assert.assertEquals(1L, this.statistics.get("first").getRejectedCount());
+    Assert.assertEquals(1L, this.statistics.get("first").getAdmittedCount());
+    Assert.assertEquals(0L, this.statistics.get("second").getRejectedCount());
+  }
+
+  @Test
+  public void shouldReleaseShareIfReportIsBusy() {
+    final ReportAdmission.Permit first = this.acquire("first", "Listing");
+    this.acquire("second", "Listing");
+
+    Assert.assertFalse(this.admits("third", "Listing"));
+
+    // the third tenant only gets in again if its share was given back
+    first.close();
+    Assert.assertTrue(this.admits("third", "Listing"));
+  }
+
+  @Test
+  public void shouldReleaseShareAndReportIfTenantIsBusy() {
+    final ReportAdmission.Permit listing = this.acquire("first", "Listing");
+    this.acquire("first", "Balancesheet");
+
+    Assert.assertFalse(this.admits("first", "Incomestatement"));
+
+    // both report permits are free again, as is the share of the first tenant
+    final ReportAdmission.Permit second = this.acquire("second", "Incomestatement");
+    final ReportAdmission.Permit third = this.acquire("third", "Incomestatement");
+    third.close();
+    listing.close();
+    Assert.assertTrue(this.admits("first", "Incomestatement"));
+    second.close();
+  }
+
+  @Test
+  public void shouldReturnAllPermitsOnClose() {
+    this.acquire("first", "Listing").close();
+
+    // the share, a report permit next to the one the second tenant takes, and a tenant permit for another report
+    this.acquire("first", "Listing");
+    this.acquire("second", "Listing");
+    this.acquire("first", "Balancesheet");
+    Assert.assertEquals(3L, this.statistics.get("first").getAdmittedCount());
+    Assert.assertEquals(0, this.statistics.get("first").getWaiting());
+  }
+
+  private ReportAdmission.Permit acquire(final String tenant, final String identifier) {
+    return this.reportAdmission.acquire(tenant, "Test", identifier);
+  }
+
+  private boolean admits(final String tenant, final String identifier) {
+    try {
+      this.acquire(tenant, identifier);
+      return true;
+    } catch (final AdmissionRejectedException arex) {
+      return false;
+    }
+  }
+}
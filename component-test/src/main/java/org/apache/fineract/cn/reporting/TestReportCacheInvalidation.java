@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting;
+
+import org.apache.fineract.cn.lang.AutoTenantContext;
+import org.apache.fineract.cn.lang.config.TenantHeaderFilter;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.service.internal.provider.ReportSpecificationProvider;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportPageCache;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportTimeoutException;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.core.JmsTemplate;
+
+import javax.jms.ConnectionFactory;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// the test environment points activemq at an in-VM broker, so events travel through a real topic
+public class TestReportCacheInvalidation extends AbstractReportingSpecificationTest {
+
+  @Autowired
+  private ReportSpecificationProvider reportSpecificationProvider;
+
+  @Autowired
+  private ReportPageCache reportPageCache;
+
+  @Autowired
+  private ConnectionFactory connectionFactory;
+
+  @Test
+  public void shouldRegenerateAffectedReportsAfterUpstreamEvent() throws InterruptedException {
+    final String tenant = tenantDataStoreContext.getTenantName();
+    final AtomicInteger depositPages = new AtomicInteger();
+    final AtomicInteger tellerPages = new AtomicInteger();
+
+    try (final AutoTenantContext ignored = new AutoTenantContext(tenant)) {
+      this.fetch("Deposit", depositPages);
+      this.fetch("Deposit", depositPages);
+      this.fetch("Teller", tellerPages);
+      Assert.assertEquals(1, depositPages.get());
+      Assert.assertEquals(1, tellerPages.get());
+
+      // events that don't touch reported data leave the cache alone
+      this.send(tenant, "deposit-v1", "dividend-distribution");
+      Thread.sleep(1000L);
+      this.fetch("Deposit", depositPages);
+      Assert.assertEquals(1, depositPages.get());
+
+      this.send(tenant, "deposit-v1", "put-product-instance");
+
+      final long deadline = System.currentTimeMillis() + 10000L;
+      while (depositPages.get() == 1 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100L);
+        this.fetch("Deposit", depositPages);
+      }
+      this.fetch("Teller", tellerPages);
+
+      Assert.assertEquals(2, depositPages.get());
+      Assert.assertEquals(1, tellerPages.get());
+    }
+  }
+
+  @Test
+  public void shouldRegenerateBalanceReportsAfterJournalPosting() throws InterruptedException {
+    final String tenant = tenantDataStoreContext.getTenantName();
+    final AtomicInteger depositPages = new AtomicInteger();
+
+    try (final AutoTenantContext ignored = new AutoTenantContext(tenant)) {
+      // the other tests may have left the page in the cache
+      this.reportPageCache.invalidate(tenant, "Deposit");
+      this.fetch("Deposit", depositPages);
+      Assert.assertEquals(1, depositPages.get());
+
+      this.send(tenant, "accounting-v1", "post-journal-entry");
+
+      final long deadline = System.currentTimeMillis() + 10000L;
+      while (depositPages.get() == 1 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100L);
+        this.fetch("Deposit", depositPages);
+      }
+
+      Assert.assertEquals(2, depositPages.get());
+    }
+  }
+
+  @Test(expected = ReportTimeoutException.class)
+  public void shouldStopWaitingForRunningGenerationAtDeadline() throws InterruptedException {
+    final String tenant = tenantDataStoreContext.getTenantName();
+    final ReportSpecification reportSpecification =
+        this.reportSpecificationProvider.getReportSpecification("Deposit", "Listing")
+            .orElseThrow(AssertionError::new);
+    final ReportRequest reportRequest = new ReportRequest();
+    reportRequest.setQueryParameters(Collections.emptyList());
+    reportRequest.setDisplayableFields(Collections.emptyList());
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final Thread leader = new Thread(() -> {
+      try (final AutoTenantContext ignored = new AutoTenantContext(tenant)) {
+        this.reportPageCache.get("Deposit", "Listing", reportSpecification, reportRequest, 1, 20, null,
+            System.nanoTime() + TimeUnit.SECONDS.toNanos(10L), () -> {
+              started.countDown();
+              try {
+                release.await();
+              } catch (final InterruptedException iex) {
+                Thread.currentThread().interrupt();
+              }
+              return new ReportPage();
+            });
+      }
+    });
+    leader.start();
+
+    try (final AutoTenantContext ignored = new AutoTenantContext(tenant)) {
+      Assert.assertTrue(started.await(10L, TimeUnit.SECONDS));
+      this.reportPageCache.get("Deposit", "Listing", reportSpecification, reportRequest, 1, 20, null,
+          System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100L), () -> {
+            throw new AssertionError("Waiting request must not generate the page.");
+          });
+    } finally {
+      release.countDown();
+      leader.join();
+    }
+  }
+
+  private void send(final String tenant, final String destination, final String action) {
+    final JmsTemplate jmsTemplate = new JmsTemplate(this.connectionFactory);
+    jmsTemplate.setPubSubDomain(true);
+    jmsTemplate.convertAndSend(destination, "{}", message -> {
+      message.setStringProperty(TenantHeaderFilter.TENANT_HEADER, tenant);
+      message.setStringProperty("action", action);
+      return message;
+    });
+  }
+
+  private void fetch(final String category, final AtomicInteger generated) {
+    final ReportSpecification reportSpecification =
+        this.reportSpecificationProvider.getReportSpecification(category, "Listing")
+            .orElseThrow(AssertionError::new);
+    final ReportRequest reportRequest = new ReportRequest();
+    reportRequest.setQueryParameters(Collections.emptyList());
+    reportRequest.setDisplayableFields(Collections.emptyList());
+
+    this.reportPageCache.get(category, "Listing", reportSpecification, reportRequest, 0, 20, null,
+        System.nanoTime() + TimeUnit.SECONDS.toNanos(10L), () -> {
+      generated.incrementAndGet();
+      return new ReportPage();
+    });
+  }
+}
@@ -18,10 +18,21 @@
  */
 package org.apache.fineract.cn.reporting;
 
+import org.apache.fineract.cn.reporting.api.v1.domain.QueryParameter;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.api.v1.domain.Type;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
+import org.apache.fineract.cn.reporting.service.spi.CriteriaBuilder;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class TestReportingSpecifications extends AbstractReportingSpecificationTest {
@@ -81,4 +92,146 @@ public class TestReportingSpecifications extends AbstractReportingSpecificationT
             tellerTransactionReportDefinitions.stream().anyMatch(reportDefinition -> reportDefinition.getIdentifier().equals("Transactions"))
     );
   }
+
+  @Test
+  public void shouldBindEquals() {
+    final QueryParameter queryParameter = queryParameter("State", Type.TEXT, QueryParameter.Operator.EQUALS, "ACTIVE");
+    final BindParameters bindParameters = bind(queryParameter);
+
+    Assert.assertEquals("cases.current_state = ?1",
+        CriteriaBuilder.buildCriteria("cases.current_state", queryParameter, bindParameters));
+    Assert.assertEquals(Collections.singletonList("ACTIVE"), bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldBindLikeWithWildcards() {
+    final QueryParameter queryParameter = queryParameter("Last name", Type.TEXT, QueryParameter.Operator.LIKE, "Smi");
+    final BindParameters bindParameters = bind(queryParameter);
+
+    Assert.assertEquals("cst.surname LIKE ?1",
+        CriteriaBuilder.buildCriteria("cst.surname", queryParameter, bindParameters));
+    Assert.assertEquals(Collections.singletonList("%Smi%"), bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldBindGreaterAndLesserAsNumbers() {
+    final QueryParameter greater = queryParameter("Balance", Type.NUMBER, QueryParameter.Operator.GREATER, " 100.50");
+    final QueryParameter lesser = queryParameter("Balance", Type.NUMBER, QueryParameter.Operator.LESSER, "2000");
+    final BindParameters bindParameters = bind(greater, lesser);
+
+    Assert.assertEquals("acc.balance > ?1", CriteriaBuilder.buildCriteria("acc.balance", greater, bindParameters));
+    Assert.assertEquals("acc.balance < ?2", CriteriaBuilder.buildCriteria("acc.balance", lesser, bindParameters));
+    Assert.assertEquals(Arrays.asList(new BigDecimal("100.50"), new BigDecimal("2000")), bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldBindEachInValue() {
+    final QueryParameter queryParameter =
+        queryParameter("State", Type.TEXT, QueryParameter.Operator.IN, "PENDING,ACTIVE,PENDING,CLOSED");
+    final BindParameters bindParameters = bind(queryParameter);
+
+    Assert.assertEquals("cases.current_state in (?1,?2,?3)",
+        CriteriaBuilder.buildCriteria("cases.current_state", queryParameter, bindParameters));
+    Assert.assertEquals(Arrays.asList("PENDING", "ACTIVE", "CLOSED"), bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldBindBetweenAsDates() {
+    final QueryParameter dates =
+        queryParameter("Date range", Type.DATE, QueryParameter.Operator.BETWEEN, "2018-01-01..2018-01-31Z");
+    final QueryParameter timestamps = queryParameter("Transaction date", Type.DATE, QueryParameter.Operator.BETWEEN,
+        "2018-01-01T00:00:00Z..2018-01-31T23:59:59.999");
+    final BindParameters bindParameters = bind(dates, timestamps);
+
+    Assert.assertEquals("cst.created_on BETWEEN ?1 AND ?2",
+        CriteriaBuilder.buildCriteria("cst.created_on", dates, bindParameters));
+    Assert.assertEquals("trx.transaction_date BETWEEN ?3 AND ?4",
+        CriteriaBuilder.buildCriteria("trx.transaction_date", timestamps, bindParameters));
+    Assert.assertEquals(
+        Arrays.asList(
+            Date.valueOf("2018-01-01"),
+            Date.valueOf("2018-01-31"),
+            Timestamp.valueOf("2018-01-01 00:00:00"),
+            Timestamp.valueOf("2018-01-31 23:59:59.999")
+        ),
+        bindParameters.getValues()
+    );
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectOpenRange() {
+    bind(queryParameter("Date range", Type.DATE, QueryParameter.Operator.BETWEEN, "2018-01-01.."));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectMalformedDate() {
+    bind(queryParameter("Date range", Type.DATE, QueryParameter.Operator.EQUALS, "31.01.2018"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectMalformedNumber() {
+    bind(queryParameter("Balance", Type.NUMBER, QueryParameter.Operator.GREATER, "1 OR 1=1"));
+  }
+
+  @Test
+  public void shouldKeepQuotesOutOfQueryText() {
+    final String value = "O'Brien'; DROP TABLE maat_customers; --";
+    final QueryParameter equals = queryParameter("Last name", Type.TEXT, QueryParameter.Operator.EQUALS, value);
+    final QueryParameter like = queryParameter("First name", Type.TEXT, QueryParameter.Operator.LIKE, "\"Jo'");
+    final BindParameters bindParameters = bind(equals, like);
+
+    Assert.assertEquals("cst.surname = ?1", CriteriaBuilder.buildCriteria("cst.surname", equals, bindParameters));
+    Assert.assertEquals("cst.given_name LIKE ?2",
+        CriteriaBuilder.buildCriteria("cst.given_name", like, bindParameters));
+    Assert.assertEquals(Arrays.asList(value, "%\"Jo'%"), bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldEscapeQuotesInArrayValues() {
+    final BindParameters bindParameters = new BindParameters();
+
+    Assert.assertEquals("CAST(?1 AS text[])",
+        bindParameters.bindArray(Arrays.asList("CST-1", "O'Brien", "say \"hi\"", "back\\slash"), "text"));
+    Assert.assertEquals(Collections.singletonList("{\"CST-1\",\"O'Brien\",\"say \\\"hi\\\"\",\"back\\\\slash\"}"),
+        bindParameters.getValues());
+  }
+
+  @Test
+  public void shouldShapeRequestsByOperatorsNotValues() {
+    final BindParameters first =
+        bind(queryParameter("State", Type.TEXT, QueryParameter.Operator.IN, "ACTIVE,CLOSED"));
+    final BindParameters second =
+        bind(queryParameter("State", Type.TEXT, QueryParameter.Operator.IN, "PENDING,APPROVED"));
+    final BindParameters third =
+        bind(queryParameter("State", Type.TEXT, QueryParameter.Operator.IN, "PENDING"));
+
+    Assert.assertEquals(first.getShape(), second.getShape());
+    Assert.assertNotEquals(first.getShape(), third.getShape());
+  }
+
+  @Test
+  public void shouldSkipParametersWithoutValue() {
+    final QueryParameter empty = queryParameter("State", Type.TEXT, QueryParameter.Operator.EQUALS, "");
+    final BindParameters bindParameters = bind(empty);
+
+    Assert.assertTrue(bindParameters.getValues().isEmpty());
+    Assert.assertEquals("", bindParameters.getShape());
+  }
+
+  private static QueryParameter queryParameter(final String name, final Type type,
+                                               final QueryParameter.Operator operator, final String value) {
+    final QueryParameter queryParameter = new QueryParameter();
+    queryParameter.setName(name);
+    queryParameter.setType(type);
+    queryParameter.setOperator(operator);
+    queryParameter.setValue(value);
+    return queryParameter;
+  }
+
+  private static BindParameters bind(final QueryParameter... queryParameters) {
+    final ReportRequest reportRequest = new ReportRequest();
+    reportRequest.setQueryParameters(Arrays.asList(queryParameters));
+    reportRequest.setDisplayableFields(Collections.emptyList());
+    return BindParameters.of(reportRequest, Pagination.unpaged());
+  }
 }
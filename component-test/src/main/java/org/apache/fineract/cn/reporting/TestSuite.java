@@ -23,7 +23,12 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-        TestReportingSpecifications.class
+        TestReportingSpecifications.class,
+        TestPagination.class,
+        TestReportCacheInvalidation.class,
+        TestReplicaRouting.class,
+        TestReportAdmission.class,
+        TestConnectionBulkheads.class
 })
 public class TestSuite {
 }
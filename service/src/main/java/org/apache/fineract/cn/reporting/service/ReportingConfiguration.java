@@ -18,6 +18,8 @@
  */
 package org.apache.fineract.cn.reporting.service;
 
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 import org.apache.fineract.cn.anubis.config.EnableAnubis;
 import org.apache.fineract.cn.cassandra.config.EnableCassandra;
 import org.apache.fineract.cn.command.config.EnableCommandProcessing;
@@ -25,17 +27,35 @@ import org.apache.fineract.cn.lang.config.EnableApplicationName;
 import org.apache.fineract.cn.lang.config.EnableServiceException;
 import org.apache.fineract.cn.lang.config.EnableTenantContext;
 import org.apache.fineract.cn.postgresql.config.EnablePostgreSQL;
+import org.apache.fineract.cn.reporting.service.internal.listener.UpstreamEventListener;
+import org.apache.fineract.cn.reporting.service.internal.service.BulkheadDataSource;
+import org.apache.fineract.cn.reporting.service.internal.service.ConnectionBulkheads;
+import org.apache.fineract.cn.reporting.service.internal.service.ReplicaRouting;
+import org.apache.fineract.cn.reporting.service.internal.service.ReplicaRoutingDataSource;
+import org.apache.fineract.cn.reporting.service.rest.TenantRegistrationInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jms.annotation.EnableJms;
+import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import javax.jms.ConnectionFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+
 @SuppressWarnings("WeakerAccess")
 @Configuration
 @EnableAutoConfiguration
@@ -46,6 +66,8 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
 @EnablePostgreSQL
 @EnableAnubis
 @EnableServiceException
+@EnableScheduling
+@EnableJms
 @EnableJpaRepositories(basePackages = {
     "org.apache.fineract.cn.reporting.service.internal.repository"})
 @ComponentScan({
@@ -54,8 +76,12 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
 })
 public class ReportingConfiguration extends WebMvcConfigurerAdapter {
 
-  public ReportingConfiguration() {
+  private final TenantRegistrationInterceptor tenantRegistrationInterceptor;
+
+  @Autowired
+  public ReportingConfiguration(final TenantRegistrationInterceptor tenantRegistrationInterceptor) {
     super();
+    this.tenantRegistrationInterceptor = tenantRegistrationInterceptor;
   }
 
   @Bean(name = ServiceConstants.LOGGER_NAME)
@@ -63,6 +89,54 @@ public class ReportingConfiguration extends WebMvcConfigurerAdapter {
     return LoggerFactory.getLogger(ServiceConstants.LOGGER_NAME);
   }
 
+  @Bean
+  public PrometheusMeterRegistry prometheusMeterRegistry() {
+    return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+  }
+
+  @Bean(name = UpstreamEventListener.CONTAINER_FACTORY)
+  public DefaultJmsListenerContainerFactory upstreamEventContainerFactory(final ConnectionFactory connectionFactory) {
+    final DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+    factory.setPubSubDomain(true);
+    factory.setConnectionFactory(connectionFactory);
+    // every consumer of a topic receives every event, more than one would only repeat the invalidation
+    factory.setConcurrency("1");
+    return factory;
+  }
+
+  // wraps the data source of @EnablePostgreSQL, so report queries can be sent to the read replica
+  // and take their connections from the bulkhead of their report class
+  @Bean
+  public static BeanPostProcessor replicaRoutingPostProcessor(final ObjectFactory<ReplicaRouting> replicaRouting,
+                                                              final ObjectFactory<ConnectionBulkheads> connectionBulkheads) {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessBeforeInitialization(final Object bean, final String beanName) {
+        return bean;
+      }
+
+      @Override
+      public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+        if (!(bean instanceof DataSource) || bean instanceof LazyConnectionDataSourceProxy) {
+          return bean;
+        }
+        final LazyConnectionDataSourceProxy lazyConnectionDataSourceProxy = new LazyConnectionDataSourceProxy();
+        lazyConnectionDataSourceProxy.setTargetDataSource(new BulkheadDataSource(
+            new ReplicaRoutingDataSource((DataSource) bean, replicaRouting), connectionBulkheads));
+        // known up front, finding out would take a connection before any tenant is set
+        lazyConnectionDataSourceProxy.setDefaultAutoCommit(true);
+        lazyConnectionDataSourceProxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        lazyConnectionDataSourceProxy.afterPropertiesSet();
+        return lazyConnectionDataSourceProxy;
+      }
+    };
+  }
+
+  @Override
+  public void addInterceptors(final InterceptorRegistry registry) {
+    registry.addInterceptor(this.tenantRegistrationInterceptor);
+  }
+
   @Override
   public void configurePathMatch(final PathMatchConfigurer configurer) {
     configurer.setUseSuffixPatternMatch(Boolean.FALSE);
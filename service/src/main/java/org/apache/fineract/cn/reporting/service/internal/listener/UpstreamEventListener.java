@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.listener;
+
+import org.apache.fineract.cn.lang.config.TenantHeaderFilter;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportPageCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalidates cached reports of a tenant whenever one of the services owning the tables
+ * behind them publishes an event changing the rows or columns the reports show. Journal postings
+ * move the balances shown by the accounting statements and the customer and deposit listings, so
+ * they invalidate those categories as well.
+ */
+@SuppressWarnings("unused")
+@Component
+public class UpstreamEventListener {
+
+  public static final String CONTAINER_FACTORY = "upstreamEventContainerFactory";
+
+  static final String CUSTOMER_DESTINATION = "customer-v1";
+  static final String DEPOSIT_DESTINATION = "deposit-v1";
+  static final String PORTFOLIO_DESTINATION = "portfolio-v1";
+  static final String ACCOUNTING_DESTINATION = "accounting-v1";
+  static final String OFFICE_DESTINATION = "office-v1";
+  static final String TELLER_DESTINATION = "teller-v1";
+
+  // the upstream services all name their selector property "action"
+  static final String SELECTOR_NAME = "action";
+
+  static final String CUSTOMER_SELECTOR = SELECTOR_NAME + " IN ("
+      + "'post-customer', 'put-customer', 'activate-customer', 'lock-customer', 'unlock-customer', "
+      + "'close-customer', 'reopen-customer', 'put-address')";
+  static final String DEPOSIT_SELECTOR = SELECTOR_NAME + " IN ("
+      + "'post-product-definition', 'put-product-definition', 'delete-product-definition', "
+      + "'post-product-instance', 'put-product-instance', 'post-product-instance-command')";
+  static final String PORTFOLIO_SELECTOR = SELECTOR_NAME + " IN ("
+      + "'post-case', 'put-case', 'open-individualloan-case', 'deny-individualloan-case', "
+      + "'approve-individualloan-case', 'disburse-individualloan-case', 'write-off-individualloan-case', "
+      + "'close-individualloan-case', 'recover-individualloan-case')";
+  static final String ACCOUNTING_SELECTOR = SELECTOR_NAME + " IN ("
+      + "'post-account', 'put-account', 'delete-account')";
+  static final String JOURNAL_SELECTOR = SELECTOR_NAME + " IN ("
+      + "'post-journal-entry', 'release-journal-entry')";
+  static final String OFFICE_SELECTOR = SELECTOR_NAME + " IN ("
+      + "'post-office', 'put-office', 'delete-office', 'post-branch', 'put-address', 'delete-address')";
+  static final String TELLER_SELECTOR = SELECTOR_NAME + " IN ("
+      + "'post-teller', 'put-teller', 'delete-teller', 'open-teller', 'close-teller', 'activate-teller', "
+      + "'pause-teller', 'authenticate-teller', 'init-transaction', 'confirm-transaction', 'cancel-transaction')";
+
+  private final ReportPageCache reportPageCache;
+
+  @Autowired
+  public UpstreamEventListener(final ReportPageCache reportPageCache) {
+    super();
+    this.reportPageCache = reportPageCache;
+  }
+
+  @JmsListener(
+      destination = CUSTOMER_DESTINATION,
+      subscription = CUSTOMER_DESTINATION,
+      selector = CUSTOMER_SELECTOR,
+      containerFactory = CONTAINER_FACTORY
+  )
+  public void onCustomerEvent(@Header(TenantHeaderFilter.TENANT_HEADER) final String tenant) {
+    this.invalidate(tenant, "Customer", "Deposit", "Loan");
+  }
+
+  @JmsListener(
+      destination = DEPOSIT_DESTINATION,
+      subscription = DEPOSIT_DESTINATION,
+      selector = DEPOSIT_SELECTOR,
+      containerFactory = CONTAINER_FACTORY
+  )
+  public void onDepositEvent(@Header(TenantHeaderFilter.TENANT_HEADER) final String tenant) {
+    this.invalidate(tenant, "Deposit");
+  }
+
+  @JmsListener(
+      destination = PORTFOLIO_DESTINATION,
+      subscription = PORTFOLIO_DESTINATION,
+      selector = PORTFOLIO_SELECTOR,
+      containerFactory = CONTAINER_FACTORY
+  )
+  public void onPortfolioEvent(@Header(TenantHeaderFilter.TENANT_HEADER) final String tenant) {
+    this.invalidate(tenant, "Loan");
+  }
+
+  @JmsListener(
+      destination = ACCOUNTING_DESTINATION,
+      subscription = ACCOUNTING_DESTINATION,
+      selector = ACCOUNTING_SELECTOR,
+      containerFactory = CONTAINER_FACTORY
+  )
+  public void onAccountingEvent(@Header(TenantHeaderFilter.TENANT_HEADER) final String tenant) {
+    this.invalidate(tenant, "Accounting", "Customer");
+  }
+
+  @JmsListener(
+      destination = ACCOUNTING_DESTINATION,
+      subscription = ACCOUNTING_DESTINATION + "-journal",
+      selector = JOURNAL_SELECTOR,
+      containerFactory = CONTAINER_FACTORY
+  )
+  public void onJournalEvent(@Header(TenantHeaderFilter.TENANT_HEADER) final String tenant) {
+    this.invalidate(tenant, "Accounting", "Customer", "Deposit");
+  }
+
+  @JmsListener(
+      destination = OFFICE_DESTINATION,
+      subscription = OFFICE_DESTINATION,
+      selector = OFFICE_SELECTOR,
+      containerFactory = CONTAINER_FACTORY
+  )
+  public void onOfficeEvent(@Header(TenantHeaderFilter.TENANT_HEADER) final String tenant) {
+    this.invalidate(tenant, "Organization");
+  }
+
+  @JmsListener(
+      destination = TELLER_DESTINATION,
+      subscription = TELLER_DESTINATION,
+      selector = TELLER_SELECTOR,
+      containerFactory = CONTAINER_FACTORY
+  )
+  public void onTellerEvent(@Header(TenantHeaderFilter.TENANT_HEADER) final String tenant) {
+    this.invalidate(tenant, "Teller");
+  }
+
+  private void invalidate(final String tenant, final String... categories) {
+    for (final String category : categories) {
+      this.reportPageCache.invalidate(tenant, category);
+    }
+  }
+}
@@ -22,6 +22,8 @@ import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
 import org.apache.fineract.cn.reporting.service.spi.Report;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,9 +34,11 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -43,68 +47,154 @@ import java.util.Optional;
 @Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
 public class ReportSpecificationProvider implements ApplicationContextAware {
 
+  private static final byte[] EMPTY_JSON_ARRAY = "[]".getBytes(StandardCharsets.UTF_8);
+
   private final Logger logger;
-  private final HashMap<String, ReportSpecification> reportSpecificationCache = new HashMap<>();
-  private final HashMap<String, List<ReportDefinition>> reportCategoryCache = new HashMap<>();
+  private final ObjectMapper objectMapper;
 
-  private ApplicationContext applicationContext;
+  // built once after bean discovery and only ever replaced as a whole, so readers need no lock
+  private volatile Registry registry = new Registry();
 
   @Autowired
-  public ReportSpecificationProvider(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger) {
+  public ReportSpecificationProvider(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                                     final ObjectMapper objectMapper) {
     super();
     this.logger = logger;
+    this.objectMapper = objectMapper;
   }
 
   @Override
   public void setApplicationContext(final ApplicationContext applicationContext) throws BeansException {
-    this.applicationContext = applicationContext;
-    this.initialize();
+    this.registry = this.buildRegistry(applicationContext);
   }
 
   public List<String> getAvailableCategories() {
-    return new ArrayList<>(this.reportCategoryCache.keySet());
+    return this.registry.categories;
+  }
+
+  public byte[] getAvailableCategoriesAsJson() {
+    return this.registry.categoriesJson;
   }
 
   public List<ReportDefinition> getAvailableReports(final String category) {
     this.logger.debug("Looking up report definitions for category {}.", category);
-    return this.reportCategoryCache.getOrDefault(category, Collections.emptyList());
+    final Category reportCategory = this.registry.categoryIndex.get(category);
+    return reportCategory != null ? reportCategory.reportDefinitions : Collections.emptyList();
+  }
+
+  public byte[] getAvailableReportsAsJson(final String category) {
+    final Category reportCategory = this.registry.categoryIndex.get(category);
+    return reportCategory != null ? reportCategory.reportDefinitionsJson : EMPTY_JSON_ARRAY;
   }
 
   public Optional<ReportSpecification> getReportSpecification(final String category, final String identifier) {
-    final String keyForReportSpecificationCache = this.buildKeyForSpecificationCache(category, identifier);
-    this.logger.debug("Looking up report specification for {}.", keyForReportSpecificationCache);
-    return Optional.ofNullable(this.reportSpecificationCache.get(keyForReportSpecificationCache));
+    this.logger.debug("Looking up report specification for {} {}.", category, identifier);
+    final Category reportCategory = this.registry.categoryIndex.get(category);
+    return Optional.ofNullable(reportCategory != null ? reportCategory.reportSpecifications.get(identifier) : null);
   }
 
-  private void initialize() {
-    final Map<String, Object> beansWithAnnotation = this.applicationContext.getBeansWithAnnotation(Report.class);
+  public Optional<ReportDefinition> findReportDefinition(final String category, final String identifier) {
+    final Category reportCategory = this.registry.categoryIndex.get(category);
+    final Entry entry = reportCategory != null ? reportCategory.definitionIndex.get(identifier) : null;
+    return Optional.ofNullable(entry != null ? entry.reportDefinition : null);
+  }
 
+  public Optional<byte[]> findReportDefinitionAsJson(final String category, final String identifier) {
+    final Category reportCategory = this.registry.categoryIndex.get(category);
+    final Entry entry = reportCategory != null ? reportCategory.definitionIndex.get(identifier) : null;
+    return Optional.ofNullable(entry != null ? entry.reportDefinitionJson : null);
+  }
+
+  private Registry buildRegistry(final ApplicationContext applicationContext) {
+    final Map<String, Object> beansWithAnnotation = applicationContext.getBeansWithAnnotation(Report.class);
+
+    final LinkedHashMap<String, HashMap<String, ReportSpecification>> specifications = new LinkedHashMap<>();
+    final LinkedHashMap<String, List<ReportDefinition>> definitions = new LinkedHashMap<>();
     beansWithAnnotation.values().forEach(bean -> {
       final ReportSpecification reportSpecification = ReportSpecification.class.cast(bean);
       final Report report = reportSpecification.getClass().getAnnotation(Report.class);
-      final String keyForReportSpecificationCache =
-          this.buildKeyForSpecificationCache(report.category(), report.identifier());
-      this.logger.debug("Adding report specification for {}", keyForReportSpecificationCache);
+      this.logger.debug("Adding report specification for {} {}.", report.category(), report.identifier());
+
+      specifications.computeIfAbsent(report.category(), key -> new HashMap<>())
+          .put(report.identifier(), reportSpecification);
+      definitions.computeIfAbsent(report.category(), key -> new ArrayList<>())
+          .add(reportSpecification.getReportDefinition());
+    });
 
-      this.reportCategoryCache.computeIfAbsent(report.category(), (key) -> new ArrayList<>());
-      this.reportCategoryCache.get(report.category()).add(reportSpecification.getReportDefinition());
-      this.reportSpecificationCache.put(keyForReportSpecificationCache, reportSpecification);
+    final HashMap<String, Category> categoryIndex = new HashMap<>();
+    specifications.forEach((category, reportSpecifications) -> {
+      final List<ReportDefinition> reportDefinitions = definitions.get(category);
+      final HashMap<String, Entry> definitionIndex = new HashMap<>();
+      reportDefinitions.forEach(reportDefinition -> definitionIndex.put(
+          reportDefinition.getIdentifier(), new Entry(reportDefinition, this.toJson(reportDefinition))
+      ));
+      categoryIndex.put(category, new Category(
+          Collections.unmodifiableMap(reportSpecifications),
+          Collections.unmodifiableList(reportDefinitions),
+          this.toJson(reportDefinitions),
+          Collections.unmodifiableMap(definitionIndex)
+      ));
     });
+
+    final List<String> categories = Collections.unmodifiableList(new ArrayList<>(specifications.keySet()));
+    return new Registry(categories, this.toJson(categories), Collections.unmodifiableMap(categoryIndex));
   }
 
-  private String buildKeyForSpecificationCache(final String category, final String identifier) {
-    return category + "~" + identifier;
+  private byte[] toJson(final Object value) {
+    try {
+      return this.objectMapper.writeValueAsBytes(value);
+    } catch (final JsonProcessingException jpex) {
+      throw new IllegalStateException("Could not encode report definition.", jpex);
+    }
   }
 
-  public Optional<ReportDefinition> findReportDefinition(final String category, final String identifier) {
-    final List<ReportDefinition> reportDefinitions = this.reportCategoryCache.get(category);
-    if (reportDefinitions != null) {
-      return reportDefinitions
-          .stream()
-          .filter(reportDefinition -> reportDefinition.getIdentifier().equals(identifier))
-          .findAny();
-    } else {
-      return Optional.empty();
+  private static class Registry {
+
+    private final List<String> categories;
+    private final byte[] categoriesJson;
+    private final Map<String, Category> categoryIndex;
+
+    private Registry() {
+      this(Collections.emptyList(), EMPTY_JSON_ARRAY, Collections.emptyMap());
+    }
+
+    private Registry(final List<String> categories, final byte[] categoriesJson,
+                     final Map<String, Category> categoryIndex) {
+      super();
+      this.categories = categories;
+      this.categoriesJson = categoriesJson;
+      this.categoryIndex = categoryIndex;
+    }
+  }
+
+  private static class Category {
+
+    private final Map<String, ReportSpecification> reportSpecifications;
+    private final List<ReportDefinition> reportDefinitions;
+    private final byte[] reportDefinitionsJson;
+    private final Map<String, Entry> definitionIndex;
+
+    private Category(final Map<String, ReportSpecification> reportSpecifications,
+                     final List<ReportDefinition> reportDefinitions,
+                     final byte[] reportDefinitionsJson,
+                     final Map<String, Entry> definitionIndex) {
+      super();
+      this.reportSpecifications = reportSpecifications;
+      this.reportDefinitions = reportDefinitions;
+      this.reportDefinitionsJson = reportDefinitionsJson;
+      this.definitionIndex = definitionIndex;
+    }
+  }
+
+  private static class Entry {
+
+    private final ReportDefinition reportDefinition;
+    private final byte[] reportDefinitionJson;
+
+    private Entry(final ReportDefinition reportDefinition, final byte[] reportDefinitionJson) {
+      super();
+      this.reportDefinition = reportDefinition;
+      this.reportDefinitionJson = reportDefinitionJson;
     }
   }
 }
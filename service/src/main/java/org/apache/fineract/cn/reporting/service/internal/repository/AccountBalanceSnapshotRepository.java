@@ -21,6 +21,13 @@ package org.apache.fineract.cn.reporting.service.internal.repository;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Optional;
+
 @Repository
-public interface DummyRepository extends JpaRepository<DummyEntity, Long> {
+public interface AccountBalanceSnapshotRepository extends JpaRepository<AccountBalanceSnapshotEntity, Long> {
+
+  long countByPeriodEnd(final LocalDate periodEnd);
+
+  Optional<AccountBalanceSnapshotEntity> findFirstByPeriodEndOrderByCapturedOnDesc(final LocalDate periodEnd);
 }
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.repository;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import org.apache.fineract.cn.cassandra.core.CassandraSessionProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Finds the tenants this service has been initialized for. The tenant definitions the provisioner
+ * keeps in the shared keyspace are only read, a tenant counts as initialized once its own keyspace
+ * holds the tables created on initialize. Nothing is written outside the tenant keyspaces.
+ */
+@Repository
+public class RegisteredTenantRepository {
+
+  private static final String TENANTS_TABLE = "tenants";
+  private static final String READ = "cassandra.cl.read";
+
+  private final CassandraSessionProvider cassandraSessionProvider;
+  private final Environment environment;
+
+  @Autowired
+  public RegisteredTenantRepository(final CassandraSessionProvider cassandraSessionProvider,
+                                    final Environment environment) {
+    super();
+    this.cassandraSessionProvider = cassandraSessionProvider;
+    this.environment = environment;
+  }
+
+  public List<String> findProvisioned() {
+    return StreamSupport.stream(this.cassandraSessionProvider.getAdminSession().execute(new SimpleStatement(
+        "SELECT identifier FROM " + TENANTS_TABLE
+    ).setConsistencyLevel(this.consistencyLevel(READ))).spliterator(), false)
+        .map(row -> row.getString("identifier"))
+        .collect(Collectors.toList());
+  }
+
+  public boolean isInitialized(final String tenant) {
+    final Session session = this.cassandraSessionProvider.getTenantSession(tenant);
+    final KeyspaceMetadata keyspace = session.getCluster().getMetadata().getKeyspace(session.getLoggedKeyspace());
+    return keyspace != null && keyspace.getTable(ReportSnapshotRepository.TABLE_NAME) != null;
+  }
+
+  private ConsistencyLevel consistencyLevel(final String property) {
+    return ConsistencyLevel.valueOf(this.environment.getProperty(property, ConsistencyLevel.LOCAL_QUORUM.name()));
+  }
+}
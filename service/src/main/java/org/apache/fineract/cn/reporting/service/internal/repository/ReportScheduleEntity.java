@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.repository;
+
+import org.apache.fineract.cn.postgresql.util.LocalDateTimeConverter;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "reporting_schedules")
+public class ReportScheduleEntity {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "id")
+  private Long id;
+  @Column(name = "identifier", nullable = false)
+  private String identifier;
+  @Column(name = "category", nullable = false)
+  private String category;
+  @Column(name = "report_identifier", nullable = false)
+  private String reportIdentifier;
+  @Column(name = "cron_expression", nullable = false)
+  private String cronExpression;
+  @Column(name = "request_key", nullable = false)
+  private String requestKey;
+  @Column(name = "report_request", nullable = false)
+  private String reportRequest;
+  @Column(name = "page_size", nullable = false)
+  private Integer pageSize;
+  @Column(name = "last_run_on")
+  @Convert(converter = LocalDateTimeConverter.class)
+  private LocalDateTime lastRunOn;
+  @Column(name = "last_job_identifier")
+  private String lastJobIdentifier;
+  @Column(name = "created_by", nullable = false)
+  private String createdBy;
+  @Column(name = "created_on", nullable = false)
+  @Convert(converter = LocalDateTimeConverter.class)
+  private LocalDateTime createdOn;
+
+  public ReportScheduleEntity() {
+    super();
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getIdentifier() {
+    return identifier;
+  }
+
+  public void setIdentifier(String identifier) {
+    this.identifier = identifier;
+  }
+
+  public String getCategory() {
+    return category;
+  }
+
+  public void setCategory(String category) {
+    this.category = category;
+  }
+
+  public String getReportIdentifier() {
+    return reportIdentifier;
+  }
+
+  public void setReportIdentifier(String reportIdentifier) {
+    this.reportIdentifier = reportIdentifier;
+  }
+
+  public String getCronExpression() {
+    return cronExpression;
+  }
+
+  public void setCronExpression(String cronExpression) {
+    this.cronExpression = cronExpression;
+  }
+
+  public String getRequestKey() {
+    return requestKey;
+  }
+
+  public void setRequestKey(String requestKey) {
+    this.requestKey = requestKey;
+  }
+
+  public String getReportRequest() {
+    return reportRequest;
+  }
+
+  public void setReportRequest(String reportRequest) {
+    this.reportRequest = reportRequest;
+  }
+
+  public Integer getPageSize() {
+    return pageSize;
+  }
+
+  public void setPageSize(Integer pageSize) {
+    this.pageSize = pageSize;
+  }
+
+  public LocalDateTime getLastRunOn() {
+    return lastRunOn;
+  }
+
+  public void setLastRunOn(LocalDateTime lastRunOn) {
+    this.lastRunOn = lastRunOn;
+  }
+
+  public String getLastJobIdentifier() {
+    return lastJobIdentifier;
+  }
+
+  public void setLastJobIdentifier(String lastJobIdentifier) {
+    this.lastJobIdentifier = lastJobIdentifier;
+  }
+
+  public String getCreatedBy() {
+    return createdBy;
+  }
+
+  public void setCreatedBy(String createdBy) {
+    this.createdBy = createdBy;
+  }
+
+  public LocalDateTime getCreatedOn() {
+    return createdOn;
+  }
+
+  public void setCreatedOn(LocalDateTime createdOn) {
+    this.createdOn = createdOn;
+  }
+}
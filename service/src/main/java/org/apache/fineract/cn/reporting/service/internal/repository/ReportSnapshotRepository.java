@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.repository;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.SimpleStatement;
+import com.google.gson.Gson;
+import org.apache.fineract.cn.cassandra.core.CassandraSessionProvider;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportJob;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the pages of generated reports as gzip compressed chunks in the tenant keyspace. The
+ * summary of a report, from submission through to completion or failure, lives in static columns
+ * of the same partition, so any instance can answer for a job and a snapshot expires as a whole
+ * after the retention of its category.
+ */
+@Repository
+public class ReportSnapshotRepository {
+
+  static final String TABLE_NAME = "reporting_snapshots";
+  private static final int DEFAULT_TIME_TO_LIVE = (int) TimeUnit.DAYS.toSeconds(1L);
+  private static final String READ = "cassandra.cl.read";
+  private static final String WRITE = "cassandra.cl.write";
+
+  private final CassandraSessionProvider cassandraSessionProvider;
+  private final Environment environment;
+  private final Gson gson = new Gson();
+
+  @Autowired
+  public ReportSnapshotRepository(final CassandraSessionProvider cassandraSessionProvider,
+                                  final Environment environment) {
+    super();
+    this.cassandraSessionProvider = cassandraSessionProvider;
+    this.environment = environment;
+  }
+
+  public void createTable() {
+    this.cassandraSessionProvider.getTenantSession().execute(
+        "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+            + "snapshot_id text, "
+            + "chunk_index int, "
+            + "category text static, "
+            + "report_identifier text static, "
+            + "submitted_by text static, "
+            + "submitted_on text static, "
+            + "completed_on text static, "
+            + "page_count int static, "
+            + "row_count bigint static, "
+            + "state text static, "
+            + "message text static, "
+            + "chunk blob, "
+            + "PRIMARY KEY ((snapshot_id), chunk_index))"
+    );
+  }
+
+  public void storeChunk(final String snapshotId, final String category, final int chunkIndex,
+                         final ReportPage reportPage) {
+    this.cassandraSessionProvider.getTenantSession().execute(new SimpleStatement(
+        "INSERT INTO " + TABLE_NAME + " (snapshot_id, chunk_index, chunk) VALUES (?, ?, ?) USING TTL ?",
+        snapshotId, chunkIndex, this.compress(reportPage), this.timeToLive(category)
+    ).setConsistencyLevel(this.consistencyLevel(WRITE)));
+  }
+
+  public void storeSummary(final ReportJob reportJob) {
+    this.cassandraSessionProvider.getTenantSession().execute(new SimpleStatement(
+        "INSERT INTO " + TABLE_NAME + " (snapshot_id, category, report_identifier, submitted_by, submitted_on, "
+            + "completed_on, page_count, row_count, state, message) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "USING TTL ?",
+        reportJob.getIdentifier(), reportJob.getCategory(), reportJob.getReportIdentifier(),
+        reportJob.getSubmittedBy(), reportJob.getSubmittedOn(), reportJob.getCompletedOn(),
+        reportJob.getPageCount(), reportJob.getRowCount(), reportJob.getState().name(), reportJob.getMessage(),
+        this.timeToLive(reportJob.getCategory())
+    ).setConsistencyLevel(this.consistencyLevel(WRITE)));
+  }
+
+  public void delete(final String snapshotId) {
+    this.cassandraSessionProvider.getTenantSession().execute(new SimpleStatement(
+        "DELETE FROM " + TABLE_NAME + " WHERE snapshot_id = ?",
+        snapshotId
+    ).setConsistencyLevel(this.consistencyLevel(WRITE)));
+  }
+
+  public Optional<ReportJob> findSummary(final String snapshotId) {
+    final ResultSet resultSet = this.cassandraSessionProvider.getTenantSession().execute(new SimpleStatement(
+        "SELECT category, report_identifier, submitted_by, submitted_on, completed_on, page_count, row_count, "
+            + "state, message FROM " + TABLE_NAME + " WHERE snapshot_id = ? LIMIT 1",
+        snapshotId
+    ).setConsistencyLevel(this.consistencyLevel(READ)));
+    final Row row = resultSet.one();
+    if (row == null || row.isNull("submitted_on")) {
+      return Optional.empty();
+    }
+
+    final ReportJob reportJob = new ReportJob();
+    reportJob.setIdentifier(snapshotId);
+    reportJob.setCategory(row.getString("category"));
+    reportJob.setReportIdentifier(row.getString("report_identifier"));
+    reportJob.setState(ReportJob.State.valueOf(row.getString("state")));
+    reportJob.setMessage(row.getString("message"));
+    reportJob.setSubmittedBy(row.getString("submitted_by"));
+    reportJob.setSubmittedOn(row.getString("submitted_on"));
+    reportJob.setCompletedOn(row.getString("completed_on"));
+    reportJob.setPageCount(row.getInt("page_count"));
+    reportJob.setRowCount(row.getLong("row_count"));
+    return Optional.of(reportJob);
+  }
+
+  public Optional<ReportPage> findChunk(final String snapshotId, final int chunkIndex) {
+    final Row row = this.cassandraSessionProvider.getTenantSession().execute(new SimpleStatement(
+        "SELECT chunk FROM " + TABLE_NAME + " WHERE snapshot_id = ? AND chunk_index = ?",
+        snapshotId, chunkIndex
+    ).setConsistencyLevel(this.consistencyLevel(READ))).one();
+    return row != null && !row.isNull("chunk")
+        ? Optional.of(this.decompress(row.getBytes("chunk")))
+        : Optional.empty();
+  }
+
+  // jobs are polled across instances, so reads have to see the writes of another instance
+  private ConsistencyLevel consistencyLevel(final String property) {
+    return ConsistencyLevel.valueOf(this.environment.getProperty(property, ConsistencyLevel.LOCAL_QUORUM.name()));
+  }
+
+  private int timeToLive(final String category) {
+    return this.environment.getProperty("reporting.snapshots.timeToLive." + category, Integer.class,
+        this.environment.getProperty("reporting.snapshots.timeToLive.default", Integer.class, DEFAULT_TIME_TO_LIVE));
+  }
+
+  private ByteBuffer compress(final ReportPage reportPage) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (final Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+      this.gson.toJson(reportPage, writer);
+    } catch (final IOException ioex) {
+      throw new UncheckedIOException(ioex);
+    }
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  private ReportPage decompress(final ByteBuffer chunk) {
+    final byte[] bytes = new byte[chunk.remaining()];
+    chunk.get(bytes);
+    try (final Reader reader = new InputStreamReader(
+        new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8)) {
+      return this.gson.fromJson(reader, ReportPage.class);
+    } catch (final IOException ioex) {
+      throw new UncheckedIOException(ioex);
+    }
+  }
+}
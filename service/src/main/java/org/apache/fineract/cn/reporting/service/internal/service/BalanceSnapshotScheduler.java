@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+public class BalanceSnapshotScheduler {
+
+  private final Logger logger;
+  private final BalanceSnapshotService balanceSnapshotService;
+  private final TenantRegistry tenantRegistry;
+
+  @Autowired
+  public BalanceSnapshotScheduler(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                                  final BalanceSnapshotService balanceSnapshotService,
+                                  final TenantRegistry tenantRegistry) {
+    super();
+    this.logger = logger;
+    this.balanceSnapshotService = balanceSnapshotService;
+    this.tenantRegistry = tenantRegistry;
+  }
+
+  // runs daily so a missed month end is caught up on the next run, capturing is a no-op once a period exists
+  @Scheduled(cron = "${reporting.snapshot.cron:0 15 0 * * *}", zone = "UTC")
+  public void captureClosedPeriod() {
+    final LocalDate periodEnd = this.balanceSnapshotService.latestClosedPeriodEnd();
+    this.tenantRegistry.getTenants().forEach(tenant -> {
+      TenantContextHolder.setIdentifier(tenant);
+      try {
+        this.balanceSnapshotService.captureIfMissing(periodEnd);
+      } catch (final RuntimeException ex) {
+        this.logger.warn("Could not capture balances of tenant {} for period ending {}.", tenant, periodEnd, ex);
+      } finally {
+        TenantContextHolder.clear();
+      }
+    });
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.lang.DateConverter;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.internal.repository.AccountBalanceSnapshotEntity;
+import org.apache.fineract.cn.reporting.service.internal.repository.AccountBalanceSnapshotRepository;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Optional;
+
+@Service
+public class BalanceSnapshotService {
+
+  // the balance of a closed period is the running balance of the last entry booked up to its end,
+  // so a late capture still yields the period-end figures
+  private static final String CAPTURE_STATEMENT =
+      "INSERT INTO reporting_account_balances "
+          + "(period_end, account_identifier, account_name, account_type, balance, captured_on) "
+          + "SELECT ?1, acc.identifier, acc.a_name, acc.a_type, "
+          + "COALESCE((SELECT entry.balance FROM thoth_account_entries entry "
+          + "WHERE entry.account_id = acc.id AND entry.transaction_date < ?2 "
+          + "ORDER BY entry.transaction_date DESC, entry.id DESC LIMIT 1), 0), ?3 "
+          + "FROM thoth_accounts acc WHERE acc.created_on < ?2 "
+          + "ON CONFLICT (period_end, account_identifier) DO NOTHING";
+
+  private final Logger logger;
+  private final EntityManager entityManager;
+  private final AccountBalanceSnapshotRepository accountBalanceSnapshotRepository;
+  private final ReplicaRouting replicaRouting;
+  private final boolean captureOnDemand;
+  private final TransactionTemplate captureTransaction;
+
+  @Autowired
+  public BalanceSnapshotService(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                                final EntityManager entityManager,
+                                final AccountBalanceSnapshotRepository accountBalanceSnapshotRepository,
+                                final ReplicaRouting replicaRouting,
+                                final PlatformTransactionManager transactionManager,
+                                @Value("${reporting.snapshot.captureOnDemand:false}") final boolean captureOnDemand) {
+    super();
+    this.logger = logger;
+    this.entityManager = entityManager;
+    this.accountBalanceSnapshotRepository = accountBalanceSnapshotRepository;
+    this.replicaRouting = replicaRouting;
+    this.captureOnDemand = captureOnDemand;
+    // commits on its own, a capture has to be visible to the statement sections reading the snapshot in parallel
+    this.captureTransaction = new TransactionTemplate(transactionManager);
+    this.captureTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  public LocalDate latestClosedPeriodEnd() {
+    return LocalDate.now(Clock.systemUTC()).withDayOfMonth(1).minusDays(1);
+  }
+
+  /**
+   * Period end of the snapshot serving statements as of the given date. Periods are captured by the
+   * scheduled job, reports only capture a missing one themselves if reporting.snapshot.captureOnDemand
+   * is set, and otherwise stay read only and reject periods not captured yet.
+   */
+  public LocalDate snapshotAsOf(final String asOf) throws IllegalArgumentException {
+    final LocalDate date;
+    try {
+      date = DateConverter.dateFromIsoString(asOf);
+    } catch (final DateTimeParseException dtpex) {
+      throw new IllegalArgumentException("Invalid date " + asOf + ".");
+    }
+
+    final LocalDate periodEnd = date.equals(date.with(TemporalAdjusters.lastDayOfMonth()))
+        ? date
+        : date.withDayOfMonth(1).minusDays(1);
+    if (periodEnd.isAfter(this.latestClosedPeriodEnd())) {
+      throw new IllegalArgumentException("Period ending " + periodEnd + " is not closed yet.");
+    }
+
+    final Optional<AccountBalanceSnapshotEntity> snapshot;
+    if (this.captureOnDemand) {
+      // a capture written on demand is only visible on the primary for a while, so it is looked up there as well
+      snapshot = this.captureTransaction.execute(status -> {
+        this.capture(periodEnd);
+        return this.accountBalanceSnapshotRepository.findFirstByPeriodEndOrderByCapturedOnDesc(periodEnd);
+      });
+    } else {
+      snapshot = this.accountBalanceSnapshotRepository.findFirstByPeriodEndOrderByCapturedOnDesc(periodEnd);
+      if (!snapshot.isPresent()) {
+        throw new IllegalArgumentException("Balances of period ending " + periodEnd + " are not captured yet.");
+      }
+    }
+    snapshot.ifPresent(captured -> this.replicaRouting.requirePrimaryFor(captured.getCapturedOn()));
+    return periodEnd;
+  }
+
+  @Transactional
+  public int captureIfMissing(final LocalDate periodEnd) {
+    return this.capture(periodEnd);
+  }
+
+  private int capture(final LocalDate periodEnd) {
+    if (this.accountBalanceSnapshotRepository.countByPeriodEnd(periodEnd) > 0L) {
+      return 0;
+    }
+
+    final int captured = this.entityManager.createNativeQuery(CAPTURE_STATEMENT)
+        .setParameter(1, Date.valueOf(periodEnd))
+        .setParameter(2, Timestamp.valueOf(periodEnd.plusDays(1L).atStartOfDay()))
+        .setParameter(3, Timestamp.valueOf(LocalDateTime.now(Clock.systemUTC())))
+        .executeUpdate();
+    this.logger.info("Captured {} account balances for period ending {}.", captured, periodEnd);
+    return captured;
+  }
+
+  public String accountsAsOf(final LocalDate periodEnd, final BindParameters bindParameters) {
+    return "(SELECT snap.account_identifier AS identifier, snap.account_name AS a_name, "
+        + "snap.account_type AS a_type, snap.balance AS balance "
+        + "FROM reporting_account_balances snap WHERE snap.period_end = "
+        + bindParameters.bind(Date.valueOf(periodEnd)) + ")";
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Takes a place in the report's connection bulkhead for every connection handed out while a report
+ * runs, and gives it back once the connection is closed.
+ */
+public class BulkheadDataSource extends AbstractDataSource {
+
+  private final DataSource target;
+  private final ObjectFactory<ConnectionBulkheads> connectionBulkheads;
+
+  public BulkheadDataSource(final DataSource target, final ObjectFactory<ConnectionBulkheads> connectionBulkheads) {
+    super();
+    this.target = target;
+    this.connectionBulkheads = connectionBulkheads;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (ConnectionBulkheads.current() == null) {
+      return this.target.getConnection();
+    }
+
+    final ConnectionBulkheads.Lease lease = this.connectionBulkheads.getObject().lease();
+    final Connection connection;
+    try {
+      connection = this.target.getConnection();
+    } catch (final SQLException | RuntimeException ex) {
+      lease.release();
+      throw ex;
+    }
+
+    final AtomicBoolean released = new AtomicBoolean();
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+        (proxy, method, args) -> {
+          if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+          }
+          if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+          }
+          try {
+            return method.invoke(connection, args);
+          } catch (final InvocationTargetException itex) {
+            throw itex.getTargetException();
+          } finally {
+            if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+              lease.release();
+            }
+          }
+        });
+  }
+
+  @Override
+  public Connection getConnection(final String username, final String password) throws SQLException {
+    return this.target.getConnection(username, password);
+  }
+}
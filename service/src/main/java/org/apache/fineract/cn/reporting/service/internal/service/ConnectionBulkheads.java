@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Partitions the database connections taken by reports into one bulkhead per report class. Each
+ * bulkhead has a size across tenants and a cap per tenant, reporting.bulkheads.{class}.size and
+ * reporting.bulkheads.{class}.tenantLimit, the cap defaulting to the size and never exceeding it.
+ * A report waits up to the configured time for a connection of its bulkhead and is rejected
+ * afterwards, whatever the other bulkheads hold. Statement sections running on other threads take
+ * connections of the bulkhead as well, while a report may take one more connection on its own
+ * thread, e.g. to capture balances or to run a section inline. As every tenant has a connection
+ * pool of its own, twice the tenant caps therefore have to stay below the pool, the rest serves
+ * connections taken outside of reports, which are not counted.
+ */
+@Component
+public class ConnectionBulkheads {
+
+  private static final ThreadLocal<Assignment> CURRENT = new ThreadLocal<>();
+
+  private final Logger logger;
+  private final long maximumWaitNanos;
+  private final EnumMap<ReportClass, Bulkhead> bulkheads = new EnumMap<>(ReportClass.class);
+
+  @Autowired
+  public ConnectionBulkheads(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                             final Environment environment,
+                             @Value("${reporting.bulkheads.maximumWait:2000}") final long maximumWaitMillis) {
+    super();
+    this.logger = logger;
+    this.maximumWaitNanos = TimeUnit.MILLISECONDS.toNanos(maximumWaitMillis);
+    int size = 0;
+    for (final ReportClass reportClass : ReportClass.values()) {
+      final String prefix = "reporting.bulkheads." + reportClass.name().toLowerCase() + ".";
+      final int classSize = environment.getProperty(prefix + "size", Integer.class, 4);
+      final Bulkhead bulkhead = new Bulkhead(classSize,
+          Math.min(environment.getProperty(prefix + "tenantLimit", Integer.class, classSize), classSize));
+      this.bulkheads.put(reportClass, bulkhead);
+      size += bulkhead.tenantLimit;
+    }
+
+    final int poolSize = environment.getProperty("bonecp.maxConnectionsPerPartition", Integer.class, 10)
+        * environment.getProperty("bonecp.partitionCount", Integer.class, 2);
+    if (2 * size >= poolSize) {
+      throw new IllegalStateException("Report bulkheads of " + size + " connections per tenant leave no "
+          + "connections of the pool of " + poolSize + " to the rest of the service.");
+    }
+    final int replicaPoolSize = environment.getProperty("reporting.replica.maximumConnections", Integer.class, 10);
+    if (environment.getProperty("reporting.replica.enabled", Boolean.class, false) && 2 * size > replicaPoolSize) {
+      throw new IllegalStateException("Report bulkheads of " + size + " connections per tenant exceed the "
+          + "replica pool of " + replicaPoolSize + " connections.");
+    }
+  }
+
+  public static void set(final ReportClass reportClass) {
+    CURRENT.set(new Assignment(reportClass));
+  }
+
+  public static ReportClass current() {
+    final Assignment assignment = CURRENT.get();
+    return assignment != null ? assignment.reportClass : null;
+  }
+
+  public static void clear() {
+    CURRENT.remove();
+  }
+
+  public static ReportClass reportClassOf(final ReportSpecification reportSpecification) {
+    final Report report = reportSpecification.getClass().getAnnotation(Report.class);
+    return report != null ? report.reportClass() : ReportClass.INTERACTIVE;
+  }
+
+  public Map<ReportClass, Bulkhead> getBulkheads() {
+    return Collections.unmodifiableMap(this.bulkheads);
+  }
+
+  Lease lease() throws AdmissionRejectedException {
+    final Assignment assignment = CURRENT.get();
+    if (assignment == null) {
+      return () -> { };
+    }
+
+    // further connections of a report on the thread already holding one must not wait for themselves
+    if (assignment.held > 0) {
+      assignment.held++;
+      return () -> assignment.held--;
+    }
+
+    final Lease lease = this.bulkheads.get(assignment.reportClass)
+        .acquire(assignment.reportClass, TenantContextHolder.checkedGetIdentifier());
+    assignment.held++;
+    return () -> {
+      assignment.held--;
+      lease.release();
+    };
+  }
+
+  interface Lease {
+    void release();
+  }
+
+  private static class Assignment {
+
+    private final ReportClass reportClass;
+    private int held;
+
+    private Assignment(final ReportClass reportClass) {
+      super();
+      this.reportClass = reportClass;
+    }
+  }
+
+  public class Bulkhead {
+
+    private final int size;
+    private final int tenantLimit;
+    private final Semaphore permits;
+    private final ConcurrentHashMap<String, Semaphore> tenantPermits = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private Bulkhead(final int size, final int tenantLimit) {
+      super();
+      this.size = size;
+      this.tenantLimit = tenantLimit;
+      this.permits = new Semaphore(size, true);
+    }
+
+    // the tenant's permit is taken first, so a tenant queued behind its own cap holds none of the others
+    private Lease acquire(final ReportClass reportClass, final String tenant) {
+      final Semaphore tenantPermit = this.tenantPermits.computeIfAbsent(tenant,
+          key -> new Semaphore(this.tenantLimit, true));
+
+      final long maximumWaitNanos = ConnectionBulkheads.this.maximumWaitNanos;
+      final long start = System.nanoTime();
+      this.waiting.incrementAndGet();
+      try {
+        if (!tenantPermit.tryAcquire(maximumWaitNanos, TimeUnit.NANOSECONDS)) {
+          throw this.reject("No " + reportClass + " connection left for tenant " + tenant + ".");
+        }
+        final long remaining = Math.max(maximumWaitNanos - (System.nanoTime() - start), 0L);
+        boolean acquired = false;
+        try {
+          acquired = this.permits.tryAcquire(remaining, TimeUnit.NANOSECONDS);
+        } finally {
+          if (!acquired) {
+            tenantPermit.release();
+          }
+        }
+        if (!acquired) {
+          throw this.reject("No " + reportClass + " connection left.");
+        }
+      } catch (final InterruptedException iex) {
+        Thread.currentThread().interrupt();
+        throw this.reject("Interrupted while waiting for a " + reportClass + " connection.");
+      } finally {
+        this.waiting.decrementAndGet();
+        this.totalWaitNanos.addAndGet(System.nanoTime() - start);
+      }
+
+      this.acquiredCount.incrementAndGet();
+      return () -> {
+        this.permits.release();
+        tenantPermit.release();
+      };
+    }
+
+    private AdmissionRejectedException reject(final String message) {
+      this.rejectedCount.incrementAndGet();
+      ConnectionBulkheads.this.logger.debug(message);
+      return new AdmissionRejectedException(message);
+    }
+
+    // across tenants
+    public int getSize() {
+      return this.size;
+    }
+
+    public int getTenantLimit() {
+      return this.tenantLimit;
+    }
+
+    // across tenants
+    public int getInUse() {
+      return this.size - this.permits.availablePermits();
+    }
+
+    public int getWaiting() {
+      return this.waiting.get();
+    }
+
+    public long getAcquiredCount() {
+      return this.acquiredCount.get();
+    }
+
+    public long getRejectedCount() {
+      return this.rejectedCount.get();
+    }
+
+    public long getTotalWaitNanos() {
+      return this.totalWaitNanos.get();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.postgresql.domain.FlywayFactoryBean;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.internal.repository.ReportSnapshotRepository;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+
+@Service
+public class MigrationService {
+
+  private final Logger logger;
+  private final FlywayFactoryBean flywayFactoryBean;
+  private final DataSource dataSource;
+  private final ReportSnapshotRepository reportSnapshotRepository;
+  private final TenantRegistry tenantRegistry;
+
+  @Autowired
+  public MigrationService(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                          final FlywayFactoryBean flywayFactoryBean,
+                          final DataSource dataSource,
+                          final ReportSnapshotRepository reportSnapshotRepository,
+                          final TenantRegistry tenantRegistry) {
+    super();
+    this.logger = logger;
+    this.flywayFactoryBean = flywayFactoryBean;
+    this.dataSource = dataSource;
+    this.reportSnapshotRepository = reportSnapshotRepository;
+    this.tenantRegistry = tenantRegistry;
+  }
+
+  public void migrate() {
+    this.logger.debug("Start service migration.");
+    this.flywayFactoryBean.create(this.dataSource).migrate();
+    // the snapshot table marks the tenant as initialized for instances started later
+    this.reportSnapshotRepository.createTable();
+    this.tenantRegistry.register(TenantContextHolder.checkedGetIdentifier());
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import com.jolbox.bonecp.BoneCPDataSource;
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether the queries of a report may read from the read replica of the tenant's
+ * database. A replica is used as long as it answers and lags behind no more than the report
+ * tolerates, otherwise the report reads the primary. Replica lag is checked once per check
+ * interval in the background, reports only read the outcome of the last check, so a tenant reads
+ * the primary until its replica was checked for the first time. The replica server of a tenant is
+ * configured with reporting.replica.tenants.{tenant}.host and friends, falling back to
+ * reporting.replica.host and friends. There are no default credentials, a tenant without a
+ * configured user and password keeps reading the primary.
+ */
+@Component
+public class ReplicaRouting implements DisposableBean {
+
+  private static final ThreadLocal<Route> CURRENT = new ThreadLocal<>();
+
+  // an idle primary makes the replay timestamp age as well, a replica that replayed all it received is not behind
+  private static final String LAG_QUERY =
+      "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+          + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+          + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+  // PostgreSQL before 10 names the same functions after the xlog
+  private static final String XLOG_LAG_QUERY =
+      "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+          + "WHEN pg_last_xlog_receive_location() = pg_last_xlog_replay_location() THEN 0 "
+          + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+
+  private final Logger logger;
+  private final Environment environment;
+  private final boolean enabled;
+  private final int maximumConnections;
+  private final long maximumStaleness;
+  private final long checkIntervalNanos;
+  private final int connectTimeout;
+  private final ConcurrentHashMap<String, Replica> replicas = new ConcurrentHashMap<>();
+  private final AtomicLong replicaCount = new AtomicLong();
+  private final AtomicLong fallbackCount = new AtomicLong();
+
+  @Autowired
+  public ReplicaRouting(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                        final Environment environment,
+                        @Value("${reporting.replica.enabled:false}") final boolean enabled,
+                        @Value("${reporting.replica.maximumConnections:10}") final int maximumConnections,
+                        @Value("${reporting.replica.maximumStaleness:60}") final long maximumStaleness,
+                        @Value("${reporting.replica.checkInterval:5000}") final long checkInterval,
+                        @Value("${reporting.replica.connectTimeout:2}") final int connectTimeout) {
+    super();
+    this.logger = logger;
+    this.environment = environment;
+    this.enabled = enabled;
+    this.maximumConnections = maximumConnections;
+    this.maximumStaleness = maximumStaleness;
+    this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkInterval);
+    this.connectTimeout = connectTimeout;
+  }
+
+  public static Route current() {
+    return CURRENT.get();
+  }
+
+  public static void set(final Route route) {
+    CURRENT.set(route);
+  }
+
+  public static void clear() {
+    CURRENT.remove();
+  }
+
+  @Override
+  public void destroy() {
+    this.replicas.values().forEach(Replica::close);
+  }
+
+  public Optional<Route> routeOf(final ReportSpecification reportSpecification) {
+    final Report report = reportSpecification.getClass().getAnnotation(Report.class);
+    final long tolerated = report != null && report.maximumStaleness() >= 0L
+        ? report.maximumStaleness()
+        : this.maximumStaleness;
+    return this.enabled && tolerated > 0L ? Optional.of(new Route(tolerated)) : Optional.empty();
+  }
+
+  /**
+   * Keeps the current report on the primary if it reads data written at the given time, e.g. balances
+   * it just captured, a replica within the tolerated lag may not have replayed them yet.
+   */
+  public void requirePrimaryFor(final LocalDateTime writtenOn) {
+    final Route route = CURRENT.get();
+    if (route == null) {
+      return;
+    }
+    final LocalDateTime replayedUpTo = LocalDateTime.now(Clock.systemUTC())
+        .minusSeconds(route.maximumStaleness)
+        .minusNanos(3L * this.checkIntervalNanos);
+    if (writtenOn.isAfter(replayedUpTo)) {
+      route.primaryRequired = true;
+    }
+  }
+
+  protected Optional<DataSource> replicaFor(final DataSource primary, final Route route) {
+    final Replica replica = this.replicas.computeIfAbsent(TenantContextHolder.checkedGetIdentifier(),
+        tenant -> new Replica(tenant, primary));
+    final DataSource dataSource = replica.dataSource;
+    // a check that is overdue, e.g. behind a long scheduled task, doesn't tell the lag anymore
+    if (dataSource != null && replica.healthy && replica.lagSeconds <= route.maximumStaleness
+        && System.nanoTime() - replica.checkedAt <= 3L * this.checkIntervalNanos) {
+      this.replicaCount.incrementAndGet();
+      return Optional.of(dataSource);
+    }
+    this.fallbackCount.incrementAndGet();
+    return Optional.empty();
+  }
+
+  /**
+   * Checks the lag of the replicas of all tenants that asked for one, so reports never wait for a
+   * replica that is slow to answer or doesn't answer at all.
+   */
+  @Scheduled(fixedDelayString = "${reporting.replica.checkInterval:5000}")
+  public void checkReplicas() {
+    this.replicas.values().forEach(Replica::check);
+  }
+
+  // a replica refusing connections is not used again before its next check
+  void unavailable(final DataSource dataSource, final SQLException sqlex) {
+    this.fallbackCount.incrementAndGet();
+    this.replicas.values()
+        .stream()
+        .filter(replica -> replica.dataSource == dataSource)
+        .forEach(replica -> replica.unavailable(sqlex));
+  }
+
+  public Map<String, Double> getLagSeconds() {
+    final HashMap<String, Double> lagSeconds = new HashMap<>();
+    this.replicas.forEach((tenant, replica) -> lagSeconds.put(tenant, replica.healthy ? replica.lagSeconds : -1.0D));
+    return lagSeconds;
+  }
+
+  public long getReplicaCount() {
+    return this.replicaCount.get();
+  }
+
+  public long getFallbackCount() {
+    return this.fallbackCount.get();
+  }
+
+  /**
+   * Creates the connection pool of the tenant's replica, or returns null if no credentials are
+   * configured for it. Connecting gives up after the connect timeout, so a replica that went away
+   * costs a report at most that long before it reads the primary.
+   */
+  protected DataSource connectReplica(final String tenant, final String database) {
+    final String prefix = "reporting.replica.tenants." + tenant + ".";
+    final String user = this.replicaProperty(prefix, "user", null);
+    final String password = this.replicaProperty(prefix, "password", null);
+    if (user == null || password == null) {
+      this.logger.warn("No replica credentials configured for {}, its reports read the primary.", tenant);
+      return null;
+    }
+    final String host = this.replicaProperty(prefix, "host", "localhost");
+    final String port = this.replicaProperty(prefix, "port", "5432");
+    final BoneCPDataSource dataSource = new BoneCPDataSource();
+    dataSource.setDriverClass("org.postgresql.Driver");
+    dataSource.setJdbcUrl("jdbc:postgresql://" + host + ":" + port + "/" + database
+        + "?connectTimeout=" + this.connectTimeout + "&loginTimeout=" + this.connectTimeout);
+    dataSource.setUsername(user);
+    dataSource.setPassword(password);
+    dataSource.setPartitionCount(1);
+    dataSource.setMinConnectionsPerPartition(1);
+    dataSource.setMaxConnectionsPerPartition(this.maximumConnections);
+    dataSource.setConnectionTimeout(this.connectTimeout, TimeUnit.SECONDS);
+    dataSource.setDefaultReadOnly(Boolean.TRUE);
+    this.logger.info("Reading reports of database {} from replica {}:{}.", database, host, port);
+    return dataSource;
+  }
+
+  /**
+   * Seconds the replica lags behind its primary.
+   */
+  protected double measureLag(final DataSource replica) throws SQLException {
+    try (final Connection connection = replica.getConnection();
+         final Statement statement = connection.createStatement()) {
+      statement.setQueryTimeout(this.connectTimeout);
+      final String lagQuery = connection.getMetaData().getDatabaseMajorVersion() >= 10 ? LAG_QUERY : XLOG_LAG_QUERY;
+      try (final ResultSet resultSet = statement.executeQuery(lagQuery)) {
+        resultSet.next();
+        return resultSet.getDouble(1);
+      }
+    }
+  }
+
+  private String replicaProperty(final String tenantPrefix, final String name, final String defaultValue) {
+    return this.environment.getProperty(tenantPrefix + name,
+        this.environment.getProperty("reporting.replica." + name, defaultValue));
+  }
+
+  public static class Route {
+
+    private final long maximumStaleness;
+    private volatile DataSource target;
+    private volatile boolean primaryRequired;
+
+    private Route(final long maximumStaleness) {
+      super();
+      this.maximumStaleness = maximumStaleness;
+    }
+
+    DataSource getTarget() {
+      return this.target;
+    }
+
+    void setTarget(final DataSource target) {
+      this.target = target;
+    }
+
+    boolean isPrimaryRequired() {
+      return this.primaryRequired;
+    }
+  }
+
+  private class Replica {
+
+    private final String tenant;
+    private final DataSource primary;
+    private volatile DataSource dataSource;
+    private volatile boolean refused;
+    private volatile boolean healthy;
+    private volatile double lagSeconds;
+    private volatile long checkedAt;
+
+    private Replica(final String tenant, final DataSource primary) {
+      super();
+      this.tenant = tenant;
+      this.primary = primary;
+    }
+
+    private void check() {
+      try {
+        if (this.refused) {
+          return;
+        }
+        if (this.dataSource == null) {
+          this.dataSource = this.connect();
+          if (this.dataSource == null) {
+            this.refused = true;
+            return;
+          }
+        }
+        this.lagSeconds = ReplicaRouting.this.measureLag(this.dataSource);
+        this.checkedAt = System.nanoTime();
+        if (!this.healthy) {
+          ReplicaRouting.this.logger.info("Replica of {} is available, lagging {} seconds.", this.tenant, this.lagSeconds);
+        }
+        this.healthy = true;
+      } catch (final SQLException sqlex) {
+        this.unavailable(sqlex);
+      } catch (final RuntimeException rex) {
+        ReplicaRouting.this.logger.warn("Could not check replica of {}.", this.tenant, rex);
+        this.healthy = false;
+      }
+    }
+
+    // the replica carries the same databases as the primary, the tenant's is the one the primary connects to
+    private DataSource connect() throws SQLException {
+      final String database;
+      final Optional<String> caller = TenantContextHolder.identifier();
+      TenantContextHolder.setIdentifier(this.tenant);
+      try (final Connection connection = this.primary.getConnection()) {
+        database = connection.getCatalog();
+      } finally {
+        TenantContextHolder.clear();
+        caller.ifPresent(TenantContextHolder::setIdentifier);
+      }
+      return ReplicaRouting.this.connectReplica(this.tenant, database);
+    }
+
+    private void unavailable(final SQLException sqlex) {
+      if (this.healthy) {
+        ReplicaRouting.this.logger.warn("Replica of {} unavailable, reading the primary.", this.tenant, sqlex);
+      }
+      this.healthy = false;
+    }
+
+    private void close() {
+      if (this.dataSource instanceof BoneCPDataSource) {
+        ((BoneCPDataSource) this.dataSource).close();
+      }
+    }
+  }
+}
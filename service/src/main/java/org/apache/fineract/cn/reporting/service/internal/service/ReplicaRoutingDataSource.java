@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hands out connections to the read replica for read only transactions of a report that tolerates
+ * replica lag, and to the primary for everything else. The choice is made once per report and
+ * kept for the statement sections it runs on other threads, so all of them read the same server.
+ * A report reading data it just wrote, and a report whose replica refuses connections, reads the primary.
+ * Has to sit behind a lazy connection proxy, the transaction is only known to be read only once it
+ * has begun.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+  private final DataSource primary;
+  private final ObjectFactory<ReplicaRouting> replicaRouting;
+
+  public ReplicaRoutingDataSource(final DataSource primary, final ObjectFactory<ReplicaRouting> replicaRouting) {
+    super();
+    this.primary = primary;
+    this.replicaRouting = replicaRouting;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    final ReplicaRouting.Route route = ReplicaRouting.current();
+    if (route == null || route.isPrimaryRequired()) {
+      return this.primary.getConnection();
+    }
+
+    final DataSource target = route.getTarget();
+    if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+      // statement sections manage their own transactions and follow the report
+      return target != null ? this.connect(route, target) : this.primary.getConnection();
+    }
+
+    if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return this.primary.getConnection();
+    }
+
+    if (target == null) {
+      final DataSource chosen = this.replicaRouting.getObject().replicaFor(this.primary, route).orElse(this.primary);
+      route.setTarget(chosen);
+      return this.connect(route, chosen);
+    }
+    return this.connect(route, target);
+  }
+
+  private Connection connect(final ReplicaRouting.Route route, final DataSource target) throws SQLException {
+    if (target == this.primary) {
+      return this.primary.getConnection();
+    }
+    try {
+      return target.getConnection();
+    } catch (final SQLException sqlex) {
+      this.replicaRouting.getObject().unavailable(target, sqlex);
+      route.setTarget(this.primary);
+      return this.primary.getConnection();
+    }
+  }
+
+  @Override
+  public Connection getConnection(final String username, final String password) throws SQLException {
+    return this.primary.getConnection(username, password);
+  }
+}
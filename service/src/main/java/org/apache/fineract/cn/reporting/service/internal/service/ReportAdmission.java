@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Limits how many reports run against the database at once, per tenant and per report across
+ * tenants. Each tenant may only hold a share of a report's permits, so one tenant flooding a report
+ * can't queue out the others. A request over any limit waits up to the configured time for a permit
+ * and is rejected afterwards. The report permits are taken first, so requests queued behind a busy
+ * report don't hold permits of their tenant other reports could use.
+ */
+@Component
+public class ReportAdmission {
+
+  private final Logger logger;
+  private final Environment environment;
+  private final int tenantLimit;
+  private final int reportLimit;
+  private final int reportShare;
+  private final long maximumWaitNanos;
+  private final ConcurrentHashMap<String, Semaphore> tenantPermits = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Semaphore> reportPermits = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Semaphore> tenantReportPermits = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Statistics> statistics = new ConcurrentHashMap<>();
+  private volatile BiConsumer<String, Statistics> statisticsListener = (tenant, tenantStatistics) -> { };
+
+  @Autowired
+  public ReportAdmission(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                         final Environment environment,
+                         @Value("${reporting.admission.tenantLimit:8}") final int tenantLimit,
+                         @Value("${reporting.admission.reportLimit:4}") final int reportLimit,
+                         @Value("${reporting.admission.reportShare:2}") final int reportShare,
+                         @Value("${reporting.admission.maximumWait:2000}") final long maximumWaitMillis) {
+    super();
+    this.logger = logger;
+    this.environment = environment;
+    this.tenantLimit = tenantLimit;
+    this.reportLimit = reportLimit;
+    this.reportShare = reportShare;
+    this.maximumWaitNanos = TimeUnit.MILLISECONDS.toNanos(maximumWaitMillis);
+  }
+
+  public Permit acquire(final String tenant, final String category, final String identifier)
+      throws AdmissionRejectedException {
+    return this.acquire(tenant, category, identifier, this.maximumWaitNanos);
+  }
+
+  /**
+   * Like {@link #acquire(String, String, String)}, but waits up to the given time instead of the
+   * configured one. Background work without a client waiting for it may wait longer.
+   */
+  public Permit acquire(final String tenant, final String category, final String identifier,
+                        final long maximumWaitNanos) throws AdmissionRejectedException {
+    final Semaphore tenantPermit = this.tenantPermits.computeIfAbsent(tenant,
+        key -> new Semaphore(this.tenantLimit, true));
+    final Semaphore reportPermit = this.reportPermits.computeIfAbsent(category + '/' + identifier,
+        key -> new Semaphore(this.limitOf(category, identifier), true));
+    final Semaphore tenantReportPermit = this.tenantReportPermits.computeIfAbsent(
+        tenant + '/' + category + '/' + identifier,
+        key -> new Semaphore(Math.min(this.reportShare, this.limitOf(category, identifier)), true));
+    final Statistics tenantStatistics = this.statisticsOf(tenant);
+
+    final long start = System.nanoTime();
+    tenantStatistics.waiting.incrementAndGet();
+    try {
+      if (!tenantReportPermit.tryAcquire(maximumWaitNanos, TimeUnit.NANOSECONDS)) {
+        throw this.reject(tenantStatistics,
+            "Too many " + category + " " + identifier + " reports running for tenant " + tenant + ".");
+      }
+      if (!tryAcquire(reportPermit, remainingOf(maximumWaitNanos, start), tenantReportPermit)) {
+        throw this.reject(tenantStatistics, "Too many " + category + " " + identifier + " reports running.");
+      }
+      if (!tryAcquire(tenantPermit, remainingOf(maximumWaitNanos, start), reportPermit, tenantReportPermit)) {
+        throw this.reject(tenantStatistics, "Too many reports running for tenant " + tenant + ".");
+      }
+    } catch (final InterruptedException iex) {
+      Thread.currentThread().interrupt();
+      throw this.reject(tenantStatistics,
+          "Interrupted while waiting for report " + category + " " + identifier + ".");
+    } finally {
+      tenantStatistics.waiting.decrementAndGet();
+      tenantStatistics.totalWaitNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    tenantStatistics.admittedCount.incrementAndGet();
+    return () -> {
+      tenantPermit.release();
+      reportPermit.release();
+      tenantReportPermit.release();
+    };
+  }
+
+  /**
+   * Hands the statistics of every tenant admitted so far, and of every tenant admitted later, to
+   * the given listener, e.g. to register them as metrics tagged with the tenant.
+   */
+  public void onTenant(final BiConsumer<String, Statistics> listener) {
+    this.statisticsListener = listener;
+    this.statistics.forEach(listener);
+  }
+
+  private Statistics statisticsOf(final String tenant) {
+    final Statistics known = this.statistics.get(tenant);
+    if (known != null) {
+      return known;
+    }
+    final Statistics created = new Statistics();
+    final Statistics raced = this.statistics.putIfAbsent(tenant, created);
+    if (raced != null) {
+      return raced;
+    }
+    this.statisticsListener.accept(tenant, created);
+    return created;
+  }
+
+  // gives the permits already held back unless the next one is granted, also when interrupted while waiting
+  private static boolean tryAcquire(final Semaphore permit, final long waitNanos, final Semaphore... held)
+      throws InterruptedException {
+    boolean acquired = false;
+    try {
+      acquired = permit.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+    } finally {
+      if (!acquired) {
+        for (final Semaphore heldPermit : held) {
+          heldPermit.release();
+        }
+      }
+    }
+    return acquired;
+  }
+
+  private static long remainingOf(final long maximumWaitNanos, final long start) {
+    return Math.max(maximumWaitNanos - (System.nanoTime() - start), 0L);
+  }
+
+  // expensive reports may be given a tighter limit, e.g. reporting.admission.reports.Teller.Transactions
+  private int limitOf(final String category, final String identifier) {
+    return this.environment.getProperty("reporting.admission.reports." + category + "." + identifier,
+        Integer.class, this.reportLimit);
+  }
+
+  private AdmissionRejectedException reject(final Statistics tenantStatistics, final String message) {
+    tenantStatistics.rejectedCount.incrementAndGet();
+    this.logger.debug(message);
+    return new AdmissionRejectedException(message);
+  }
+
+  public static class Statistics {
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    public int getWaiting() {
+      return this.waiting.get();
+    }
+
+    public long getAdmittedCount() {
+      return this.admittedCount.get();
+    }
+
+    public long getRejectedCount() {
+      return this.rejectedCount.get();
+    }
+
+    public long getTotalWaitNanos() {
+      return this.totalWaitNanos.get();
+    }
+  }
+
+  public interface Permit extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
@@ -16,26 +16,11 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package org.apache.fineract.cn.reporting.service.internal.repository;
+package org.apache.fineract.cn.reporting.service.internal.service;
 
-import javax.persistence.Entity;
-import javax.persistence.Id;
+public class ReportCancelledException extends RuntimeException {
 
-@Entity
-public class DummyEntity {
-
-  @Id
-  private Long id;
-
-  public DummyEntity() {
-    super();
-  }
-
-  public Long getId() {
-    return id;
-  }
-
-  public void setId(Long id) {
-    this.id = id;
+  public ReportCancelledException(final String message) {
+    super(message);
   }
 }
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.QueryDeadline;
+import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportPhases;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the queries of a report in one transaction bounded by a deadline, the earlier of the
+ * report's timeout and the one given by the client. Requests carrying an identifier can be
+ * cancelled while running, which cancels the statements on all PostgreSQL backends working on it.
+ */
+@Component
+public class ReportExecution {
+
+  // PostgreSQL reports both statement timeouts and cancel requests as query_canceled
+  private static final String QUERY_CANCELED = "57014";
+
+  private final Logger logger;
+  private final EntityManager entityManager;
+  private final DataSource dataSource;
+  private final ReplicaRouting replicaRouting;
+  private final ReportingMetrics reportingMetrics;
+  private final long defaultTimeoutMillis;
+  private final ConcurrentHashMap<String, Running> running = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ReportExecution(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                         final EntityManager entityManager,
+                         final DataSource dataSource,
+                         final ReplicaRouting replicaRouting,
+                         final ReportingMetrics reportingMetrics,
+                         @Value("${reporting.query.timeout:120}") final long defaultTimeout) {
+    super();
+    this.logger = logger;
+    this.entityManager = entityManager;
+    this.dataSource = dataSource;
+    this.replicaRouting = replicaRouting;
+    this.reportingMetrics = reportingMetrics;
+    this.defaultTimeoutMillis = TimeUnit.SECONDS.toMillis(defaultTimeout);
+  }
+
+  // read only, so the connection may come from the read replica if the report allows for it
+  @Transactional(readOnly = true)
+  public <T> T execute(final String requestId, final ReportSpecification reportSpecification,
+                       final Long clientDeadlineNanos, final Supplier<T> work) {
+    final QueryDeadline queryDeadline = new QueryDeadline(this.deadlineOf(reportSpecification, clientDeadlineNanos));
+
+    final ReplicaRouting.Route route = this.routeOf(reportSpecification);
+    final ReportClass reportClass = ConnectionBulkheads.reportClassOf(reportSpecification);
+    ReplicaRouting.set(route);
+    ConnectionBulkheads.set(reportClass);
+    QueryDeadline.set(queryDeadline);
+    final Running current;
+    try {
+      current = requestId != null ? this.register(requestId, route, queryDeadline) : null;
+    } catch (final RuntimeException ex) {
+      QueryDeadline.clear();
+      ConnectionBulkheads.clear();
+      ReplicaRouting.clear();
+      throw ex;
+    }
+    final long start = System.nanoTime();
+    final ReportPhases reportPhases = ReportPhases.start();
+    try {
+      // once for the transaction, the queries of the report only set it again when it went stale
+      QueryDeadline.apply(this.entityManager);
+      return work.get();
+    } catch (final RuntimeException ex) {
+      if (!isQueryCanceled(ex)) {
+        throw ex;
+      }
+      if (queryDeadline.isCancelled()) {
+        this.logger.info("Report request {} cancelled.", requestId);
+        throw new ReportCancelledException("Report request was cancelled.");
+      }
+      this.logger.warn("Report {} exceeded its deadline.", reportSpecification.getClass().getSimpleName());
+      throw new ReportTimeoutException("Report did not finish in time.");
+    } finally {
+      reportPhases.finish();
+      ReportPhases.clear();
+      final Report report = reportSpecification.getClass().getAnnotation(Report.class);
+      if (report != null) {
+        this.reportingMetrics.recordExecution(TenantContextHolder.checkedGetIdentifier(), report.category(),
+            report.identifier(), reportClass, reportPhases, System.nanoTime() - start);
+      }
+      QueryDeadline.clear();
+      ConnectionBulkheads.clear();
+      ReplicaRouting.clear();
+      if (current != null) {
+        queryDeadline.detach(current.backendPid);
+        this.running.remove(requestId, current);
+      }
+    }
+  }
+
+  public boolean cancel(final String requestId) {
+    final Running current = this.running.get(requestId);
+    if (current == null || !current.tenant.equals(TenantContextHolder.checkedGetIdentifier())) {
+      return false;
+    }
+    // the backends live on whichever server the report reads, primary or replica
+    final DataSource server = current.route != null && current.route.getTarget() != null
+        ? current.route.getTarget()
+        : this.dataSource;
+    current.queryDeadline.cancel(backendPid -> {
+      try (final Connection connection = server.getConnection();
+           final PreparedStatement statement = connection.prepareStatement("SELECT pg_cancel_backend(?)")) {
+        statement.setInt(1, backendPid);
+        statement.execute();
+      } catch (final SQLException sqlex) {
+        this.logger.warn("Could not cancel backend {} of report request {}.", backendPid, requestId, sqlex);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Point in {@link System#nanoTime()} a request for the report has to finish by, the earlier of the
+   * deadline of the client, if any, and the timeout of the report.
+   */
+  public long deadlineOf(final ReportSpecification reportSpecification, final Long clientDeadlineNanos) {
+    final long reportDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeoutOf(reportSpecification));
+    return clientDeadlineNanos != null && clientDeadlineNanos - reportDeadlineNanos < 0L
+        ? clientDeadlineNanos
+        : reportDeadlineNanos;
+  }
+
+  // executions sharing a transaction, like the pages of a job, share its connection and have to agree on the server
+  private ReplicaRouting.Route routeOf(final ReportSpecification reportSpecification) {
+    final ReplicaRouting.Route bound =
+        (ReplicaRouting.Route) TransactionSynchronizationManager.getResource(ReplicaRouting.Route.class);
+    if (bound != null) {
+      return bound;
+    }
+    final ReplicaRouting.Route route = this.replicaRouting.routeOf(reportSpecification).orElse(null);
+    if (route != null) {
+      TransactionSynchronizationManager.bindResource(ReplicaRouting.Route.class, route);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(final int status) {
+          TransactionSynchronizationManager.unbindResourceIfPossible(ReplicaRouting.Route.class);
+        }
+      });
+    }
+    return route;
+  }
+
+  private long timeoutOf(final ReportSpecification reportSpecification) {
+    final Report report = reportSpecification.getClass().getAnnotation(Report.class);
+    return report != null && report.timeout() > 0L
+        ? TimeUnit.SECONDS.toMillis(report.timeout())
+        : this.defaultTimeoutMillis;
+  }
+
+  private Running register(final String requestId, final ReplicaRouting.Route route,
+                           final QueryDeadline queryDeadline) {
+    final int backendPid =
+        ((Number) this.entityManager.createNativeQuery("SELECT pg_backend_pid()").getSingleResult()).intValue();
+    final Running current = new Running(TenantContextHolder.checkedGetIdentifier(), backendPid, route, queryDeadline);
+    if (this.running.putIfAbsent(requestId, current) != null) {
+      throw new IllegalArgumentException("Report request " + requestId + " is already running.");
+    }
+    queryDeadline.attach(backendPid);
+    return current;
+  }
+
+  private static boolean isQueryCanceled(final Throwable throwable) {
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof javax.persistence.QueryTimeoutException
+          || cause instanceof org.hibernate.QueryTimeoutException
+          || (cause instanceof SQLException && QUERY_CANCELED.equals(((SQLException) cause).getSQLState()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class Running {
+
+    private final String tenant;
+    private final int backendPid;
+    private final ReplicaRouting.Route route;
+    private final QueryDeadline queryDeadline;
+
+    private Running(final String tenant, final int backendPid, final ReplicaRouting.Route route,
+                    final QueryDeadline queryDeadline) {
+      super();
+      this.tenant = tenant;
+      this.backendPid = backendPid;
+      this.route = route;
+      this.queryDeadline = queryDeadline;
+    }
+  }
+}
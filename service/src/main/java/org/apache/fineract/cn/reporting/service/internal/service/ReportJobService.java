@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import com.google.gson.Gson;
+import org.apache.fineract.cn.api.util.UserContext;
+import org.apache.fineract.cn.api.util.UserContextHolder;
+import org.apache.fineract.cn.lang.DateConverter;
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.lang.config.TenantHeaderFilter;
+import org.apache.fineract.cn.reporting.api.v1.EventConstants;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportJob;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.internal.repository.ReportSnapshotRepository;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs submitted reports on a bounded worker pool. Pages are written to the report snapshot of the
+ * job as they are generated, and the job summary is kept next to them from submission on. A job
+ * can therefore be polled on any instance, and a failure stays visible until its snapshot expires.
+ *
+ * Every page runs in its own short read only transaction and passes report admission like a live
+ * request, so a long job neither holds a connection nor keeps the database from cleaning up rows
+ * for its whole run. Pages continue from the cursor of the previous page where the report
+ * supports one, so rows are neither skipped nor repeated when rows change in between. The pages
+ * of a job are therefore not a single consistent snapshot, each one shows the database as of its
+ * own query. Each tenant may have a limited number of jobs queued or running at once.
+ */
+@Service
+public class ReportJobService implements DisposableBean {
+
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  // every page is stored as one compressed cell, which has to stay far below the mutation size limit of Cassandra
+  public static final int MAXIMUM_PAGE_SIZE = 1000;
+
+  private final Logger logger;
+  private final JmsTemplate jmsTemplate;
+  private final ReportSnapshotRepository reportSnapshotRepository;
+  private final ReportExecution reportExecution;
+  private final ReportAdmission reportAdmission;
+  private final int tenantShare;
+  private final ThreadPoolExecutor executor;
+  private final ConcurrentHashMap<String, AtomicInteger> tenantJobs = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ReportJobService(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                          final JmsTemplate jmsTemplate,
+                          final ReportSnapshotRepository reportSnapshotRepository,
+                          final ReportExecution reportExecution,
+                          final ReportAdmission reportAdmission,
+                          @Value("${reporting.job.poolSize:4}") final int poolSize,
+                          @Value("${reporting.job.queueCapacity:32}") final int queueCapacity,
+                          @Value("${reporting.job.tenantShare:8}") final int tenantShare) {
+    super();
+    this.logger = logger;
+    this.jmsTemplate = jmsTemplate;
+    this.reportSnapshotRepository = reportSnapshotRepository;
+    this.reportExecution = reportExecution;
+    this.reportAdmission = reportAdmission;
+    this.tenantShare = tenantShare;
+
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          final Thread thread = new Thread(runnable, "report-job-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  @Override
+  public void destroy() {
+    this.executor.shutdownNow();
+  }
+
+  public ReportJob submit(final String category, final String identifier,
+                          final ReportSpecification reportSpecification, final ReportRequest reportRequest,
+                          final int size) throws RejectedExecutionException {
+    final String tenant = TenantContextHolder.checkedGetIdentifier();
+    final Optional<UserContext> userContext = UserContextHolder.getUserContext();
+
+    final ReportJob reportJob = new ReportJob();
+    reportJob.setIdentifier(UUID.randomUUID().toString());
+    reportJob.setCategory(category);
+    reportJob.setReportIdentifier(identifier);
+    reportJob.setState(ReportJob.State.PENDING);
+    reportJob.setSubmittedBy(UserContextHolder.checkedGetUser());
+    reportJob.setSubmittedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
+
+    // a tenant submitting many jobs must not take the whole queue of the instance
+    final AtomicInteger tenantJobCount = this.tenantJobs.computeIfAbsent(tenant, key -> new AtomicInteger());
+    if (tenantJobCount.incrementAndGet() > this.tenantShare) {
+      tenantJobCount.decrementAndGet();
+      throw new RejectedExecutionException("Too many report jobs pending for tenant " + tenant + ".");
+    }
+
+    try {
+      // the summary is written before the job may start, so a later RUNNING is never overwritten
+      this.reportSnapshotRepository.storeSummary(reportJob);
+    } catch (final RuntimeException ex) {
+      tenantJobCount.decrementAndGet();
+      throw ex;
+    }
+    final ReportJob runningJob = copyOf(reportJob);
+    try {
+      this.executor.execute(() -> {
+        TenantContextHolder.setIdentifier(tenant);
+        userContext.ifPresent(UserContextHolder::setUserContext);
+        try {
+          this.run(tenant, runningJob, reportSpecification, reportRequest, size);
+        } finally {
+          tenantJobCount.decrementAndGet();
+          UserContextHolder.clear();
+          TenantContextHolder.clear();
+        }
+      });
+    } catch (final RejectedExecutionException rex) {
+      tenantJobCount.decrementAndGet();
+      this.reportSnapshotRepository.delete(reportJob.getIdentifier());
+      throw rex;
+    }
+    return reportJob;
+  }
+
+  public static int checkedPageSize(final Integer size) throws IllegalArgumentException {
+    if (size == null) {
+      return DEFAULT_PAGE_SIZE;
+    }
+    if (size < 1 || size > MAXIMUM_PAGE_SIZE) {
+      throw new IllegalArgumentException("Page size must be between 1 and " + MAXIMUM_PAGE_SIZE + ".");
+    }
+    return size;
+  }
+
+  public Optional<ReportJob> findJob(final String jobIdentifier) {
+    return this.reportSnapshotRepository.findSummary(jobIdentifier);
+  }
+
+  public Optional<ReportPage> findPage(final String jobIdentifier, final int pageIndex) {
+    return pageIndex >= 0
+        ? this.reportSnapshotRepository.findChunk(jobIdentifier, pageIndex)
+        : Optional.empty();
+  }
+
+  private void run(final String tenant, final ReportJob reportJob, final ReportSpecification reportSpecification,
+                   final ReportRequest reportRequest, final int size) {
+    try {
+      reportJob.setState(ReportJob.State.RUNNING);
+      this.reportSnapshotRepository.storeSummary(reportJob);
+
+      this.runPages(tenant, reportJob, reportSpecification, reportRequest, size);
+      this.complete(reportJob, ReportJob.State.DONE, null);
+    } catch (final RuntimeException ex) {
+      this.logger.warn("Report job {} failed.", reportJob.getIdentifier(), ex);
+      try {
+        this.complete(reportJob, ReportJob.State.FAILED, ex.getMessage());
+      } catch (final RuntimeException rex) {
+        this.logger.error("Could not record failure of report job {}.", reportJob.getIdentifier(), rex);
+      }
+    }
+
+    this.jmsTemplate.convertAndSend(
+        new Gson().toJson(reportJob.getIdentifier()),
+        message -> {
+          message.setStringProperty(TenantHeaderFilter.TENANT_HEADER, tenant);
+          message.setStringProperty(EventConstants.SELECTOR_NAME, EventConstants.REPORT_JOB_COMPLETED);
+          return message;
+        }
+    );
+  }
+
+  private void runPages(final String tenant, final ReportJob reportJob, final ReportSpecification reportSpecification,
+                        final ReportRequest reportRequest, final int size) {
+    int pageIndex = 0;
+    PageCursor pageCursor = null;
+    ReportPage reportPage;
+    do {
+      final int currentPageIndex = pageIndex;
+      final PageCursor currentPageCursor = pageCursor;
+      // nobody waits for the page of a job, so it queues for admission instead of being rejected
+      try (final ReportAdmission.Permit ignored = this.reportAdmission.acquire(tenant, reportJob.getCategory(),
+          reportJob.getReportIdentifier(), Long.MAX_VALUE)) {
+        // the job identifier doubles as request identifier, so jobs can be cancelled like any other request
+        reportPage = this.reportExecution.execute(reportJob.getIdentifier(), reportSpecification, null,
+            () -> reportSpecification.generateReport(reportRequest, currentPageIndex, size, currentPageCursor));
+      }
+      final String cursor = reportPage.getCursor();
+      reportPage.setCursor(PageCursor.bind(cursor, reportJob.getCategory(), reportJob.getReportIdentifier()));
+      this.reportSnapshotRepository.storeChunk(reportJob.getIdentifier(), reportJob.getCategory(),
+          pageIndex, reportPage);
+      reportJob.setPageCount(reportJob.getPageCount() + 1);
+      if (reportPage.getRows() != null) {
+        reportJob.setRowCount(reportJob.getRowCount() + reportPage.getRows().size());
+      }
+      // keeps the progress visible to polls on other instances
+      this.reportSnapshotRepository.storeSummary(reportJob);
+      pageIndex++;
+      pageCursor = PageCursor.decode(cursor);
+    } while (reportPage.isHasMore());
+  }
+
+  private void complete(final ReportJob reportJob, final ReportJob.State state, final String message) {
+    reportJob.setState(state);
+    reportJob.setMessage(message);
+    reportJob.setCompletedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
+    this.reportSnapshotRepository.storeSummary(reportJob);
+  }
+
+  private static ReportJob copyOf(final ReportJob reportJob) {
+    final ReportJob copy = new ReportJob();
+    copy.setIdentifier(reportJob.getIdentifier());
+    copy.setCategory(reportJob.getCategory());
+    copy.setReportIdentifier(reportJob.getReportIdentifier());
+    copy.setState(reportJob.getState());
+    copy.setPageCount(reportJob.getPageCount());
+    copy.setRowCount(reportJob.getRowCount());
+    copy.setMessage(reportJob.getMessage());
+    copy.setSubmittedBy(reportJob.getSubmittedBy());
+    copy.setSubmittedOn(reportJob.getSubmittedOn());
+    copy.setCompletedOn(reportJob.getCompletedOn());
+    return copy;
+  }
+}
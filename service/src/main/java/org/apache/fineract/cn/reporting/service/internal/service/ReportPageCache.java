@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.api.util.UserContextHolder;
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded least recently used cache of generated report pages, keyed by tenant, report and a
+ * canonical form of the request. Reports opt in through {@link Report#timeToLive()}.
+ * Invalidating a category bumps its version for the tenant, entries of older versions are never
+ * hit again and leave through expiry or eviction. Concurrent misses of the same key wait for the
+ * one generation already running instead of starting their own, but no longer than their own deadline.
+ */
+@Component
+public class ReportPageCache {
+
+  private final Logger logger;
+  private final LinkedHashMap<String, Entry> reportPages;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LocalDateTime> invalidations = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, CompletableFuture<ReportPage>> generations = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ReportPageCache(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                         @Value("${reporting.cache.maximumSize:1024}") final int maximumSize) {
+    super();
+    this.logger = logger;
+    this.reportPages = new LinkedHashMap<String, Entry>(16, 0.75F, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+        return this.size() > maximumSize;
+      }
+    };
+  }
+
+  public ReportPage get(final String category, final String identifier,
+                        final ReportSpecification reportSpecification, final ReportRequest reportRequest,
+                        final Integer pageIndex, final Integer size, final String cursor,
+                        final long deadlineNanos, final Supplier<ReportPage> generator) {
+    final Report report = reportSpecification.getClass().getAnnotation(Report.class);
+    if (report == null || report.timeToLive() <= 0L) {
+      return generator.get();
+    }
+
+    final String tenant = TenantContextHolder.identifier().orElse("");
+    final String key = this.createKey(tenant, category, identifier, reportRequest, pageIndex, size, cursor);
+    final long now = System.nanoTime();
+
+    synchronized (this.reportPages) {
+      final Entry entry = this.reportPages.get(key);
+      if (entry != null) {
+        if (entry.expiresAt - now > 0L) {
+          this.hitCount.incrementAndGet();
+          return this.copyOf(entry.reportPage);
+        }
+        this.reportPages.remove(key);
+      }
+    }
+
+    final CompletableFuture<ReportPage> generation = new CompletableFuture<>();
+    final CompletableFuture<ReportPage> running = this.generations.putIfAbsent(key, generation);
+    if (running != null) {
+      this.coalescedCount.incrementAndGet();
+      try {
+        return this.copyOf(running.get(Math.max(deadlineNanos - System.nanoTime(), 0L), TimeUnit.NANOSECONDS));
+      } catch (final TimeoutException tex) {
+        throw new ReportTimeoutException("Report did not finish in time.");
+      } catch (final InterruptedException iex) {
+        Thread.currentThread().interrupt();
+        throw new ReportCancelledException("Report request was interrupted.");
+      } catch (final ExecutionException eex) {
+        // a generation cancelled by its own client says nothing about this request
+        if (!(eex.getCause() instanceof ReportCancelledException)) {
+          if (eex.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) eex.getCause();
+          }
+          if (eex.getCause() instanceof Error) {
+            throw (Error) eex.getCause();
+          }
+          throw new IllegalStateException(eex.getCause());
+        }
+        return generator.get();
+      }
+    }
+
+    this.missCount.incrementAndGet();
+    try {
+      final ReportPage reportPage = generator.get();
+      synchronized (this.reportPages) {
+        this.reportPages.put(key, new Entry(reportPage, now + TimeUnit.SECONDS.toNanos(report.timeToLive())));
+      }
+      generation.complete(reportPage);
+      this.logger.debug("Cached report {} {} for {} seconds.", category, identifier, report.timeToLive());
+      return reportPage;
+    } catch (final RuntimeException | Error ex) {
+      generation.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      this.generations.remove(key, generation);
+    }
+  }
+
+  public void invalidate(final String tenant, final String category) {
+    this.versions.computeIfAbsent(this.versionKey(tenant, category), key -> new AtomicLong()).incrementAndGet();
+    this.invalidations.put(this.versionKey(tenant, category), LocalDateTime.now(Clock.systemUTC()));
+    this.logger.debug("Invalidated cached {} reports of tenant {}.", category, tenant);
+  }
+
+  /**
+   * Time in UTC this instance last invalidated the category of the tenant, empty if it didn't since it started.
+   */
+  public Optional<LocalDateTime> findLastInvalidation(final String tenant, final String category) {
+    return Optional.ofNullable(this.invalidations.get(this.versionKey(tenant, category)));
+  }
+
+  public long getHitCount() {
+    return this.hitCount.get();
+  }
+
+  public long getMissCount() {
+    return this.missCount.get();
+  }
+
+  public long getCoalescedCount() {
+    return this.coalescedCount.get();
+  }
+
+  public int size() {
+    synchronized (this.reportPages) {
+      return this.reportPages.size();
+    }
+  }
+
+  private String createKey(final String tenant, final String category, final String identifier,
+                           final ReportRequest reportRequest, final Integer pageIndex, final Integer size,
+                           final String cursor) {
+    final StringBuilder key = new StringBuilder();
+    ReportRequestKey.append(key, tenant);
+    ReportRequestKey.append(key, category);
+    ReportRequestKey.append(key, identifier);
+    final AtomicLong version = this.versions.get(this.versionKey(tenant, category));
+    key.append('V').append(version != null ? version.get() : 0L);
+    ReportRequestKey.append(key, reportRequest);
+    key.append('#');
+    ReportRequestKey.append(key, String.valueOf(pageIndex));
+    ReportRequestKey.append(key, String.valueOf(size));
+    ReportRequestKey.append(key, cursor != null ? cursor : "");
+    return key.toString();
+  }
+
+  private String versionKey(final String tenant, final String category) {
+    final StringBuilder key = new StringBuilder();
+    ReportRequestKey.append(key, tenant);
+    ReportRequestKey.append(key, category);
+    return key.toString();
+  }
+
+  private ReportPage copyOf(final ReportPage cached) {
+    final ReportPage reportPage = new ReportPage();
+    reportPage.setName(cached.getName());
+    reportPage.setDescription(cached.getDescription());
+    reportPage.setHeader(cached.getHeader());
+    reportPage.setRows(cached.getRows());
+    reportPage.setFooter(cached.getFooter());
+    reportPage.setHasMore(cached.isHasMore());
+    reportPage.setCursor(cached.getCursor());
+    reportPage.setGeneratedOn(cached.getGeneratedOn());
+    reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
+    return reportPage;
+  }
+
+  private static class Entry {
+
+    private final ReportPage reportPage;
+    private final long expiresAt;
+
+    private Entry(final ReportPage reportPage, final long expiresAt) {
+      super();
+      this.reportPage = reportPage;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.reporting.api.v1.domain.DisplayableField;
+import org.apache.fineract.cn.reporting.api.v1.domain.QueryParameter;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+
+import java.util.Comparator;
+
+/**
+ * Canonical form of a report request. The order of displayable fields decides the column order
+ * and is kept, query parameters are interchangeable and sorted, empty ones are dropped.
+ */
+public final class ReportRequestKey {
+
+  private static final Comparator<QueryParameter> PARAMETER_ORDER = Comparator
+      .comparing(QueryParameter::getName)
+      .thenComparing(queryParameter -> String.valueOf(queryParameter.getOperator()))
+      .thenComparing(QueryParameter::getValue);
+
+  private ReportRequestKey() {
+    super();
+  }
+
+  public static String of(final ReportRequest reportRequest) {
+    final StringBuilder key = new StringBuilder();
+    append(key, reportRequest);
+    return key.toString();
+  }
+
+  static void append(final StringBuilder key, final ReportRequest reportRequest) {
+    key.append('F');
+    reportRequest.getDisplayableFields()
+        .stream()
+        .map(DisplayableField::getName)
+        .forEach(name -> append(key, name));
+    key.append('P');
+    reportRequest.getQueryParameters()
+        .stream()
+        .filter(queryParameter -> queryParameter.getValue() != null && !queryParameter.getValue().isEmpty())
+        .sorted(PARAMETER_ORDER)
+        .forEach(queryParameter -> {
+          append(key, queryParameter.getName());
+          append(key, String.valueOf(queryParameter.getOperator()));
+          append(key, queryParameter.getValue());
+        });
+  }
+
+  static void append(final StringBuilder key, final String part) {
+    key.append(part.length()).append(':').append(part);
+  }
+}
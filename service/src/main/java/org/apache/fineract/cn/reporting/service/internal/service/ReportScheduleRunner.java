@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.concurrent.RejectedExecutionException;
+
+@Component
+public class ReportScheduleRunner {
+
+  private final Logger logger;
+  private final ReportScheduleService reportScheduleService;
+  private final TenantRegistry tenantRegistry;
+
+  @Autowired
+  public ReportScheduleRunner(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                              final ReportScheduleService reportScheduleService,
+                              final TenantRegistry tenantRegistry) {
+    super();
+    this.logger = logger;
+    this.reportScheduleService = reportScheduleService;
+    this.tenantRegistry = tenantRegistry;
+  }
+
+  // a run rejected by the full job pool stays due and is picked up on the next poll
+  @Scheduled(fixedDelayString = "${reporting.schedules.pollInterval:60000}")
+  public void runDueSchedules() {
+    final LocalDateTime now = LocalDateTime.now(Clock.systemUTC());
+    this.tenantRegistry.getTenants().forEach(tenant -> {
+      TenantContextHolder.setIdentifier(tenant);
+      try {
+        for (final Long scheduleId : this.reportScheduleService.findDueSchedules(now)) {
+          this.reportScheduleService.runIfDue(scheduleId, now);
+        }
+      } catch (final RejectedExecutionException rex) {
+        this.logger.info("Report job pool is full, deferring schedules of tenant {}.", tenant);
+      } catch (final RuntimeException ex) {
+        this.logger.warn("Could not run report schedules of tenant {}.", tenant, ex);
+      } finally {
+        TenantContextHolder.clear();
+      }
+    });
+  }
+}
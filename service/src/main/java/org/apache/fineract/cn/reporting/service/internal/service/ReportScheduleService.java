@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import com.google.gson.Gson;
+import org.apache.fineract.cn.api.util.UserContext;
+import org.apache.fineract.cn.api.util.UserContextHolder;
+import org.apache.fineract.cn.lang.DateConverter;
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportJob;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportSchedule;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.internal.provider.ReportSpecificationProvider;
+import org.apache.fineract.cn.reporting.service.internal.repository.ReportScheduleEntity;
+import org.apache.fineract.cn.reporting.service.internal.repository.ReportScheduleRepository;
+import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.support.CronSequenceGenerator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
+
+@Service
+public class ReportScheduleService {
+
+  // first key of the advisory locks taken for schedule runs, the schedule id is the second
+  private static final int SCHEDULE_LOCK_SPACE = 0x52505453;
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  private final Logger logger;
+  private final EntityManager entityManager;
+  private final ReportScheduleRepository reportScheduleRepository;
+  private final ReportSpecificationProvider reportSpecificationProvider;
+  private final ReportJobService reportJobService;
+  private final ReportPageCache reportPageCache;
+  private final long maximumAge;
+  private final Gson gson = new Gson();
+
+  @Autowired
+  public ReportScheduleService(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                               final EntityManager entityManager,
+                               final ReportScheduleRepository reportScheduleRepository,
+                               final ReportSpecificationProvider reportSpecificationProvider,
+                               final ReportJobService reportJobService,
+                               final ReportPageCache reportPageCache,
+                               @Value("${reporting.schedules.maximumAge:3600}") final long maximumAge) {
+    super();
+    this.logger = logger;
+    this.entityManager = entityManager;
+    this.reportScheduleRepository = reportScheduleRepository;
+    this.reportSpecificationProvider = reportSpecificationProvider;
+    this.reportJobService = reportJobService;
+    this.reportPageCache = reportPageCache;
+    this.maximumAge = maximumAge;
+  }
+
+  public boolean exists(final String identifier) {
+    return this.reportScheduleRepository.findByIdentifier(identifier).isPresent();
+  }
+
+  @Transactional
+  public void create(final ReportSchedule reportSchedule) throws IllegalArgumentException {
+    this.cronSequence(reportSchedule.getCronExpression());
+
+    final ReportScheduleEntity reportScheduleEntity = new ReportScheduleEntity();
+    reportScheduleEntity.setIdentifier(reportSchedule.getIdentifier());
+    reportScheduleEntity.setCategory(reportSchedule.getCategory());
+    reportScheduleEntity.setReportIdentifier(reportSchedule.getReportIdentifier());
+    reportScheduleEntity.setCronExpression(reportSchedule.getCronExpression());
+    reportScheduleEntity.setRequestKey(ReportRequestKey.of(reportSchedule.getReportRequest()));
+    reportScheduleEntity.setReportRequest(this.gson.toJson(reportSchedule.getReportRequest()));
+    reportScheduleEntity.setPageSize(ReportJobService.checkedPageSize(reportSchedule.getSize()));
+    reportScheduleEntity.setCreatedBy(UserContextHolder.checkedGetUser());
+    reportScheduleEntity.setCreatedOn(LocalDateTime.now(Clock.systemUTC()));
+    this.reportScheduleRepository.save(reportScheduleEntity);
+  }
+
+  public List<ReportSchedule> findAll() {
+    return this.reportScheduleRepository.findAll()
+        .stream()
+        .map(this::toReportSchedule)
+        .collect(Collectors.toList());
+  }
+
+  @Transactional
+  public boolean delete(final String identifier) {
+    final Optional<ReportScheduleEntity> reportScheduleEntity = this.reportScheduleRepository.findByIdentifier(identifier);
+    reportScheduleEntity.ifPresent(this.reportScheduleRepository::delete);
+    return reportScheduleEntity.isPresent();
+  }
+
+  /**
+   * Serves a page from the latest finished run of a schedule whose request is the same as the given one.
+   * Only offset pages in the page size of the schedule are covered, cursors are relative to a live query.
+   * Runs started before the category was last invalidated are skipped. Invalidations are only known since
+   * this instance started, so runs older than {@code reporting.schedules.maximumAge} seconds are skipped too.
+   */
+  public Optional<ReportPage> findScheduledPage(final String category, final String identifier,
+                                                final ReportRequest reportRequest, final Integer pageIndex,
+                                                final Integer size, final String cursor) {
+    if (pageIndex == null || size == null || cursor != null) {
+      return Optional.empty();
+    }
+
+    final LocalDateTime oldest = this.oldestRun(TenantContextHolder.checkedGetIdentifier(), category);
+    return this.reportScheduleRepository
+        .findByCategoryAndReportIdentifierAndPageSizeAndRequestKey(
+            category, identifier, size, ReportRequestKey.of(reportRequest))
+        .stream()
+        .filter(reportScheduleEntity -> reportScheduleEntity.getLastJobIdentifier() != null)
+        .filter(reportScheduleEntity -> !reportScheduleEntity.getLastRunOn().isBefore(oldest))
+        .sorted(Comparator.comparing(ReportScheduleEntity::getLastRunOn).reversed())
+        .map(ReportScheduleEntity::getLastJobIdentifier)
+        .filter(jobIdentifier -> this.reportJobService.findJob(jobIdentifier)
+            .map(reportJob -> reportJob.getState() == ReportJob.State.DONE)
+            .orElse(false))
+        .findFirst()
+        .flatMap(jobIdentifier -> this.reportJobService.findPage(jobIdentifier, pageIndex));
+  }
+
+  private LocalDateTime oldestRun(final String tenant, final String category) {
+    final LocalDateTime oldest = LocalDateTime.now(Clock.systemUTC()).minusSeconds(this.maximumAge);
+    return this.reportPageCache.findLastInvalidation(tenant, category)
+        .filter(lastInvalidation -> lastInvalidation.isAfter(oldest))
+        .orElse(oldest);
+  }
+
+  public List<Long> findDueSchedules(final LocalDateTime now) {
+    return this.reportScheduleRepository.findAll()
+        .stream()
+        .filter(reportScheduleEntity -> this.isDue(reportScheduleEntity, now))
+        .map(ReportScheduleEntity::getId)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Submits a due schedule as report job. The advisory lock is held until the run is recorded,
+   * so a node that obtains it later sees the schedule as no longer due.
+   */
+  @Transactional
+  public void runIfDue(final Long scheduleId, final LocalDateTime now) {
+    final Boolean locked = (Boolean) this.entityManager
+        .createNativeQuery("SELECT pg_try_advisory_xact_lock(?1, ?2)")
+        .setParameter(1, SCHEDULE_LOCK_SPACE)
+        .setParameter(2, scheduleId.intValue())
+        .getSingleResult();
+    if (!Boolean.TRUE.equals(locked)) {
+      return;
+    }
+
+    final ReportScheduleEntity reportScheduleEntity = this.reportScheduleRepository.findOne(scheduleId);
+    if (reportScheduleEntity == null || !this.isDue(reportScheduleEntity, now)) {
+      return;
+    }
+
+    final Optional<ReportSpecification> reportSpecification = this.reportSpecificationProvider
+        .getReportSpecification(reportScheduleEntity.getCategory(), reportScheduleEntity.getReportIdentifier());
+    if (!reportSpecification.isPresent()) {
+      this.logger.warn("Report {} {} of schedule {} not found.", reportScheduleEntity.getCategory(),
+          reportScheduleEntity.getReportIdentifier(), reportScheduleEntity.getIdentifier());
+      return;
+    }
+
+    final ReportJob reportJob;
+    UserContextHolder.setUserContext(new UserContext(reportScheduleEntity.getCreatedBy(), ""));
+    try {
+      reportJob = this.reportJobService.submit(reportScheduleEntity.getCategory(),
+          reportScheduleEntity.getReportIdentifier(), reportSpecification.get(),
+          this.gson.fromJson(reportScheduleEntity.getReportRequest(), ReportRequest.class),
+          reportScheduleEntity.getPageSize());
+    } finally {
+      UserContextHolder.clear();
+    }
+
+    reportScheduleEntity.setLastRunOn(now);
+    reportScheduleEntity.setLastJobIdentifier(reportJob.getIdentifier());
+    this.reportScheduleRepository.save(reportScheduleEntity);
+    this.logger.info("Started report job {} for schedule {}.", reportJob.getIdentifier(),
+        reportScheduleEntity.getIdentifier());
+  }
+
+  private boolean isDue(final ReportScheduleEntity reportScheduleEntity, final LocalDateTime now) {
+    final LocalDateTime lastRunOn = reportScheduleEntity.getLastRunOn() != null
+        ? reportScheduleEntity.getLastRunOn()
+        : reportScheduleEntity.getCreatedOn();
+    final Date next = this.cronSequence(reportScheduleEntity.getCronExpression())
+        .next(Date.from(lastRunOn.toInstant(ZoneOffset.UTC)));
+    return !next.toInstant().isAfter(now.toInstant(ZoneOffset.UTC));
+  }
+
+  private CronSequenceGenerator cronSequence(final String cronExpression) throws IllegalArgumentException {
+    if (cronExpression == null) {
+      throw new IllegalArgumentException("Cron expression missing.");
+    }
+    return new CronSequenceGenerator(cronExpression, UTC);
+  }
+
+  private ReportSchedule toReportSchedule(final ReportScheduleEntity reportScheduleEntity) {
+    final ReportSchedule reportSchedule = new ReportSchedule();
+    reportSchedule.setIdentifier(reportScheduleEntity.getIdentifier());
+    reportSchedule.setCategory(reportScheduleEntity.getCategory());
+    reportSchedule.setReportIdentifier(reportScheduleEntity.getReportIdentifier());
+    reportSchedule.setCronExpression(reportScheduleEntity.getCronExpression());
+    reportSchedule.setReportRequest(this.gson.fromJson(reportScheduleEntity.getReportRequest(), ReportRequest.class));
+    reportSchedule.setSize(reportScheduleEntity.getPageSize());
+    if (reportScheduleEntity.getLastRunOn() != null) {
+      reportSchedule.setLastRunOn(DateConverter.toIsoString(reportScheduleEntity.getLastRunOn()));
+    }
+    reportSchedule.setLastJobIdentifier(reportScheduleEntity.getLastJobIdentifier());
+    reportSchedule.setCreatedBy(reportScheduleEntity.getCreatedBy());
+    reportSchedule.setCreatedOn(DateConverter.toIsoString(reportScheduleEntity.getCreatedOn()));
+    return reportSchedule;
+  }
+}
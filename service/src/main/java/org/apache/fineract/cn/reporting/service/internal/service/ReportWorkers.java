@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.api.util.UserContext;
+import org.apache.fineract.cn.api.util.UserContextHolder;
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the pages of live requests off the servlet thread. The request is answered
+ * asynchronously, so it completes, and its report can be cancelled, as soon as the client goes away
+ * instead of once the report is done.
+ */
+@Component
+public class ReportWorkers implements DisposableBean {
+
+  private final ThreadPoolExecutor executor;
+
+  @Autowired
+  public ReportWorkers(@Value("${reporting.live.poolSize:32}") final int poolSize,
+                       @Value("${reporting.live.queueCapacity:64}") final int queueCapacity) {
+    super();
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          final Thread thread = new Thread(runnable, "report-live-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  @Override
+  public void destroy() {
+    this.executor.shutdownNow();
+  }
+
+  public void submit(final Runnable work) throws RejectedExecutionException {
+    final String tenant = TenantContextHolder.checkedGetIdentifier();
+    final Optional<UserContext> userContext = UserContextHolder.getUserContext();
+    this.executor.execute(() -> {
+      TenantContextHolder.setIdentifier(tenant);
+      userContext.ifPresent(UserContextHolder::setUserContext);
+      try {
+        work.run();
+      } finally {
+        UserContextHolder.clear();
+        TenantContextHolder.clear();
+      }
+    });
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportPhases;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records what every report costs, per tenant, category and identifier and phase of its
+ * generation, and exposes the figures of caches, admission, bulkheads and replica routing.
+ */
+@Component
+public class ReportingMetrics {
+
+  public static final String VALIDATE = "validate";
+  public static final String BUILD = "build";
+  public static final String EXECUTE = "execute";
+  public static final String MAP = "map";
+  public static final String SERIALIZE = "serialize";
+
+  private final MeterRegistry meterRegistry;
+
+  @Autowired
+  public ReportingMetrics(final MeterRegistry meterRegistry,
+                          final ReportPageCache reportPageCache,
+                          final ReportAdmission reportAdmission,
+                          final ConnectionBulkheads connectionBulkheads,
+                          final ReplicaRouting replicaRouting) {
+    super();
+    this.meterRegistry = meterRegistry;
+
+    FunctionCounter.builder("reporting.cache.pages", reportPageCache, ReportPageCache::getHitCount)
+        .tag("result", "hit").register(meterRegistry);
+    FunctionCounter.builder("reporting.cache.pages", reportPageCache, ReportPageCache::getMissCount)
+        .tag("result", "miss").register(meterRegistry);
+    FunctionCounter.builder("reporting.cache.pages", reportPageCache, ReportPageCache::getCoalescedCount)
+        .tag("result", "coalesced").register(meterRegistry);
+    Gauge.builder("reporting.cache.size", reportPageCache, ReportPageCache::size).register(meterRegistry);
+
+    reportAdmission.onTenant((tenant, statistics) -> {
+      final Tags tags = Tags.of("tenant", tenant);
+      Gauge.builder("reporting.admission.waiting", statistics, ReportAdmission.Statistics::getWaiting)
+          .tags(tags).register(meterRegistry);
+      FunctionCounter.builder("reporting.admission.requests", statistics,
+          ReportAdmission.Statistics::getAdmittedCount)
+          .tags(tags.and("result", "admitted")).register(meterRegistry);
+      FunctionCounter.builder("reporting.admission.requests", statistics,
+          ReportAdmission.Statistics::getRejectedCount)
+          .tags(tags.and("result", "rejected")).register(meterRegistry);
+      FunctionCounter.builder("reporting.admission.wait", statistics,
+          measured -> measured.getTotalWaitNanos() / 1.0e9D)
+          .tags(tags).baseUnit("seconds").register(meterRegistry);
+    });
+
+    connectionBulkheads.getBulkheads().forEach((reportClass, bulkhead) -> {
+      final Tags tags = Tags.of("class", reportClass.name().toLowerCase());
+      Gauge.builder("reporting.bulkhead.size", bulkhead, ConnectionBulkheads.Bulkhead::getSize)
+          .tags(tags).register(meterRegistry);
+      Gauge.builder("reporting.bulkhead.active", bulkhead, ConnectionBulkheads.Bulkhead::getInUse)
+          .tags(tags).register(meterRegistry);
+      Gauge.builder("reporting.bulkhead.waiting", bulkhead, ConnectionBulkheads.Bulkhead::getWaiting)
+          .tags(tags).register(meterRegistry);
+      FunctionCounter.builder("reporting.bulkhead.connections", bulkhead, ConnectionBulkheads.Bulkhead::getAcquiredCount)
+          .tags(tags.and("result", "acquired")).register(meterRegistry);
+      FunctionCounter.builder("reporting.bulkhead.connections", bulkhead, ConnectionBulkheads.Bulkhead::getRejectedCount)
+          .tags(tags.and("result", "rejected")).register(meterRegistry);
+      FunctionCounter.builder("reporting.bulkhead.wait", bulkhead,
+          measured -> measured.getTotalWaitNanos() / 1.0e9D)
+          .tags(tags).baseUnit("seconds").register(meterRegistry);
+    });
+
+    FunctionCounter.builder("reporting.replica.routed", replicaRouting, ReplicaRouting::getReplicaCount)
+        .tag("target", "replica").register(meterRegistry);
+    FunctionCounter.builder("reporting.replica.routed", replicaRouting, ReplicaRouting::getFallbackCount)
+        .tag("target", "primary").register(meterRegistry);
+    // the worst lag across tenants, per tenant it is logged when a replica comes and goes
+    Gauge.builder("reporting.replica.lag", replicaRouting,
+        routing -> routing.getLagSeconds().values().stream().mapToDouble(Double::doubleValue).max().orElse(0.0D))
+        .baseUnit("seconds").register(meterRegistry);
+  }
+
+  public void recordPhase(final String tenant, final String category, final String identifier,
+                          final String phase, final long nanos) {
+    Timer.builder("reporting.report.phase")
+        .tags(this.reportTags(tenant, category, identifier).and("phase", phase))
+        .publishPercentileHistogram()
+        .register(this.meterRegistry)
+        .record(Math.max(nanos, 0L), TimeUnit.NANOSECONDS);
+  }
+
+  public void recordExecution(final String tenant, final String category, final String identifier,
+                              final ReportClass reportClass, final ReportPhases reportPhases, final long nanos) {
+    final Tags tags = this.reportTags(tenant, category, identifier);
+    Timer.builder("reporting.report.execution")
+        .tags(tags.and("class", reportClass.name().toLowerCase()))
+        .publishPercentileHistogram()
+        .register(this.meterRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+
+    this.recordPhase(tenant, category, identifier, BUILD, reportPhases.getBuildNanos());
+    this.recordPhase(tenant, category, identifier, EXECUTE, reportPhases.getExecuteNanos());
+    this.recordPhase(tenant, category, identifier, MAP, reportPhases.getMapNanos());
+    if (reportPhases.getSerializeNanos() > 0L) {
+      this.recordPhase(tenant, category, identifier, SERIALIZE, reportPhases.getSerializeNanos());
+    }
+
+    Counter.builder("reporting.report.rows").tags(tags).register(this.meterRegistry)
+        .increment(reportPhases.getRowCount());
+    Counter.builder("reporting.report.queries").tags(tags).register(this.meterRegistry)
+        .increment(reportPhases.getQueryCount());
+    Counter.builder("reporting.query.templates").tags(tags.and("result", "hit")).register(this.meterRegistry)
+        .increment(reportPhases.getTemplateHitCount());
+    Counter.builder("reporting.query.templates").tags(tags.and("result", "miss")).register(this.meterRegistry)
+        .increment(reportPhases.getTemplateMissCount());
+  }
+
+  public void recordCacheLookup(final String tenant, final String category, final String identifier,
+                                final boolean hit) {
+    Counter.builder("reporting.report.cache")
+        .tags(this.reportTags(tenant, category, identifier).and("result", hit ? "hit" : "miss"))
+        .register(this.meterRegistry)
+        .increment();
+  }
+
+  public void recordSection(final String report, final String section, final long nanos) {
+    Timer.builder("reporting.report.section")
+        .tags("report", report, "section", section)
+        .publishPercentileHistogram()
+        .register(this.meterRegistry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  private Tags reportTags(final String tenant, final String category, final String identifier) {
+    return Tags.of("tenant", tenant, "category", category, "identifier", identifier);
+  }
+}
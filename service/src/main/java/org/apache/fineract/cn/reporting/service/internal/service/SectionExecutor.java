@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.lang.TenantContextHolder;
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.QueryDeadline;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportPhases;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the independent sections of a statement, e.g. revenues and expenses, each on its own
+ * connection at the same time. The sections import the snapshot of the calling transaction, so
+ * they read the same data as if they had run one after another within it. Results are returned
+ * in section order. Sections read the same server as the report, primary or replica. Without a
+ * surrounding transaction, or with parallel execution switched off, the sections run one after
+ * another on the calling connection.
+ */
+@Component
+public class SectionExecutor implements DisposableBean {
+
+  private static final Pattern SNAPSHOT_ID = Pattern.compile("[0-9A-F-]+");
+
+  private final Logger logger;
+  private final EntityManager entityManager;
+  private final EntityManagerFactory entityManagerFactory;
+  private final boolean parallel;
+  private final ThreadPoolExecutor executor;
+  private final ReportingMetrics reportingMetrics;
+
+  @Autowired
+  public SectionExecutor(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                         final EntityManager entityManager,
+                         final EntityManagerFactory entityManagerFactory,
+                         final ReportingMetrics reportingMetrics,
+                         @Value("${reporting.sections.parallel:true}") final boolean parallel,
+                         @Value("${reporting.sections.poolSize:8}") final int poolSize,
+                         @Value("${reporting.sections.queueCapacity:16}") final int queueCapacity) {
+    super();
+    this.logger = logger;
+    this.entityManager = entityManager;
+    this.entityManagerFactory = entityManagerFactory;
+    this.reportingMetrics = reportingMetrics;
+    this.parallel = parallel;
+
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity),
+        runnable -> {
+          final Thread thread = new Thread(runnable, "report-section-" + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  public static <T> Section<T> section(final String name, final Function<EntityManager, T> query) {
+    return new Section<>(name, query);
+  }
+
+  @Override
+  public void destroy() {
+    this.executor.shutdownNow();
+  }
+
+  public <T> List<T> execute(final String report, final List<Section<T>> sections) {
+    if (!this.parallel || sections.size() < 2 || !TransactionSynchronizationManager.isActualTransactionActive()) {
+      final ArrayList<T> results = new ArrayList<>(sections.size());
+      sections.forEach(section -> results.add(this.timed(report, section, this.entityManager)));
+      return results;
+    }
+
+    // the snapshot stays importable until the calling transaction ends, which waits for all sections
+    final String snapshotId = (String) this.entityManager.createNativeQuery("SELECT pg_export_snapshot()")
+        .getSingleResult();
+    if (!SNAPSHOT_ID.matcher(snapshotId).matches()) {
+      throw new IllegalStateException("Unexpected snapshot identifier " + snapshotId + ".");
+    }
+    final String tenant = TenantContextHolder.checkedGetIdentifier();
+    final QueryDeadline queryDeadline = QueryDeadline.current();
+    final ReplicaRouting.Route route = ReplicaRouting.current();
+    final ReportClass reportClass = ConnectionBulkheads.current();
+    final ReportPhases reportPhases = ReportPhases.current();
+    final List<ReportPhases> sectionPhases = reportPhases != null ? Collections.synchronizedList(new ArrayList<>()) : null;
+    final long forked = System.nanoTime();
+
+    final ArrayList<Future<T>> futures = new ArrayList<>(sections.size());
+    try {
+      sections.forEach(section -> {
+        final Callable<T> imported = () -> this.imported(report, section, snapshotId, queryDeadline, sectionPhases);
+        FutureTask<T> futureTask = new FutureTask<>(() -> {
+          TenantContextHolder.setIdentifier(tenant);
+          QueryDeadline.set(queryDeadline);
+          ReplicaRouting.set(route);
+          if (reportClass != null) {
+            ConnectionBulkheads.set(reportClass);
+          }
+          try {
+            return imported.call();
+          } finally {
+            ConnectionBulkheads.clear();
+            ReplicaRouting.clear();
+            QueryDeadline.clear();
+            TenantContextHolder.clear();
+          }
+        });
+        try {
+          this.executor.execute(futureTask);
+        } catch (final RejectedExecutionException rex) {
+          // a saturated pool degrades to running the section on the calling thread, still on the snapshot
+          this.logger.debug("Section pool saturated, running {} {} inline.", report, section.name);
+          futureTask = new FutureTask<>(imported);
+          futureTask.run();
+        }
+        futures.add(futureTask);
+      });
+
+      final ArrayList<T> results = new ArrayList<>(sections.size());
+      for (final Future<T> future : futures) {
+        results.add(future.get());
+      }
+      if (reportPhases != null) {
+        reportPhases.merge(sectionPhases, System.nanoTime() - forked);
+      }
+      return results;
+    } catch (final InterruptedException iex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for sections of " + report + ".", iex);
+    } catch (final ExecutionException eex) {
+      if (eex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) eex.getCause();
+      }
+      throw new IllegalStateException(eex.getCause());
+    } finally {
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private <T> T imported(final String report, final Section<T> section, final String snapshotId,
+                         final QueryDeadline queryDeadline, final List<ReportPhases> sectionPhases) {
+    // run inline the section must not record into the phases of the report waiting for it
+    final ReportPhases callerPhases = ReportPhases.current();
+    final ReportPhases phases = sectionPhases != null ? ReportPhases.start() : null;
+    final EntityManager sectionEntityManager = this.entityManagerFactory.createEntityManager();
+    Integer backendPid = null;
+    try {
+      sectionEntityManager.getTransaction().begin();
+      sectionEntityManager.createNativeQuery("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ, READ ONLY")
+          .executeUpdate();
+      sectionEntityManager.createNativeQuery("SET TRANSACTION SNAPSHOT '" + snapshotId + "'")
+          .executeUpdate();
+      if (queryDeadline != null) {
+        backendPid = ((Number) sectionEntityManager.createNativeQuery("SELECT pg_backend_pid()")
+            .getSingleResult()).intValue();
+        queryDeadline.attach(backendPid);
+      }
+      return this.timed(report, section, sectionEntityManager);
+    } finally {
+      if (backendPid != null) {
+        queryDeadline.detach(backendPid);
+      }
+      if (sectionEntityManager.getTransaction().isActive()) {
+        sectionEntityManager.getTransaction().rollback();
+      }
+      sectionEntityManager.close();
+      if (phases != null) {
+        phases.finish();
+        sectionPhases.add(phases);
+        ReportPhases.set(callerPhases);
+      }
+    }
+  }
+
+  private <T> T timed(final String report, final Section<T> section, final EntityManager sectionEntityManager) {
+    final long start = System.nanoTime();
+    try {
+      return section.query.apply(sectionEntityManager);
+    } finally {
+      this.reportingMetrics.recordSection(report, section.name, System.nanoTime() - start);
+    }
+  }
+
+  public static class Section<T> {
+
+    private final String name;
+    private final Function<EntityManager, T> query;
+
+    private Section(final String name, final Function<EntityManager, T> query) {
+      super();
+      this.name = name;
+      this.query = query;
+    }
+  }
+}
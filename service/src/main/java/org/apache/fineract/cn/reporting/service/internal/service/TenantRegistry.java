@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.internal.service;
+
+import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.internal.repository.RegisteredTenantRepository;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tenants background work outside of a request iterates over. Every instance finds the tenants
+ * initialized for this service among those the provisioner defined, so it knows them after a
+ * restart without waiting for a request. Tenants sending requests are added as well.
+ */
+@Component
+public class TenantRegistry {
+
+  private final Logger logger;
+  private final RegisteredTenantRepository registeredTenantRepository;
+  private final Set<String> known = ConcurrentHashMap.newKeySet();
+
+  @Autowired
+  public TenantRegistry(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
+                        final RegisteredTenantRepository registeredTenantRepository) {
+    super();
+    this.logger = logger;
+    this.registeredTenantRepository = registeredTenantRepository;
+  }
+
+  public void register(final String tenant) {
+    this.known.add(tenant);
+  }
+
+  public Set<String> getTenants() {
+    final Set<String> tenants = new HashSet<>(this.known);
+    final List<String> provisioned;
+    try {
+      provisioned = this.registeredTenantRepository.findProvisioned();
+    } catch (final RuntimeException ex) {
+      this.logger.warn("Could not read provisioned tenants, using those known to this instance: {}", ex.getMessage());
+      return Collections.unmodifiableSet(tenants);
+    }
+    provisioned.stream()
+        .filter(tenant -> !tenants.contains(tenant))
+        .forEach(tenant -> {
+          try {
+            if (this.registeredTenantRepository.isInitialized(tenant)) {
+              tenants.add(tenant);
+            }
+          } catch (final RuntimeException ex) {
+            // a keyspace out of reach is looked at again on the next run
+            this.logger.warn("Could not check tenant {}: {}", tenant, ex.getMessage());
+          }
+        });
+    return Collections.unmodifiableSet(tenants);
+  }
+}
@@ -19,6 +19,7 @@
 package org.apache.fineract.cn.reporting.service.internal.specification;
 
 import org.apache.fineract.cn.reporting.api.v1.domain.DisplayableField;
+import org.apache.fineract.cn.reporting.api.v1.domain.Footer;
 import org.apache.fineract.cn.reporting.api.v1.domain.Header;
 import org.apache.fineract.cn.reporting.api.v1.domain.QueryParameter;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
@@ -28,25 +29,30 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.internal.service.BalanceSnapshotService;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.QueryParameterBuilder;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
-import java.math.BigDecimal;
 import java.time.Clock;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
-import javax.persistence.Query;
 import org.apache.fineract.cn.api.util.UserContextHolder;
 import org.apache.fineract.cn.lang.DateConverter;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-@Report(category = "Accounting", identifier = "Balancesheet")
+@Report(category = "Accounting", identifier = "Balancesheet", timeToLive = 900)
 public class BalanceSheetReportSpecification implements ReportSpecification {
 
     private static final String DATE_RANGE = "Date range";
@@ -54,36 +60,45 @@ public class BalanceSheetReportSpecification implements ReportSpecification {
     private static final String IDENTIFIER = "Identifier";
     private static final String NAME = "Name";
     private static final String BALANCE = "Balance";
+    private static final String AS_OF = "As of";
+
+    // statement sections in print order, liabilities and equity share a side so the rollup totals them together
+    private static final String SECTIONS =
+            "(VALUES ('ASSET', 1, 1), ('LIABILITY', 2, 2), ('EQUITY', 2, 3)) st (a_type, side, position)";
+    private static final int ASSET_SIDE = 1;
 
     private final Logger logger;
 
     private final EntityManager entityManager;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final ReportDefinition reportDefinition;
 
     private final HashMap<String, String> accountingColumnMapping = new HashMap<>();
     private final HashMap<String, String> allColumnMapping = new HashMap<>();
 
 
     public BalanceSheetReportSpecification(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
-                                              final EntityManager entityManager){
+                                              final EntityManager entityManager,
+                                              final BalanceSnapshotService balanceSnapshotService){
         super();
         this.logger = logger;
         this.entityManager = entityManager;
+        this.balanceSnapshotService = balanceSnapshotService;
         this.initializeMapping();
+        this.reportDefinition = ReportDefinitionBuilder.create("Balancesheet", "Balance Sheet")
+                .description("Balance Sheet Report")
+                .queryParameters(this.buildQueryParameters())
+                .displayableFields(this.buildDisplayableFields())
+                .build();
     }
 
     @Override
     public ReportDefinition getReportDefinition() {
-        final ReportDefinition reportDefinition = new ReportDefinition();
-        reportDefinition.setIdentifier("Balancesheet");
-        reportDefinition.setName("Balance Sheet");
-        reportDefinition.setDescription("Balance Sheet Report");
-        reportDefinition.setQueryParameters(this.buildQueryParameters());
-        reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-        return reportDefinition;
+        return this.reportDefinition;
     }
 
     @Override
-    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size) {
+    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size, PageCursor pageCursor) {
         final ReportDefinition reportDefinition = this.getReportDefinition();
         this.logger.info("Generating report {0}.", reportDefinition.getIdentifier());
 
@@ -92,14 +107,17 @@ public class BalanceSheetReportSpecification implements ReportSpecification {
         reportPage.setDescription(reportDefinition.getDescription());
         reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-        final Query accountQuery = this.entityManager.createNativeQuery(this.buildAssetQuery(reportRequest, pageIndex, size));
-        final List<?> accountResultList =  accountQuery.getResultList();
-        reportPage.setRows(this.buildRows(reportRequest, accountResultList));
+        // statements of a closed period are served from its snapshot and no longer move with the ledger
+        final BindParameters bindParameters = new BindParameters();
+        final String accounts = this.findPeriodEnd(reportRequest)
+                .map(periodEnd -> this.balanceSnapshotService.accountsAsOf(periodEnd, bindParameters))
+                .orElse("thoth_accounts");
+        final List<?> accountResultList = bindParameters.createNativeQuery(
+                this.entityManager, this.buildBalanceSheetQuery(reportRequest, accounts)
+        ).getResultList();
+        this.buildRows(reportPage, reportRequest.getDisplayableFields().size(), accountResultList);
 
-        reportPage.setHasMore(
-                !this.entityManager.createNativeQuery(this.buildAssetQuery(reportRequest, pageIndex + 1, size))
-                        .getResultList().isEmpty()
-        );
+        reportPage.setHasMore(false);
 
         reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
         reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
@@ -110,7 +128,8 @@ public class BalanceSheetReportSpecification implements ReportSpecification {
     public void validate(ReportRequest reportRequest) throws IllegalArgumentException {
         final ArrayList<String> unknownFields =  new ArrayList<>();
         reportRequest.getQueryParameters().forEach(queryParameter -> {
-            if (!this.allColumnMapping.keySet().contains(queryParameter.getName())) {
+            if (!AS_OF.equals(queryParameter.getName())
+                    && !this.allColumnMapping.keySet().contains(queryParameter.getName())) {
                 unknownFields.add(queryParameter.getName());
             }
         });
@@ -126,18 +145,44 @@ public class BalanceSheetReportSpecification implements ReportSpecification {
                     "Unspecified fields requested: " + unknownFields.stream().collect(Collectors.joining(", "))
             );
         }
+
+        // snapshots keep balances, not the accounts' creation dates
+        if (this.requestsAsOf(reportRequest) && this.requestsDateRange(reportRequest)) {
+            throw new IllegalArgumentException(DATE_RANGE + " is not available for statements of a closed period.");
+        }
     }
 
     private void initializeMapping() {
         this.accountingColumnMapping.put(DATE_RANGE, "acc.created_on");
-        this.accountingColumnMapping.put(TYPE, "acc.a_type");
+        this.accountingColumnMapping.put(TYPE, "st.a_type");
         this.accountingColumnMapping.put(IDENTIFIER, "acc.identifier");
         this.accountingColumnMapping.put(NAME, "acc.a_name");
-        this.accountingColumnMapping.put(BALANCE, "acc.balance");
+        this.accountingColumnMapping.put(BALANCE, "COALESCE(SUM(acc.balance), 0)");
 
         this.allColumnMapping.putAll(accountingColumnMapping);
     }
 
+    private boolean requestsAsOf(final ReportRequest reportRequest) {
+        return reportRequest.getQueryParameters()
+                .stream()
+                .anyMatch(queryParameter -> AS_OF.equals(queryParameter.getName())
+                        && queryParameter.getValue() != null && !queryParameter.getValue().isEmpty());
+    }
+
+    private boolean requestsDateRange(final ReportRequest reportRequest) {
+        return reportRequest.getQueryParameters().stream().anyMatch(queryParameter -> DATE_RANGE.equals(queryParameter.getName()))
+                || reportRequest.getDisplayableFields().stream().anyMatch(displayableField -> DATE_RANGE.equals(displayableField.getName()));
+    }
+
+    private Optional<LocalDate> findPeriodEnd(final ReportRequest reportRequest) {
+        return reportRequest.getQueryParameters()
+                .stream()
+                .filter(queryParameter -> AS_OF.equals(queryParameter.getName())
+                        && queryParameter.getValue() != null && !queryParameter.getValue().isEmpty())
+                .findFirst()
+                .map(queryParameter -> this.balanceSnapshotService.snapshotAsOf(queryParameter.getValue()));
+    }
+
     private Header createHeader(List<DisplayableField> displayableFields) {
         final Header header = new Header();
         header.setColumnNames(
@@ -149,197 +194,73 @@ public class BalanceSheetReportSpecification implements ReportSpecification {
         return header;
     }
 
-    private List<Row> buildRows(ReportRequest reportRequest, List<?> accountResultList) {
+    private void buildRows(final ReportPage reportPage, final int columnCount, final List<?> accountResultList) {
         final ArrayList<Row> rows = new ArrayList<>();
+        final Footer footer = new Footer();
+        footer.setValues(new ArrayList<>());
 
-        final Row totalAssetRow = new Row();
-        totalAssetRow.setValues(new ArrayList<>());
-
-        final Value subAssetTotal = new Value();
-
-        final BigDecimal[] assetSubTotal = {new BigDecimal("0.000")};
-
+        // the displayable columns are followed by side, type, balance and the grouping flags of type and account
         accountResultList.forEach(result -> {
-
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
-
-            if (result instanceof Object[]) {
-                final Object[] resultValues;
-                resultValues = (Object[]) result;
-
-                for (int i = 0; i < resultValues.length; i++){
-                    final Value assetValue = new Value();
-                    if (resultValues[i] != null){
-                        assetValue.setValues(new String[]{resultValues[i].toString()});
-                    }else assetValue.setValues(new String[]{});
-
-                    row.getValues().add(assetValue);
-
-                    assetSubTotal[0] = assetSubTotal[0].add((BigDecimal)resultValues[3]);
-
+            final Object[] resultValues = (Object[]) result;
+            final int side = ((Number) resultValues[columnCount]).intValue();
+            final Object type = resultValues[columnCount + 1];
+            final Object balance = resultValues[columnCount + 2];
+            final boolean typeTotal = ((Number) resultValues[columnCount + 3]).intValue() == 1;
+            final boolean accountTotal = ((Number) resultValues[columnCount + 4]).intValue() == 1;
+
+            if (!accountTotal) {
+                final Row row = new Row();
+                row.setValues(new ArrayList<>());
+                for (int i = 0; i < columnCount; i++) {
+                    final Value value = new Value();
+                    if (resultValues[i] != null) {
+                        value.setValues(new String[]{resultValues[i].toString()});
+                    } else {
+                        value.setValues(new String[]{});
+                    }
+                    row.getValues().add(value);
                 }
+                rows.add(row);
+            } else if (!typeTotal) {
+                rows.add(this.createTotalRow("TOTAL " + this.sectionName(type.toString()) + " " + balance));
+            } else if (side == ASSET_SIDE) {
+                footer.getValues().add(this.createTotalValue("TOTAL ASSETS " + balance));
             } else {
-                final Value value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
+                final String liabilityAndEquity = "TOTAL LIABILITIES and EQUITY " + balance;
+                rows.add(this.createTotalRow(liabilityAndEquity));
+                footer.getValues().add(this.createTotalValue(liabilityAndEquity));
             }
-
-            rows.add(row);
         });
 
-        subAssetTotal.setValues(new String[]{new StringBuilder().append("TOTAL ASSETS ").append(assetSubTotal[0]).toString()});
-        totalAssetRow.getValues().add(subAssetTotal);
-
-        rows.add(totalAssetRow);
-
-
-        final String liabilityQueryString = this.buildLiabilityQuery(reportRequest);
-        final Query liabilityQuery = this.entityManager.createNativeQuery(liabilityQueryString);
-        final List<?> liabilityResultList = liabilityQuery.getResultList();
-
-        final Row totalLiabilityRow = new Row();
-        totalLiabilityRow.setValues(new ArrayList<>());
-        final Value subLiabilityTotal = new Value();
-
-        final BigDecimal[] liabilitySubTotal = {new BigDecimal("0.000")};
-
-        liabilityResultList.forEach(result -> {
-
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
-
-            if (result instanceof Object[]) {
-                final Object[] resultValues;
-                resultValues = (Object[]) result;
-
-                for (int i = 0; i < resultValues.length; i++){
-                    final Value liabilityValue = new Value();
-                    if (resultValues[i] != null) liabilityValue.setValues(new String[]{resultValues[i].toString()});
-                    else liabilityValue.setValues(new String[]{});
-
-                    row.getValues().add(liabilityValue);
-
-                    liabilitySubTotal[0] = liabilitySubTotal[0].add((BigDecimal)resultValues[3]);
-
-                }
-            } else {
-                final Value value;
-                value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
-            }
-
-            rows.add(row);
-        });
-
-        subLiabilityTotal.setValues(new String[]{new StringBuilder().append("TOTAL LIABILITIES ").append(liabilitySubTotal[0]).toString()});
-        totalLiabilityRow.getValues().add(subLiabilityTotal);
-        rows.add(totalLiabilityRow);
-
-
-
-        final String equityQueryString = this.buildEquityQuery(reportRequest);
-        final Query equityQuery = this.entityManager.createNativeQuery(equityQueryString);
-        final List<?> equityResultList = equityQuery.getResultList();
-
-        final Row totalEquityRow = new Row();
-        totalEquityRow.setValues(new ArrayList<>());
-        final Value subEquityTotal = new Value();
-
-        final Row totalLiabilityAndEquityRow = new Row();
-        totalLiabilityAndEquityRow.setValues(new ArrayList<>());
-        final Value totalLiabilityAndEquityValue = new Value();
-
-        final BigDecimal[] equitySubTotal = {new BigDecimal("0.000")};
-
-        equityResultList.forEach(result -> {
-
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
-
-            if (result instanceof Object[]) {
-                final Object[] resultValues;
-                resultValues = (Object[]) result;
-
-                for (int i = 0; i < resultValues.length; i++){
-                    final Value equityValue = new Value();
-                    if (resultValues[i] != null) equityValue.setValues(new String[]{resultValues[i].toString()});
-                    else equityValue.setValues(new String[]{});
-
-                    row.getValues().add(equityValue);
-
-                    equitySubTotal[0] = equitySubTotal[0].add((BigDecimal)resultValues[3]);
-
-                }
-            } else {
-                final Value value;
-                value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
-            }
-
-            rows.add(row);
-        });
-
-        subEquityTotal.setValues(new String[]{new StringBuilder().append("TOTAL EQUITY ").append(equitySubTotal[0]).toString()});
-        totalEquityRow.getValues().add(subEquityTotal);
-        rows.add(totalEquityRow);
-
-
-        final BigDecimal liabilityAndEquity = liabilitySubTotal[0].add(equitySubTotal[0]);
-        totalLiabilityAndEquityValue.setValues(new String[]{new StringBuilder().append("TOTAL LIABILITIES and EQUITY ").append(liabilityAndEquity).toString()});
-        totalLiabilityAndEquityRow.getValues().add(totalLiabilityAndEquityValue);
-        rows.add(totalLiabilityAndEquityRow);
-
-        return rows;
+        reportPage.setRows(rows);
+        reportPage.setFooter(footer);
     }
 
-    private String buildAssetQuery(final ReportRequest reportRequest, int pageIndex, int size) {
-        final StringBuilder query = new StringBuilder("SELECT ");
-
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
-        final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.accountingColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
-            }
-        });
-
-        query.append(columns.stream().collect(Collectors.joining(", ")))
-                .append(" FROM ")
-                .append("thoth_accounts acc ")
-                .append("WHERE acc.a_type = 'ASSET' ");
-
-        query.append(" ORDER BY acc.identifier");
-
-        return query.toString();
+    private String sectionName(final String type) {
+        switch (type) {
+            case "ASSET":
+                return "ASSETS";
+            case "LIABILITY":
+                return "LIABILITIES";
+            default:
+                return type;
+        }
     }
 
-    private String buildLiabilityQuery(final ReportRequest reportRequest) {
-        final StringBuilder query = new StringBuilder("SELECT ");
-
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
-        final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.accountingColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
-            }
-        });
-
-        query.append(columns.stream().collect(Collectors.joining(", ")))
-                .append(" FROM ")
-                .append("thoth_accounts acc ")
-                .append("WHERE acc.a_type = 'LIABILITY' ");
-
-        query.append(" ORDER BY acc.identifier");
+    private Row createTotalRow(final String total) {
+        final Row row = new Row();
+        row.setValues(new ArrayList<>());
+        row.getValues().add(this.createTotalValue(total));
+        return row;
+    }
 
-        return query.toString();
+    private Value createTotalValue(final String total) {
+        final Value value = new Value();
+        value.setValues(new String[]{total});
+        return value;
     }
 
-    private String buildEquityQuery(final ReportRequest reportRequest) {
+    private String buildBalanceSheetQuery(final ReportRequest reportRequest, final String accounts) {
         final StringBuilder query = new StringBuilder("SELECT ");
 
         final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
@@ -350,13 +271,24 @@ public class BalanceSheetReportSpecification implements ReportSpecification {
                 columns.add(column);
             }
         });
-
+        columns.add("st.side");
+        columns.add("st.a_type");
+        columns.add(this.accountingColumnMapping.get(BALANCE));
+        columns.add("GROUPING(st.a_type)");
+        columns.add("GROUPING(acc.identifier)");
+
+        // one pass yields every account, a subtotal per type and a total per side of the statement;
+        // sections without accounts still get their zero subtotal through the outer join
+        final String accountGrouping = this.requestsDateRange(reportRequest)
+                ? "acc.identifier, acc.a_name, acc.created_on"
+                : "acc.identifier, acc.a_name";
         query.append(columns.stream().collect(Collectors.joining(", ")))
                 .append(" FROM ")
-                .append("thoth_accounts acc ")
-                .append("WHERE acc.a_type = 'EQUITY' ");
-
-        query.append(" ORDER BY acc.identifier");
+                .append(SECTIONS)
+                .append(" LEFT JOIN ").append(accounts).append(" acc on acc.a_type = st.a_type")
+                .append(" GROUP BY st.side, ROLLUP (st.a_type, (").append(accountGrouping).append("))")
+                .append(" HAVING GROUPING(acc.identifier) = 1 OR acc.identifier IS NOT NULL")
+                .append(" ORDER BY st.side, GROUPING(st.a_type), MIN(st.position), GROUPING(acc.identifier), acc.identifier");
 
         return query.toString();
     }
@@ -371,6 +303,8 @@ public class BalanceSheetReportSpecification implements ReportSpecification {
     }
 
     private List<QueryParameter> buildQueryParameters() {
-        return Arrays.asList();
+        return Arrays.asList(
+                QueryParameterBuilder.create(AS_OF, Type.DATE).operator(QueryParameter.Operator.EQUALS).build()
+        );
     }
 }
@@ -18,6 +18,7 @@
  */
 package org.apache.fineract.cn.reporting.service.internal.specification;
 
+import com.google.gson.Gson;
 import org.apache.fineract.cn.reporting.api.v1.domain.DisplayableField;
 import org.apache.fineract.cn.reporting.api.v1.domain.Header;
 import org.apache.fineract.cn.reporting.api.v1.domain.QueryParameter;
@@ -28,12 +29,21 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.CriteriaBuilder;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
 import org.apache.fineract.cn.reporting.service.spi.QueryParameterBuilder;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplate;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplateCache;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
-import java.text.DecimalFormat;
+import org.apache.fineract.cn.reporting.service.spi.ResultStreamer;
+import org.apache.fineract.cn.reporting.service.spi.RowSink;
+import java.io.IOException;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -49,7 +59,7 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-@Report(category = "Customer", identifier = "Listing")
+@Report(category = "Customer", identifier = "Listing", timeToLive = 300, reportClass = ReportClass.BULK)
 public class CustomerListReportSpecification implements ReportSpecification {
 
   private static final String DATE_RANGE = "Date range";
@@ -61,13 +71,30 @@ public class CustomerListReportSpecification implements ReportSpecification {
   private static final String ACCOUNT_NUMBER = "Account number";
   private static final String ADDRESS = "Address";
 
+  private static final String ACCOUNT_COLUMN = "CAST(array_to_json(acc.accounts) AS TEXT)";
+  private static final String ACCOUNT_JOIN =
+      "LEFT JOIN LATERAL (" +
+          "SELECT array_agg(acc.identifier || ' (' || CAST(round(acc.balance, 2) AS TEXT) || ')' " +
+          "ORDER BY acc.identifier) AS accounts " +
+          "FROM thoth_accounts acc WHERE acc.holders = cst.identifier" +
+          ") acc ON TRUE ";
+  private static final String ADDRESS_COLUMN = "adr.address";
+  private static final String ADDRESS_JOIN =
+      "LEFT JOIN LATERAL (" +
+          "SELECT CONCAT(adr.street, ', ', adr.postal_code, ', ', adr.city) AS address " +
+          "FROM maat_addresses adr WHERE adr.id = cst.address_id" +
+          ") adr ON TRUE ";
+
   private final Logger logger;
 
   private final EntityManager entityManager;
+  private final ReportDefinition reportDefinition;
   private final HashMap<String, String> customerColumnMapping = new HashMap<>();
   private final HashMap<String, String> addressColumnMapping = new HashMap<>();
   private final HashMap<String, String> accountColumnMapping = new HashMap<>();
   private final HashMap<String, String> allColumnMapping = new HashMap<>();
+  private final QueryTemplateCache queryTemplateCache = new QueryTemplateCache();
+  private final Gson gson = new Gson();
 
   @Autowired
   public CustomerListReportSpecification(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
@@ -76,21 +103,21 @@ public class CustomerListReportSpecification implements ReportSpecification {
     this.logger = logger;
     this.entityManager = entityManager;
     this.initializeMapping();
+    this.reportDefinition = ReportDefinitionBuilder.create("Listing", "Customer Listing")
+        .description("List of all customers.")
+        .queryParameters(this.buildQueryParameters())
+        .displayableFields(this.buildDisplayableFields())
+        .build();
   }
 
   @Override
   public ReportDefinition getReportDefinition() {
-    final ReportDefinition reportDefinition = new ReportDefinition();
-    reportDefinition.setIdentifier("Listing");
-    reportDefinition.setName("Customer Listing");
-    reportDefinition.setDescription("List of all customers.");
-    reportDefinition.setQueryParameters(this.buildQueryParameters());
-    reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-    return reportDefinition;
+    return this.reportDefinition;
   }
 
   @Override
-  public ReportPage generateReport(final ReportRequest reportRequest, final int pageIndex, final int size) {
+  public ReportPage generateReport(final ReportRequest reportRequest, final int pageIndex, final int size,
+                                   final PageCursor pageCursor) {
     final ReportDefinition reportDefinition = this.getReportDefinition();
     this.logger.info("Generating report {0}.", reportDefinition.getIdentifier());
 
@@ -99,20 +126,39 @@ public class CustomerListReportSpecification implements ReportSpecification {
     reportPage.setDescription(reportDefinition.getDescription());
     reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-    final Query customerQuery = this.entityManager.createNativeQuery(this.buildCustomerQuery(reportRequest, pageIndex, size));
-    final List<?> customerResultList =  customerQuery.getResultList();
-    reportPage.setRows(this.buildRows(reportRequest, customerResultList));
-
-    reportPage.setHasMore(
-        !this.entityManager.createNativeQuery(this.buildCustomerQuery(reportRequest, pageIndex + 1, size))
-            .getResultList().isEmpty()
+    final Pagination pagination = Pagination.of(pageIndex, size, pageCursor);
+    final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+    final QueryTemplate customerQueryTemplate = this.compileCustomerQuery(reportRequest, pagination, bindParameters);
+    final Query customerQuery = bindParameters.createNativeQuery(this.entityManager, customerQueryTemplate);
+    final List<?> customerResultList = pagination.apply(
+        reportPage,
+        customerQuery.getResultList(),
+        result -> PageCursor.of(((Object[]) result)[0])
     );
+    reportPage.setRows(this.buildRows(customerQueryTemplate.getColumnCount(0), this.includesAccounts(reportRequest),
+        customerResultList));
 
     reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
     reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
     return reportPage;
   }
 
+  @Override
+  public void streamReport(final ReportRequest reportRequest, final RowSink rowSink) throws IOException {
+    this.logger.info("Streaming report {0}.", this.getReportDefinition().getIdentifier());
+    final Pagination pagination = Pagination.unpaged();
+    final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+    final QueryTemplate customerQueryTemplate = this.compileCustomerQuery(reportRequest, pagination, bindParameters);
+    final boolean includeAccounts = this.includesAccounts(reportRequest);
+    ResultStreamer.stream(
+        this.entityManager,
+        customerQueryTemplate,
+        bindParameters,
+        result -> this.buildRow(customerQueryTemplate.getColumnCount(0), includeAccounts, result),
+        rowSink
+    );
+  }
+
   @Override
   public void validate(final ReportRequest reportRequest) throws IllegalArgumentException {
     final ArrayList<String> unknownFields =  new ArrayList<>();
@@ -163,67 +209,57 @@ public class CustomerListReportSpecification implements ReportSpecification {
     return header;
   }
 
-  private List<Row> buildRows(final ReportRequest reportRequest, final List<?> customerResultList) {
-    final ArrayList<Row> rows = new ArrayList<>();
-
-    customerResultList.forEach(result -> {
-      final Row row = new Row();
-      row.setValues(new ArrayList<>());
-
-      final String customerIdentifier;
-
-      if (result instanceof Object[]) {
-        final Object[] resultValues = (Object[]) result;
+  private List<Row> buildRows(final int customerColumnCount, final boolean includeAccounts,
+                              final List<?> customerResultList) {
+    return customerResultList
+        .stream()
+        .map(result -> this.buildRow(customerColumnCount, includeAccounts, result))
+        .collect(Collectors.toList());
+  }
 
-        customerIdentifier = resultValues[0].toString();
+  private Row buildRow(final int customerColumnCount, final boolean includeAccounts, final Object result) {
+    final Row row = new Row();
+    row.setValues(new ArrayList<>());
 
-        for (final Object resultValue : resultValues) {
-          final Value value = new Value();
-          if (resultValue != null) {
-            value.setValues(new String[]{resultValue.toString()});
-          } else {
-            value.setValues(new String[]{});
-          }
+    final Object[] resultValues = (Object[]) result;
 
-          row.getValues().add(value);
-        }
+    // the first column is the customer identifier used as ordering key
+    for (int i = 1; i <= customerColumnCount; i++) {
+      final Value value = new Value();
+      if (resultValues[i] != null) {
+        value.setValues(new String[]{resultValues[i].toString()});
       } else {
-        customerIdentifier = result.toString();
-
-        final Value value = new Value();
-        value.setValues(new String[]{result.toString()});
-        row.getValues().add(value);
+        value.setValues(new String[]{});
       }
 
-      final DecimalFormat decimalFormat = new DecimalFormat("0.00");
-      final Query accountQuery = this.entityManager.createNativeQuery(this.buildAccountQuery(reportRequest, customerIdentifier));
-      final List<?> accountResultList = accountQuery.getResultList();
-      final ArrayList<String> values = new ArrayList<>();
-      accountResultList.forEach(accountResult -> {
-        if (accountResult instanceof Object[]) {
-          final Object[] accountResultValues = (Object[]) accountResult;
-          final String accountValue = accountResultValues[0].toString() + " (" +
-              decimalFormat.format(Double.valueOf(accountResultValues[1].toString())) + ")";
-          values.add(accountValue);
-        }
-      });
+      row.getValues().add(value);
+    }
+
+    int index = customerColumnCount + 1;
+    if (includeAccounts) {
+      // accounts arrive aggregated as a JSON array, so they map straight to a multi-value cell
+      final Object accountResult = resultValues[index++];
       final Value accountValue = new Value();
-      accountValue.setValues(values.toArray(new String[values.size()]));
+      if (accountResult != null) {
+        accountValue.setValues(this.gson.fromJson(accountResult.toString(), String[].class));
+      } else {
+        accountValue.setValues(new String[]{});
+      }
       row.getValues().add(accountValue);
+    }
 
-      final String addressQueryString = this.buildAddressQuery(reportRequest, customerIdentifier);
-      if (addressQueryString != null) {
-        final Query addressQuery = this.entityManager.createNativeQuery(addressQueryString);
-        final List<?> resultList = addressQuery.getResultList();
-        final Value addressValue = new Value();
-        addressValue.setValues(new String[]{resultList.get(0).toString()});
-        row.getValues().add(addressValue);
+    if (resultValues.length > index) {
+      final Object addressResult = resultValues[index];
+      final Value addressValue = new Value();
+      if (addressResult != null) {
+        addressValue.setValues(new String[]{addressResult.toString()});
+      } else {
+        addressValue.setValues(new String[]{});
       }
+      row.getValues().add(addressValue);
+    }
 
-      rows.add(row);
-    });
-
-    return rows;
+    return row;
   }
 
   private List<QueryParameter> buildQueryParameters() {
@@ -244,85 +280,92 @@ public class CustomerListReportSpecification implements ReportSpecification {
     );
   }
 
-  private String buildCustomerQuery(final ReportRequest reportRequest, int pageIndex, int size) {
-    final StringBuilder query = new StringBuilder("SELECT ");
+  private QueryTemplate compileCustomerQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                             final BindParameters bindParameters) {
+    return this.queryTemplateCache.get(reportRequest, bindParameters,
+        () -> new QueryTemplate(
+            this.buildCustomerQuery(reportRequest, pagination, bindParameters),
+            this.collectColumns(reportRequest, this.customerColumnMapping).size()
+        )
+    );
+  }
 
-    final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
+  private String buildCustomerQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                    final BindParameters bindParameters) {
     final ArrayList<String> columns = new ArrayList<>();
-    displayableFields.forEach(displayableField -> {
-      final String column = this.customerColumnMapping.get(displayableField.getName());
-      if (column != null) {
-        columns.add(column);
-      }
-    });
+    columns.add("cst.identifier");
+    columns.addAll(this.collectColumns(reportRequest, this.customerColumnMapping));
+    final boolean includeAccounts = this.includesAccounts(reportRequest);
+    if (includeAccounts) {
+      columns.add(ACCOUNT_COLUMN);
+    }
+
+    final boolean includeAddress = !this.collectColumns(reportRequest, this.addressColumnMapping).isEmpty();
+    if (includeAddress) {
+      columns.add(ADDRESS_COLUMN);
+    }
 
+    final StringBuilder query = new StringBuilder("SELECT ");
     query.append(columns.stream().collect(Collectors.joining(", ")))
-        .append(" FROM ")
-        .append("maat_customers cst ");
-
-    final List<QueryParameter> queryParameters = reportRequest.getQueryParameters();
-    if (!queryParameters.isEmpty()) {
-      final ArrayList<String> criteria = new ArrayList<>();
-      queryParameters.forEach(queryParameter -> {
-        if(queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
-          criteria.add(
-            CriteriaBuilder.buildCriteria(this.customerColumnMapping.get(queryParameter.getName()), queryParameter)
-          );
-        }
-      });
-
-      if (!criteria.isEmpty()) {
-        query.append(" WHERE ");
-        query.append(criteria.stream().collect(Collectors.joining(" AND ")));
-      }
+        .append(" FROM (")
+        .append(this.buildCustomerPageQuery(reportRequest, pagination, bindParameters))
+        .append(") cst ");
 
+    if (includeAccounts) {
+      query.append(ACCOUNT_JOIN);
     }
-    query.append(" ORDER BY cst.identifier");
-
-    query.append(" LIMIT ");
-    query.append(size);
-    if (pageIndex > 0) {
-      query.append(" OFFSET ");
-      query.append(size * pageIndex);
+    if (includeAddress) {
+      query.append(ADDRESS_JOIN);
     }
 
+    query.append("ORDER BY cst.identifier");
+
     return query.toString();
   }
 
-  private String buildAccountQuery(final ReportRequest reportRequest, final String customerIdentifier) {
-    final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
-    final ArrayList<String> columns = new ArrayList<>();
-    displayableFields.forEach(displayableField -> {
-      final String column = this.accountColumnMapping.get(displayableField.getName());
-      if (column != null) {
-        columns.add(column);
+  private String buildCustomerPageQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                        final BindParameters bindParameters) {
+    final StringBuilder query = new StringBuilder("SELECT cst.* FROM maat_customers cst ");
+
+    final ArrayList<String> criteria = new ArrayList<>();
+    reportRequest.getQueryParameters().forEach(queryParameter -> {
+      if(queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
+        criteria.add(
+          CriteriaBuilder.buildCriteria(
+              this.customerColumnMapping.get(queryParameter.getName()), queryParameter, bindParameters
+          )
+        );
       }
     });
 
-    return "SELECT " + columns.stream().collect(Collectors.joining(", ")) + " " +
-        "FROM thoth_accounts acc " +
-            "LEFT JOIN maat_customers cst on acc.holders = cst.identifier " +
-        "WHERE cst.identifier ='" + customerIdentifier + "' " +
-        "ORDER BY acc.identifier";
+    if (pagination.getPageCursor() != null) {
+      criteria.add(pagination.getPageCursor().buildCriteria(bindParameters, "cst.identifier"));
+    }
+
+    if (!criteria.isEmpty()) {
+      query.append(" WHERE ");
+      query.append(criteria.stream().collect(Collectors.joining(" AND ")));
+    }
+
+    query.append(" ORDER BY cst.identifier");
+
+    pagination.appendLimit(query, bindParameters);
+
+    return query.toString();
   }
 
-  private String buildAddressQuery(final ReportRequest reportRequest, final String customerIdentifier) {
+  private boolean includesAccounts(final ReportRequest reportRequest) {
+    return !this.collectColumns(reportRequest, this.accountColumnMapping).isEmpty();
+  }
 
-    final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
+  private List<String> collectColumns(final ReportRequest reportRequest, final HashMap<String, String> columnMapping) {
     final ArrayList<String> columns = new ArrayList<>();
-    displayableFields.forEach(displayableField -> {
-      final String column = this.addressColumnMapping.get(displayableField.getName());
+    reportRequest.getDisplayableFields().forEach(displayableField -> {
+      final String column = columnMapping.get(displayableField.getName());
       if (column != null) {
         columns.add(column);
       }
     });
-
-    if (!columns.isEmpty()) {
-      return "SELECT " + columns.stream().collect(Collectors.joining(", ")) + " " +
-          "FROM maat_addresses adr " +
-              "LEFT JOIN maat_customers cst on adr.id = cst.address_id " +
-          "WHERE cst.identifier ='" + customerIdentifier + "' ";
-    }
-    return null;
+    return columns;
   }
 }
@@ -28,16 +28,27 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.CriteriaBuilder;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
 import org.apache.fineract.cn.reporting.service.spi.QueryParameterBuilder;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplate;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplateCache;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.apache.fineract.cn.reporting.service.spi.ResultStreamer;
+import org.apache.fineract.cn.reporting.service.spi.RowSink;
+import java.io.IOException;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
@@ -48,7 +59,7 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-@Report(category = "Deposit", identifier = "Listing")
+@Report(category = "Deposit", identifier = "Listing", timeToLive = 300, reportClass = ReportClass.BULK)
 public class DepositListReportSpecification implements ReportSpecification {
 
     private static final String CUSTOMER = "Customer Account";
@@ -63,7 +74,13 @@ public class DepositListReportSpecification implements ReportSpecification {
     private static final String OFFICE = "Office";
     private static final String DATE_RANGE = "Date Created";
 
+    // product, deposit type, account number, status, created by and date created, in that order
+    private static final String DEPOSIT_COLUMNS =
+            "pd.a_name, pd.a_type, pi.account_identifier, pi.a_state, pi.created_by, pi.created_on";
+    private static final int DEPOSIT_COLUMN_COUNT = 6;
+
     private final EntityManager entityManager;
+    private final ReportDefinition reportDefinition;
 
     private final Logger logger;
 
@@ -71,6 +88,7 @@ public class DepositListReportSpecification implements ReportSpecification {
     private final HashMap<String, String> depositAccountColumnMapping = new HashMap<>();
     private final HashMap<String, String> depositProductColumnMapping = new HashMap<>();
     private final HashMap<String, String> allColumnMapping = new HashMap<>();
+    private final QueryTemplateCache queryTemplateCache = new QueryTemplateCache();
 
 
     @Autowired
@@ -78,23 +96,21 @@ public class DepositListReportSpecification implements ReportSpecification {
         this.entityManager = entityManager;
         this.logger = logger;
         this.initializeMapping();
+        this.reportDefinition = ReportDefinitionBuilder.create("Listing", "Deposit Account Listing")
+                .description("List of all deposit accounts.")
+                .queryParameters(this.buildQueryParameters())
+                .displayableFields(this.buildDisplayableFields())
+                .build();
     }
 
 
     @Override
     public ReportDefinition getReportDefinition() {
-
-        final ReportDefinition reportDefinition = new ReportDefinition();
-        reportDefinition.setIdentifier("Listing");
-        reportDefinition.setName("Deposit Account Listing");
-        reportDefinition.setDescription("List of all deposit accounts.");
-        reportDefinition.setQueryParameters(this.buildQueryParameters());
-        reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-        return reportDefinition;
+        return this.reportDefinition;
     }
 
     @Override
-    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size) {
+    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size, PageCursor pageCursor) {
         final ReportDefinition reportDefinition = this.getReportDefinition();
         this.logger.info("Generating report {0} ", reportDefinition.getIdentifier());
 
@@ -103,21 +119,56 @@ public class DepositListReportSpecification implements ReportSpecification {
         reportPage.setDescription(reportDefinition.getDescription());
         reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-        final Query customerQuery = this.entityManager.createNativeQuery(this.buildCustomerQuery(reportRequest, pageIndex, size));
-
-        final List<?> customerResultList = customerQuery.getResultList();
-        reportPage.setRows(this.buildRows(reportRequest, customerResultList));
+        final Pagination pagination = Pagination.of(pageIndex, size, pageCursor);
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        final QueryTemplate depositQueryTemplate = this.compileDepositQuery(reportRequest, pagination, bindParameters);
+        final Query depositQuery = bindParameters.createNativeQuery(this.entityManager, depositQueryTemplate);
 
-        reportPage.setHasMore(
-                !this.entityManager.createNativeQuery(this.buildCustomerQuery(reportRequest, pageIndex + 1, size))
-                        .getResultList().isEmpty()
+        final List<?> depositResultList = depositQuery.getResultList();
+        final List<CustomerDeposits> customerDeposits = pagination.apply(
+                reportPage,
+                this.collectDeposits(depositQueryTemplate.getColumnCount(0), depositResultList),
+                deposits -> PageCursor.of(deposits.customerIdentifier)
         );
+        reportPage.setRows(this.buildRows(customerDeposits));
 
         reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
         reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
         return reportPage;
     }
 
+    @Override
+    public void streamReport(final ReportRequest reportRequest, final RowSink rowSink) throws IOException {
+        this.logger.info("Streaming report {0}.", this.getReportDefinition().getIdentifier());
+        final Pagination pagination = Pagination.unpaged();
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        final QueryTemplate depositQueryTemplate = this.compileDepositQuery(reportRequest, pagination, bindParameters);
+        final int customerColumnCount = depositQueryTemplate.getColumnCount(0);
+
+        // results arrive ordered by customer, the row of a customer is complete once the next one starts
+        ResultStreamer.scroll(this.entityManager, depositQueryTemplate, bindParameters, new ResultStreamer.ResultHandler() {
+            private CustomerDeposits current;
+
+            @Override
+            public void handle(final Object result, final RowSink sink) throws IOException {
+                final Object[] resultValues = (Object[]) result;
+                if (this.current == null || !this.current.customerIdentifier.equals(resultValues[0].toString())) {
+                    this.finish(sink);
+                    this.current = DepositListReportSpecification.this.createDeposits(customerColumnCount, resultValues);
+                }
+                DepositListReportSpecification.this.addDeposits(this.current, customerColumnCount, resultValues);
+            }
+
+            @Override
+            public void finish(final RowSink sink) throws IOException {
+                if (this.current != null) {
+                    sink.write(DepositListReportSpecification.this.buildRow(this.current));
+                    this.current = null;
+                }
+            }
+        }, rowSink);
+    }
+
     @Override
     public void validate(ReportRequest reportRequest) throws IllegalArgumentException {
         final ArrayList<String> unknownFields = new ArrayList<>();
@@ -171,204 +222,138 @@ public class DepositListReportSpecification implements ReportSpecification {
         return header;
     }
 
-    private List<Row> buildRows(final ReportRequest reportRequest, final List<?> customerResultList) {
-        final ArrayList<Row> rows = new ArrayList<>();
-
-        customerResultList.forEach(result -> {
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
+    private List<CustomerDeposits> collectDeposits(final int customerColumnCount, final List<?> depositResultList) {
+        final LinkedHashMap<String, CustomerDeposits> customerDeposits = new LinkedHashMap<>();
 
-            final String customerIdentifier;
-
-            if (result instanceof Object[]) {
-                final Object[] resultValues = (Object[]) result;
+        depositResultList.forEach(result -> {
+            final Object[] resultValues = (Object[]) result;
 
-                customerIdentifier = resultValues[0].toString();
+            final CustomerDeposits deposits = customerDeposits.computeIfAbsent(resultValues[0].toString(),
+                    key -> this.createDeposits(customerColumnCount, resultValues));
+            this.addDeposits(deposits, customerColumnCount, resultValues);
+        });
 
-                for (final Object resultValue : resultValues) {
-                    final Value value = new Value();
-                    if (resultValue != null) {
-                        value.setValues(new String[]{resultValue.toString()});
-                    } else {
-                        value.setValues(new String[]{});
-                    }
+        return new ArrayList<>(customerDeposits.values());
+    }
 
-                    row.getValues().add(value);
-                }
+    private CustomerDeposits createDeposits(final int customerColumnCount, final Object[] resultValues) {
+        final CustomerDeposits deposits = new CustomerDeposits(resultValues[0].toString(), DEPOSIT_COLUMN_COUNT);
+        for (int i = 1; i <= customerColumnCount; i++) {
+            final Value value = new Value();
+            if (resultValues[i] != null) {
+                value.setValues(new String[]{resultValues[i].toString()});
             } else {
-                customerIdentifier = result.toString();
-
-                final Value value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
+                value.setValues(new String[]{});
             }
 
-            final Query accountQuery = this.entityManager.createNativeQuery(this.buildDepositAccountQuery(reportRequest, customerIdentifier));
-            final List<?> accountResultList = accountQuery.getResultList();
-
-            final ArrayList<String> products = new ArrayList<>();
-            final ArrayList<String> depositAccountNumber = new ArrayList<>();
-            final ArrayList<String> depositType = new ArrayList<>();
-            final ArrayList<String> status = new ArrayList<>();
-            final ArrayList<String> createdBy = new ArrayList<>();
-            final ArrayList<String> dateCreated = new ArrayList<>();
-
-            accountResultList.forEach(accountResult -> {
-
-                final String productIdentifier;
-                if (accountResult instanceof Object[]) {
-                    final Object[] accountResultValues = (Object[]) accountResult;
-
-                    productIdentifier = accountResultValues[0].toString();
-
-                    final Query depositProductQuery = this.entityManager.createNativeQuery(this.buildDepositProductQuery(reportRequest, productIdentifier));
-                    final List<?> depositProductResultList = depositProductQuery.getResultList();
-
-                    depositProductResultList.forEach(product -> {
-                        final Object[] productResultValues = (Object[]) product;
-
-                        for (int i = 0; i < productResultValues.length; i++) {
-
-                            if (i == 0 && productResultValues[0] != null) {
-                                products.add(productResultValues[0].toString());
-                            }
-
-                            if (i == 1 && productResultValues[1] != null) {
-                                depositType.add(productResultValues[1].toString());
-                            }
-
-                        }
-                    });
-
-
-                    for (int i = 1; i < accountResultValues.length ; i++) {
-                        if (i == 1 && accountResultValues[1] != null){
-                            depositAccountNumber.add(accountResultValues[1].toString());
-                        }
-
-                        if (i == 2  && accountResultValues[2] != null){
-                            status.add(accountResultValues[2].toString());
-                        }
-
-                        if (i == 3 && accountResultValues[3] != null){
-                            createdBy.add(accountResultValues[3].toString());
-                        }
-
-                        if (i == 4 && accountResultValues[4] != null){
-                            dateCreated.add(accountResultValues[4].toString());
-                        }
-
-                    }
-                }
-            });
-
-            final Value productValue = new Value();
-            productValue.setValues(products.toArray(new String[products.size()]));
-            row.getValues().add(productValue);
-
-            final Value depositTypeValue = new Value();
-            depositTypeValue.setValues(depositType.toArray(new String[depositAccountNumber.size()]));
-            row.getValues().add(depositTypeValue);
-
-            final Value depositAccountNumberValue = new Value();
-            depositAccountNumberValue.setValues(depositAccountNumber.toArray(new String[depositType.size()]));
-            row.getValues().add(depositAccountNumberValue);
-
-            final Value statusValue = new Value();
-            statusValue.setValues(status.toArray(new String[status.size()]));
-            row.getValues().add(statusValue);
+            deposits.row.getValues().add(value);
+        }
+        return deposits;
+    }
 
-            final Value createdByValue = new Value();
-            createdByValue.setValues(createdBy.toArray(new String[createdBy.size()]));
-            row.getValues().add(createdByValue);
+    private void addDeposits(final CustomerDeposits deposits, final int customerColumnCount,
+                             final Object[] resultValues) {
+        // customers without any deposit account come back with a single row of NULL account columns
+        for (int i = 0; i < DEPOSIT_COLUMN_COUNT; i++) {
+            final Object depositValue = resultValues[customerColumnCount + 1 + i];
+            if (depositValue != null) {
+                deposits.depositValues.get(i).add(depositValue.toString());
+            }
+        }
+    }
 
-            final Value dateCreatedValue = new Value();
-            dateCreatedValue.setValues(dateCreated.toArray(new String[dateCreated.size()]));
-            row.getValues().add(dateCreatedValue);
+    private List<Row> buildRows(final List<CustomerDeposits> customerDeposits) {
+        final ArrayList<Row> rows = new ArrayList<>(customerDeposits.size());
+        customerDeposits.forEach(deposits -> rows.add(this.buildRow(deposits)));
+        return rows;
+    }
 
-            rows.add(row);
+    private Row buildRow(final CustomerDeposits deposits) {
+        deposits.depositValues.forEach(values -> {
+            final Value value = new Value();
+            value.setValues(values.toArray(new String[values.size()]));
+            deposits.row.getValues().add(value);
         });
-
-        return rows;
+        return deposits.row;
     }
 
-    private String buildCustomerQuery(final ReportRequest reportRequest, int pageIndex, int size) {
-        final StringBuilder query = new StringBuilder("SELECT ");
+    private QueryTemplate compileDepositQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                              final BindParameters bindParameters) {
+        return this.queryTemplateCache.get(reportRequest, bindParameters,
+                () -> new QueryTemplate(
+                        this.buildDepositQuery(reportRequest, pagination, bindParameters),
+                        this.collectColumns(reportRequest, this.customerColumnMapping).size()
+                )
+        );
+    }
 
-        final List<DisplayableField> displayableFields;
-        displayableFields = reportRequest.getDisplayableFields();
+    private String buildDepositQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                     final BindParameters bindParameters) {
         final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.customerColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
-            }
-        });
+        columns.add("cst.identifier");
+        columns.addAll(this.collectColumns(reportRequest, this.customerColumnMapping));
+        columns.add(DEPOSIT_COLUMNS);
 
+        final StringBuilder query = new StringBuilder("SELECT ");
         query.append(columns.stream().collect(Collectors.joining(", ")))
-                .append(" FROM ")
-                .append("maat_customers cst ");
-
-        final List<QueryParameter> queryParameters = reportRequest.getQueryParameters();
-        if (!queryParameters.isEmpty()) {
-            final ArrayList<String> criteria = new ArrayList<>();
-            queryParameters.forEach(queryParameter -> {
-                if(queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
-                    criteria.add(
-                            CriteriaBuilder.buildCriteria(this.customerColumnMapping.get(queryParameter.getName()), queryParameter)
-                    );
-                }
-            });
+                .append(" FROM (")
+                .append(this.buildCustomerQuery(reportRequest, pagination, bindParameters))
+                .append(") cst ")
+                .append("LEFT JOIN shed_product_instances pi on pi.customer_identifier = cst.identifier ");
+
+        final List<String> accountCriteria = this.buildCriteria(reportRequest, this.depositAccountColumnMapping, bindParameters);
+        if (!accountCriteria.isEmpty()) {
+            query.append("AND ");
+            query.append(accountCriteria.stream().collect(Collectors.joining(" AND ")));
+            query.append(" ");
+        }
 
-            if (!criteria.isEmpty()) {
-                query.append(" WHERE ");
-                query.append(criteria.stream().collect(Collectors.joining(" AND ")));
-            }
+        query.append("LEFT JOIN shed_product_definitions pd on pd.id = pi.product_definition_id ")
+                .append("ORDER BY cst.identifier, pi.account_identifier");
+
+        return query.toString();
+    }
 
+    private String buildCustomerQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                      final BindParameters bindParameters) {
+        final StringBuilder query = new StringBuilder("SELECT cst.* FROM maat_customers cst ");
+
+        final List<String> criteria = this.buildCriteria(reportRequest, this.customerColumnMapping, bindParameters);
+        if (pagination.getPageCursor() != null) {
+            criteria.add(pagination.getPageCursor().buildCriteria(bindParameters, "cst.identifier"));
+        }
+        if (!criteria.isEmpty()) {
+            query.append(" WHERE ");
+            query.append(criteria.stream().collect(Collectors.joining(" AND ")));
         }
         query.append(" ORDER BY cst.identifier");
 
-        query.append(" LIMIT ");
-        query.append(size);
-        if (pageIndex > 0) {
-            query.append(" OFFSET ");
-            query.append(size * pageIndex);
-        }
+        pagination.appendLimit(query, bindParameters);
 
         return query.toString();
     }
 
-    private String buildDepositAccountQuery(final ReportRequest reportRequest, final String customerIdentifier) {
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
+    private List<String> collectColumns(final ReportRequest reportRequest, final HashMap<String, String> columnMapping) {
         final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.depositAccountColumnMapping.get(displayableField.getName());
+        reportRequest.getDisplayableFields().forEach(displayableField -> {
+            final String column = columnMapping.get(displayableField.getName());
             if (column != null) {
                 columns.add(column);
             }
         });
-
-        return "SELECT " + columns.stream().collect(Collectors.joining(", ")) + " " +
-                "FROM shed_product_instances pi " +
-                "LEFT JOIN maat_customers cst on pi.customer_identifier = cst.identifier " +
-                "WHERE cst.identifier ='" + customerIdentifier + "' " +
-                "ORDER BY pi.account_identifier";
+        return columns;
     }
 
-    private String buildDepositProductQuery(final ReportRequest reportRequest, final String productIdentifier){
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
-        final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.depositProductColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
+    private List<String> buildCriteria(final ReportRequest reportRequest, final HashMap<String, String> columnMapping,
+                                       final BindParameters bindParameters) {
+        final ArrayList<String> criteria = new ArrayList<>();
+        reportRequest.getQueryParameters().forEach(queryParameter -> {
+            final String column = columnMapping.get(queryParameter.getName());
+            if (column != null && queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
+                criteria.add(CriteriaBuilder.buildCriteria(column, queryParameter, bindParameters));
             }
         });
-
-        return "SELECT DISTINCT " + columns.stream().collect(Collectors.joining(", ")) + " " +
-                "FROM shed_product_definitions pd " +
-                "LEFT JOIN shed_product_instances pi on pd.id = pi.product_definition_id " +
-                "WHERE pi.product_definition_id ='" + productIdentifier + "' ";
+        return criteria;
     }
 
     private List<DisplayableField> buildDisplayableFields() {
@@ -397,5 +382,21 @@ public class DepositListReportSpecification implements ReportSpecification {
         );
     }
 
+    private static class CustomerDeposits {
 
+        private final String customerIdentifier;
+        private final Row row;
+        private final List<ArrayList<String>> depositValues;
+
+        private CustomerDeposits(final String customerIdentifier, final int depositColumnCount) {
+            super();
+            this.customerIdentifier = customerIdentifier;
+            this.row = new Row();
+            this.row.setValues(new ArrayList<>());
+            this.depositValues = new ArrayList<>(depositColumnCount);
+            for (int i = 0; i < depositColumnCount; i++) {
+                this.depositValues.add(new ArrayList<>());
+            }
+        }
+    }
 }
@@ -28,25 +28,32 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.internal.service.BalanceSnapshotService;
+import org.apache.fineract.cn.reporting.service.internal.service.SectionExecutor;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.QueryParameterBuilder;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
 import java.math.BigDecimal;
 import java.time.Clock;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
-import javax.persistence.Query;
 import org.apache.fineract.cn.api.util.UserContextHolder;
 import org.apache.fineract.cn.lang.DateConverter;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-@Report(category = "Accounting", identifier = "Incomestatement")
+@Report(category = "Accounting", identifier = "Incomestatement", timeToLive = 900)
 public class IncomeStatementReportSpecification implements ReportSpecification {
 
     private static final String DATE_RANGE = "Date range";
@@ -54,36 +61,40 @@ public class IncomeStatementReportSpecification implements ReportSpecification {
     private static final String IDENTIFIER = "Identifier";
     private static final String NAME = "Name";
     private static final String BALANCE = "Balance";
+    private static final String AS_OF = "As of";
 
     private final Logger logger;
 
-    private final EntityManager entityManager;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final SectionExecutor sectionExecutor;
+    private final ReportDefinition reportDefinition;
 
     private final HashMap<String, String> accountColumnMapping = new HashMap<>();
     private final HashMap<String, String> allColumnMapping = new HashMap<>();
 
 
     public IncomeStatementReportSpecification(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
-                                              final EntityManager entityManager){
+                                              final BalanceSnapshotService balanceSnapshotService,
+                                              final SectionExecutor sectionExecutor){
         super();
         this.logger = logger;
-        this.entityManager = entityManager;
+        this.balanceSnapshotService = balanceSnapshotService;
+        this.sectionExecutor = sectionExecutor;
         this.initializeMapping();
+        this.reportDefinition = ReportDefinitionBuilder.create("Incomestatement", "Income Statement")
+                .description("Income statement report")
+                .queryParameters(this.buildQueryParameters())
+                .displayableFields(this.buildDisplayableFields())
+                .build();
     }
 
     @Override
     public ReportDefinition getReportDefinition() {
-        final ReportDefinition reportDefinition = new ReportDefinition();
-        reportDefinition.setIdentifier("Incomestatement");
-        reportDefinition.setName("Income Statement");
-        reportDefinition.setDescription("Income statement report");
-        reportDefinition.setQueryParameters(this.buildQueryParameters());
-        reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-        return reportDefinition;
+        return this.reportDefinition;
     }
 
     @Override
-    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size) {
+    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size, PageCursor pageCursor) {
         final ReportDefinition reportDefinition = this.getReportDefinition();
         this.logger.info("Generating report {0}.", reportDefinition.getIdentifier());
 
@@ -92,14 +103,19 @@ public class IncomeStatementReportSpecification implements ReportSpecification {
         reportPage.setDescription(reportDefinition.getDescription());
         reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-        final Query accountQuery = this.entityManager.createNativeQuery(this.buildAccountQuery(reportRequest, pageIndex, size));
-        final List<?> accountResultList =  accountQuery.getResultList();
-        reportPage.setRows(this.buildRows(reportRequest, accountResultList));
+        // statements of a closed period are served from its snapshot and no longer move with the ledger
+        final Optional<LocalDate> periodEnd = this.findPeriodEnd(reportRequest);
+        // revenues and expenses don't depend on each other and may be read side by side
+        final List<List<?>> sectionResults = this.sectionExecutor.execute(reportDefinition.getIdentifier(), Arrays.asList(
+                SectionExecutor.section("revenue",
+                        entityManager -> this.querySection(entityManager, reportRequest, periodEnd, "REVENUE")),
+                SectionExecutor.section("expense",
+                        entityManager -> this.querySection(entityManager, reportRequest, periodEnd, "EXPENSE"))
+        ));
+        reportPage.setRows(this.buildRows(this.collectColumns(reportRequest).size(),
+                sectionResults.get(0), sectionResults.get(1)));
 
-        reportPage.setHasMore(
-                !this.entityManager.createNativeQuery(this.buildAccountQuery(reportRequest, pageIndex + 1, size))
-                        .getResultList().isEmpty()
-        );
+        reportPage.setHasMore(false);
 
         reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
         reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
@@ -110,7 +126,8 @@ public class IncomeStatementReportSpecification implements ReportSpecification {
     public void validate(ReportRequest reportRequest) throws IllegalArgumentException {
         final ArrayList<String> unknownFields =  new ArrayList<>();
         reportRequest.getQueryParameters().forEach(queryParameter -> {
-            if (!this.allColumnMapping.keySet().contains(queryParameter.getName())) {
+            if (!AS_OF.equals(queryParameter.getName())
+                    && !this.allColumnMapping.keySet().contains(queryParameter.getName())) {
                 unknownFields.add(queryParameter.getName());
             }
         });
@@ -126,6 +143,11 @@ public class IncomeStatementReportSpecification implements ReportSpecification {
                     "Unspecified fields requested: " + unknownFields.stream().collect(Collectors.joining(", "))
             );
         }
+
+        // snapshots keep balances, not the accounts' creation dates
+        if (this.requestsAsOf(reportRequest) && this.requestsDateRange(reportRequest)) {
+            throw new IllegalArgumentException(DATE_RANGE + " is not available for statements of a closed period.");
+        }
     }
 
     private void initializeMapping() {
@@ -138,6 +160,41 @@ public class IncomeStatementReportSpecification implements ReportSpecification {
         this.allColumnMapping.putAll(accountColumnMapping);
     }
 
+    private boolean requestsAsOf(final ReportRequest reportRequest) {
+        return reportRequest.getQueryParameters()
+                .stream()
+                .anyMatch(queryParameter -> AS_OF.equals(queryParameter.getName())
+                        && queryParameter.getValue() != null && !queryParameter.getValue().isEmpty());
+    }
+
+    private boolean requestsDateRange(final ReportRequest reportRequest) {
+        return reportRequest.getQueryParameters().stream().anyMatch(queryParameter -> DATE_RANGE.equals(queryParameter.getName()))
+                || reportRequest.getDisplayableFields().stream().anyMatch(displayableField -> DATE_RANGE.equals(displayableField.getName()));
+    }
+
+    private Optional<LocalDate> findPeriodEnd(final ReportRequest reportRequest) {
+        return reportRequest.getQueryParameters()
+                .stream()
+                .filter(queryParameter -> AS_OF.equals(queryParameter.getName())
+                        && queryParameter.getValue() != null && !queryParameter.getValue().isEmpty())
+                .findFirst()
+                .map(queryParameter -> this.balanceSnapshotService.snapshotAsOf(queryParameter.getValue()));
+    }
+
+    private List<?> querySection(final EntityManager entityManager, final ReportRequest reportRequest,
+                                 final Optional<LocalDate> periodEnd, final String accountType) {
+        final BindParameters bindParameters = new BindParameters();
+        final String query =
+                this.buildSectionQuery(reportRequest, this.accountSource(periodEnd, bindParameters), accountType);
+        return bindParameters.createNativeQuery(entityManager, query).getResultList();
+    }
+
+    private String accountSource(final Optional<LocalDate> periodEnd, final BindParameters bindParameters) {
+        return periodEnd
+                .map(end -> this.balanceSnapshotService.accountsAsOf(end, bindParameters))
+                .orElse("thoth_accounts") + " acc ";
+    }
+
     private Header createHeader(List<DisplayableField> displayableFields) {
         final Header header = new Header();
         header.setColumnNames(
@@ -149,148 +206,79 @@ public class IncomeStatementReportSpecification implements ReportSpecification {
         return header;
     }
 
-    private List<Row> buildRows(ReportRequest reportRequest, List<?> accountResultList) {
+    private List<Row> buildRows(final int columnCount, final List<?> revenueResultList, final List<?> expenseResultList) {
         final ArrayList<Row> rows = new ArrayList<>();
-        
-        final Row totalRevenueRow = new Row();
-        totalRevenueRow.setValues(new ArrayList<>());
-
-        final Value subRevenueTotal = new Value();
-
-        final BigDecimal[] revenueSubTotal = {new BigDecimal("0.000")};
-
-        accountResultList.forEach(result -> {
-
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
-
-            if (result instanceof Object[]) {
-                final Object[] resultValues;
-                resultValues = (Object[]) result;
-
-                for (int i = 0; i < resultValues.length; i++){
-                    final Value revValue = new Value();
-                    if (resultValues[i] != null){
-                        revValue.setValues(new String[]{resultValues[i].toString()});
-                    }else revValue.setValues(new String[]{});
-
-                    row.getValues().add(revValue);
-
-                    revenueSubTotal[0] = revenueSubTotal[0].add((BigDecimal)resultValues[3]);
-
-                }
-            } else {
-                final Value value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
-            }
-
-            rows.add(row);
-        });
-
-        subRevenueTotal.setValues(new String[]{new StringBuilder().append("TOTAL REVENUES ").append(revenueSubTotal[0]).toString()});
-        totalRevenueRow.getValues().add(subRevenueTotal);
-
-        rows.add(totalRevenueRow);
 
+        final BigDecimal revenueTotal = this.addSection(rows, columnCount, revenueResultList);
+        rows.add(this.createTotalRow("TOTAL REVENUES " + revenueTotal));
 
-        final String expenseQueryString = this.buildExpenseQuery(reportRequest);
-        final Query expenseQuery = this.entityManager.createNativeQuery(expenseQueryString);
-        final List<?> expenseResultList = expenseQuery.getResultList();
+        final BigDecimal expenseTotal = this.addSection(rows, columnCount, expenseResultList);
+        rows.add(this.createTotalRow("TOTAL EXPENSES " + expenseTotal));
 
-        final Row totalExpenseRow = new Row();
-        totalExpenseRow.setValues(new ArrayList<>());
-        final Value subExpenseTotal = new Value();
+        rows.add(this.createTotalRow("NET INCOME " + revenueTotal.subtract(expenseTotal)));
 
-        final Row netIncomeRow = new Row();
-        netIncomeRow.setValues(new ArrayList<>());
-        final Value netIncomeTotal = new Value();
-
-        final BigDecimal[] expenseSubTotal = {new BigDecimal("0.000")};
+        return rows;
+    }
 
-        expenseResultList.forEach(result -> {
+    // the displayable columns are followed by the balance the section is totalled on
+    private BigDecimal addSection(final List<Row> rows, final int columnCount, final List<?> resultList) {
+        BigDecimal total = new BigDecimal("0.000");
+        for (final Object result : resultList) {
+            final Object[] resultValues = (Object[]) result;
 
             final Row row = new Row();
             row.setValues(new ArrayList<>());
-
-            if (result instanceof Object[]) {
-                final Object[] resultValues;
-                resultValues = (Object[]) result;
-
-                for (int i = 0; i < resultValues.length; i++){
-                    final Value expValue = new Value();
-                    if (resultValues[i] != null) expValue.setValues(new String[]{resultValues[i].toString()});
-                    else expValue.setValues(new String[]{});
-
-                    row.getValues().add(expValue);
-
-                    expenseSubTotal[0] = expenseSubTotal[0].add((BigDecimal)resultValues[3]);
-
+            for (int i = 0; i < columnCount; i++) {
+                final Value value = new Value();
+                if (resultValues[i] != null) {
+                    value.setValues(new String[]{resultValues[i].toString()});
+                } else {
+                    value.setValues(new String[]{});
                 }
-            } else {
-                final Value value;
-                value = new Value();
-                value.setValues(new String[]{result.toString()});
                 row.getValues().add(value);
             }
-
             rows.add(row);
-        });
 
-        subExpenseTotal.setValues(new String[]{new StringBuilder().append("TOTAL EXPENSES ").append(expenseSubTotal[0]).toString()});
-        totalExpenseRow.getValues().add(subExpenseTotal);
-        rows.add(totalExpenseRow);
-
-        final BigDecimal netIncome = revenueSubTotal[0].subtract(expenseSubTotal[0]);
-        netIncomeTotal.setValues(new String[]{new StringBuilder().append("NET INCOME ").append(netIncome).toString()});
-        netIncomeRow.getValues().add(netIncomeTotal);
-        rows.add(netIncomeRow);
+            total = total.add((BigDecimal) resultValues[columnCount]);
+        }
+        return total;
+    }
 
-        return rows;
+    private Row createTotalRow(final String total) {
+        final Value value = new Value();
+        value.setValues(new String[]{total});
+        final Row row = new Row();
+        row.setValues(new ArrayList<>());
+        row.getValues().add(value);
+        return row;
     }
 
-    private String buildAccountQuery(final ReportRequest reportRequest, int pageIndex, int size) {
+    private String buildSectionQuery(final ReportRequest reportRequest, final String accounts,
+                                     final String accountType) {
         final StringBuilder query = new StringBuilder("SELECT ");
 
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
-        final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.accountColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
-            }
-        });
+        final List<String> columns = this.collectColumns(reportRequest);
+        columns.add("COALESCE(acc.balance, 0)");
 
         query.append(columns.stream().collect(Collectors.joining(", ")))
                 .append(" FROM ")
-                .append("thoth_accounts acc ")
-                .append("WHERE acc.a_type = 'REVENUE' ");
+                .append(accounts)
+                .append("WHERE acc.a_type = '").append(accountType).append("' ");
 
         query.append(" ORDER BY acc.identifier");
 
         return query.toString();
     }
 
-    private String buildExpenseQuery(final ReportRequest reportRequest) {
-        final StringBuilder query = new StringBuilder("SELECT ");
-
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
+    private List<String> collectColumns(final ReportRequest reportRequest) {
         final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
+        reportRequest.getDisplayableFields().forEach(displayableField -> {
             final String column = this.accountColumnMapping.get(displayableField.getName());
             if (column != null) {
                 columns.add(column);
             }
         });
-
-        query.append(columns.stream().collect(Collectors.joining(", ")))
-                .append(" FROM ")
-                .append("thoth_accounts acc ")
-                .append("WHERE acc.a_type = 'EXPENSE' ");
-
-        query.append(" ORDER BY acc.identifier");
-
-        return query.toString();
+        return columns;
     }
 
     private List<DisplayableField> buildDisplayableFields() {
@@ -303,6 +291,8 @@ public class IncomeStatementReportSpecification implements ReportSpecification {
     }
 
     private List<QueryParameter> buildQueryParameters() {
-        return Arrays.asList();
+        return Arrays.asList(
+                QueryParameterBuilder.create(AS_OF, Type.DATE).operator(QueryParameter.Operator.EQUALS).build()
+        );
     }
 }
@@ -28,15 +28,28 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.CriteriaBuilder;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplate;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplateCache;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.apache.fineract.cn.reporting.service.spi.ResultStreamer;
+import org.apache.fineract.cn.reporting.service.spi.RowSink;
+import java.io.IOException;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
@@ -47,7 +60,7 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-@Report(category = "Loan", identifier = "Listing")
+@Report(category = "Loan", identifier = "Listing", timeToLive = 300, reportClass = ReportClass.BULK)
 public class LoanListReportSpecification implements ReportSpecification {
 
 
@@ -70,11 +83,13 @@ public class LoanListReportSpecification implements ReportSpecification {
     private final Logger logger;
 
     private final EntityManager entityManager;
+    private final ReportDefinition reportDefinition;
 
     private final HashMap<String, String> customerColumnMapping = new HashMap<>();
     private final HashMap<String, String> loanColumnMapping = new HashMap<>();
     private final HashMap<String, String> caseColumnMapping = new HashMap<>();
     private final HashMap<String, String> allColumnMapping = new HashMap<>();
+    private final QueryTemplateCache queryTemplateCache = new QueryTemplateCache();
 
     @Autowired
     public LoanListReportSpecification(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
@@ -83,21 +98,20 @@ public class LoanListReportSpecification implements ReportSpecification {
         this.logger = logger;
         this.entityManager = entityManager;
         this.initializeMapping();
+        this.reportDefinition = ReportDefinitionBuilder.create("Listing", "Loan Account Listing")
+                .description("List of all loan accounts.")
+                .queryParameters(this.buildQueryParameters())
+                .displayableFields(this.buildDisplayableFields())
+                .build();
     }
 
     @Override
     public ReportDefinition getReportDefinition() {
-        final ReportDefinition reportDefinition = new ReportDefinition();
-        reportDefinition.setIdentifier("Listing");
-        reportDefinition.setName("Loan Account Listing");
-        reportDefinition.setDescription("List of all loan accounts.");
-        reportDefinition.setQueryParameters(this.buildQueryParameters());
-        reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-        return reportDefinition;
+        return this.reportDefinition;
     }
 
     @Override
-    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size) {
+    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size, PageCursor pageCursor) {
         final ReportDefinition reportDefinition = this.getReportDefinition();
         this.logger.info("Generating report {0}.", reportDefinition.getIdentifier());
 
@@ -106,21 +120,51 @@ public class LoanListReportSpecification implements ReportSpecification {
         reportPage.setDescription(reportDefinition.getDescription());
         reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-        final Query customerQuery;
-        customerQuery = this.entityManager.createNativeQuery(this.buildCustomerQuery(reportRequest, pageIndex, size));
-        final List<?> customerResultList =  customerQuery.getResultList();
-        reportPage.setRows(this.buildRows(reportRequest, customerResultList));
-
-        reportPage.setHasMore(
-                !this.entityManager.createNativeQuery(this.buildCustomerQuery(reportRequest, pageIndex + 1, size))
-                        .getResultList().isEmpty()
+        final Pagination pagination = Pagination.of(pageIndex, size, pageCursor);
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        final QueryTemplate customerQueryTemplate = this.compileCustomerQuery(reportRequest, pagination, bindParameters);
+        final Query customerQuery = bindParameters.createNativeQuery(this.entityManager, customerQueryTemplate);
+        final List<?> customerResultList = pagination.apply(
+                reportPage,
+                customerQuery.getResultList(),
+                result -> PageCursor.of(result instanceof Object[] ? ((Object[]) result)[0] : result)
         );
+        reportPage.setRows(this.buildRows(reportRequest, customerResultList));
 
         reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
         reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
         return reportPage;
     }
 
+    @Override
+    public void streamReport(final ReportRequest reportRequest, final RowSink rowSink) throws IOException {
+        this.logger.info("Streaming report {0}.", this.getReportDefinition().getIdentifier());
+        final Pagination pagination = Pagination.unpaged();
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        final QueryTemplate customerQueryTemplate = this.compileCustomerQuery(reportRequest, pagination, bindParameters);
+
+        // customers stream from the cursor, their loans and cases are looked up for one fetch of customers at a time
+        ResultStreamer.scroll(this.entityManager, customerQueryTemplate, bindParameters, new ResultStreamer.ResultHandler() {
+            private final ArrayList<Object> customers = new ArrayList<>(ResultStreamer.FETCH_SIZE);
+
+            @Override
+            public void handle(final Object result, final RowSink sink) throws IOException {
+                this.customers.add(result);
+                if (this.customers.size() == ResultStreamer.FETCH_SIZE) {
+                    this.finish(sink);
+                }
+            }
+
+            @Override
+            public void finish(final RowSink sink) throws IOException {
+                for (final Row row : LoanListReportSpecification.this.buildRows(reportRequest, this.customers)) {
+                    sink.write(row);
+                }
+                this.customers.clear();
+            }
+        }, rowSink);
+    }
+
     @Override
     public void validate(ReportRequest reportRequest) throws IllegalArgumentException {
         final ArrayList<String> unknownFields =  new ArrayList<>();
@@ -178,7 +222,7 @@ public class LoanListReportSpecification implements ReportSpecification {
     }
 
     private List<Row> buildRows(ReportRequest reportRequest, List<?> customerResultList) {
-        final ArrayList<Row> rows = new ArrayList<>();
+        final LinkedHashMap<String, Row> customerRows = new LinkedHashMap<>();
 
         customerResultList.forEach(result -> {
             final Row row = new Row();
@@ -186,84 +230,78 @@ public class LoanListReportSpecification implements ReportSpecification {
 
             final String customerIdentifier;
 
+            // the first column is the customer identifier used as ordering key
             if (result instanceof Object[]) {
                 final Object[] resultValues;
                 resultValues = (Object[]) result;
 
                 customerIdentifier = resultValues[0].toString();
 
-                for (final Object resultValue : resultValues) {
-                    final Value value = new Value();
-                    if (resultValue != null) {
-                        value.setValues(new String[]{resultValue.toString()});
-                    } else {
-                        value.setValues(new String[]{});
-                    }
-
-                    row.getValues().add(value);
+                for (int i = 1; i < resultValues.length; i++) {
+                    row.getValues().add(this.toValue(resultValues[i]));
                 }
             } else {
                 customerIdentifier = result.toString();
-
-                final Value value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
             }
 
-            final Query accountQuery = this.entityManager.createNativeQuery(this.buildLoanAccountQuery(reportRequest, customerIdentifier));
-            final List<?> accountResultList = accountQuery.getResultList();
-
-            accountResultList.forEach(accountResult -> {
-
-                final String caseIdentifier;
+            customerRows.put(customerIdentifier, row);
+        });
 
-                if (accountResult instanceof Object[]) {
-                    final Object[] accountResultValues;
-                    accountResultValues = (Object[]) accountResult;
+        if (customerRows.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-                    caseIdentifier = accountResultValues[0].toString();
+        final BindParameters accountBindParameters = new BindParameters();
+        final List<?> accountResultList = accountBindParameters.createNativeQuery(
+                this.entityManager,
+                this.buildLoanAccountQuery(reportRequest, customerRows.keySet(), accountBindParameters)
+        ).getResultList();
+
+        final LinkedHashSet<Object> caseIdentifiers = new LinkedHashSet<>();
+        accountResultList.forEach(accountResult -> caseIdentifiers.add(((Object[]) accountResult)[1]));
+
+        final HashMap<String, Object[]> cases = new HashMap<>();
+        if (!caseIdentifiers.isEmpty()) {
+            final BindParameters caseBindParameters = new BindParameters();
+            final List<?> caseResultList = caseBindParameters.createNativeQuery(
+                    this.entityManager,
+                    this.buildCaseQuery(reportRequest, caseIdentifiers, caseBindParameters)
+            ).getResultList();
+            caseResultList.forEach(caseResult -> {
+                final Object[] caseResultValues = (Object[]) caseResult;
+                cases.put(caseResultValues[0].toString(), caseResultValues);
+            });
+        }
 
-                    for (final Object loan: accountResultValues) {
-                        final Value value = new Value();
-                        if (loan != null) {
-                            value.setValues(new String[]{loan.toString()});
-                        } else {
-                            value.setValues(new String[]{});
-                        }
+        // the first two columns of a loan account are the customer and the case keys used to stitch the results,
+        // the first column of a case is the case key
+        accountResultList.forEach(accountResult -> {
+            final Object[] accountResultValues = (Object[]) accountResult;
+            final Row row = customerRows.get(accountResultValues[0].toString());
 
-                        row.getValues().add(value);
-                    }
-                }else {
-                    caseIdentifier = accountResult.toString();
+            for (int i = 2; i < accountResultValues.length; i++) {
+                row.getValues().add(this.toValue(accountResultValues[i]));
+            }
 
-                    final Value value = new Value();
-                    value.setValues(new String[]{accountResult.toString()});
-                    row.getValues().add(value);
+            final Object[] caseResultValues = cases.get(accountResultValues[1].toString());
+            if (caseResultValues != null) {
+                for (int i = 1; i < caseResultValues.length; i++) {
+                    row.getValues().add(this.toValue(caseResultValues[i]));
                 }
-
-                final Query caseQuery = this.entityManager.createNativeQuery(this.buildCaseQuery(reportRequest, caseIdentifier));
-
-                final List<?> caseResultList = caseQuery.getResultList();
-
-                caseResultList.forEach(loanCase -> {
-                    final Object[] loanCaseResultValues = (Object[]) loanCase;
-
-                    for (final Object loan : loanCaseResultValues) {
-                        final Value value = new Value();
-                        if (loan != null) {
-                            value.setValues(new String[]{loan.toString()});
-                        } else {
-                            value.setValues(new String[]{});
-                        }
-                        row.getValues().add(value);
-                    }
-                });
-            });
-
-            rows.add(row);
+            }
         });
 
-        return rows;
+        return new ArrayList<>(customerRows.values());
+    }
+
+    private Value toValue(final Object resultValue) {
+        final Value value = new Value();
+        if (resultValue != null) {
+            value.setValues(new String[]{resultValue.toString()});
+        } else {
+            value.setValues(new String[]{});
+        }
+        return value;
     }
 
     private List<DisplayableField> buildDisplayableFields() {
@@ -290,11 +328,20 @@ public class LoanListReportSpecification implements ReportSpecification {
         return Arrays.asList();
     }
 
-    private String buildCustomerQuery(final ReportRequest reportRequest, int pageIndex, int size){
+    private QueryTemplate compileCustomerQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                               final BindParameters bindParameters) {
+        return this.queryTemplateCache.get(reportRequest, bindParameters,
+                () -> new QueryTemplate(this.buildCustomerQuery(reportRequest, pagination, bindParameters))
+        );
+    }
+
+    private String buildCustomerQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                      final BindParameters bindParameters){
         final StringBuilder query = new StringBuilder("SELECT ");
 
         final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
         final ArrayList<String> columns = new ArrayList<>();
+        columns.add("cst.identifier");
         displayableFields.forEach(displayableField -> {
             final String column;
             column = this.customerColumnMapping.get(displayableField.getName());
@@ -307,38 +354,39 @@ public class LoanListReportSpecification implements ReportSpecification {
                 .append(" FROM ")
                 .append("maat_customers cst ");
 
-        final List<QueryParameter> queryParameters = reportRequest.getQueryParameters();
-        if (!queryParameters.isEmpty()) {
-            final ArrayList<String> criteria = new ArrayList<>();
-            queryParameters.forEach(queryParameter -> {
-                if((queryParameter.getValue() != null) && !queryParameter.getValue().isEmpty()) {
-                    criteria.add(
-                            CriteriaBuilder.buildCriteria(this.customerColumnMapping.get(queryParameter.getName()), queryParameter)
-                    );
-                }
-            });
-
-            if (!criteria.isEmpty()) {
-                query.append(" WHERE ");
-                query.append(criteria.stream().collect(Collectors.joining(" AND ")));
+        final ArrayList<String> criteria = new ArrayList<>();
+        reportRequest.getQueryParameters().forEach(queryParameter -> {
+            if((queryParameter.getValue() != null) && !queryParameter.getValue().isEmpty()) {
+                criteria.add(
+                        CriteriaBuilder.buildCriteria(
+                                this.customerColumnMapping.get(queryParameter.getName()), queryParameter, bindParameters
+                        )
+                );
             }
+        });
 
+        if (pagination.getPageCursor() != null) {
+            criteria.add(pagination.getPageCursor().buildCriteria(bindParameters, "cst.identifier"));
         }
-        query.append(" ORDER BY cst.identifier");
 
-        query.append(" LIMIT ");
-        query.append(size);
-        if (pageIndex > 0) {
-            query.append(" OFFSET ");
-            query.append(size * pageIndex);
+        if (!criteria.isEmpty()) {
+            query.append(" WHERE ");
+            query.append(criteria.stream().collect(Collectors.joining(" AND ")));
         }
 
+        query.append(" ORDER BY cst.identifier");
+
+        pagination.appendLimit(query, bindParameters);
+
         return query.toString();
     }
 
-    private String buildLoanAccountQuery(final ReportRequest reportRequest, final String customerIdentifier){
+    private String buildLoanAccountQuery(final ReportRequest reportRequest, final Collection<String> customerIdentifiers,
+                                         final BindParameters bindParameters){
         final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
         final ArrayList<String> columns = new ArrayList<>();
+        columns.add("il_cases.customer_identifier");
+        columns.add("il_cases.case_id");
         displayableFields.forEach(displayableField -> {
             final String column = this.loanColumnMapping.get(displayableField.getName());
             if (column != null) {
@@ -348,14 +396,15 @@ public class LoanListReportSpecification implements ReportSpecification {
 
         return "SELECT " + columns.stream().collect(Collectors.joining(", ")) + " " +
                 "FROM bastet_il_cases il_cases " +
-                "LEFT JOIN maat_customers cst on il_cases.customer_identifier = cst.identifier " +
-                "WHERE cst.identifier ='" + customerIdentifier + "' " +
-                "ORDER BY il_cases.case_id";
+                "WHERE il_cases.customer_identifier = ANY(" + bindParameters.bindArray(customerIdentifiers, "text") + ") " +
+                "ORDER BY il_cases.customer_identifier, il_cases.case_id";
     }
 
-    private String buildCaseQuery(final ReportRequest reportRequest, final String caseIdentifier){
+    private String buildCaseQuery(final ReportRequest reportRequest, final Collection<Object> caseIdentifiers,
+                                  final BindParameters bindParameters){
         final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
         final ArrayList<String> columns = new ArrayList<>();
+        columns.add("cases.id");
         displayableFields.forEach(displayableField -> {
             final String column = this.caseColumnMapping.get(displayableField.getName());
             if (column != null) {
@@ -365,7 +414,6 @@ public class LoanListReportSpecification implements ReportSpecification {
 
         return "SELECT " + columns.stream().collect(Collectors.joining(", ")) + " " +
                 "FROM bastet_cases cases " +
-                "LEFT JOIN bastet_il_cases il_cases on cases.id = il_cases.case_id " +
-                "WHERE il_cases.case_id ='" + caseIdentifier + "' ";
+                "WHERE cases.id = ANY(" + bindParameters.bindArray(caseIdentifiers, "bigint") + ") ";
     }
 }
@@ -28,10 +28,19 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.CriteriaBuilder;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplate;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplateCache;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.apache.fineract.cn.reporting.service.spi.ResultStreamer;
+import org.apache.fineract.cn.reporting.service.spi.RowSink;
+import java.io.IOException;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -46,7 +55,7 @@ import org.apache.fineract.cn.lang.DateConverter;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-@Report(category = "Organization", identifier = "Office")
+@Report(category = "Organization", identifier = "Office", timeToLive = 300)
 public class OfficeListReportSpecification implements ReportSpecification {
 
     private static final String OFFICE = "Identifier";
@@ -63,9 +72,11 @@ public class OfficeListReportSpecification implements ReportSpecification {
     private final Logger logger;
 
     private final EntityManager entityManager;
+    private final ReportDefinition reportDefinition;
     private final HashMap<String, String> officeColumnMapping = new HashMap<>();
     private final HashMap<String, String> addressColumnMapping = new HashMap<>();
     private final HashMap<String, String> allColumnMapping = new HashMap<>();
+    private final QueryTemplateCache queryTemplateCache = new QueryTemplateCache();
 
     @Autowired
     public OfficeListReportSpecification(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
@@ -74,21 +85,21 @@ public class OfficeListReportSpecification implements ReportSpecification {
         this.logger = logger;
         this.entityManager = entityManager;
         this.initializeMapping();
+        this.reportDefinition = ReportDefinitionBuilder.create("Office", "Office Listing")
+                .description("List of all Offices.")
+                .queryParameters(this.buildQueryParameters())
+                .displayableFields(this.buildDisplayableFields())
+                .build();
     }
 
     @Override
     public ReportDefinition getReportDefinition() {
-        final ReportDefinition reportDefinition = new ReportDefinition();
-        reportDefinition.setIdentifier("Office");
-        reportDefinition.setName("Office Listing");
-        reportDefinition.setDescription("List of all Offices.");
-        reportDefinition.setQueryParameters(this.buildQueryParameters());
-        reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-        return reportDefinition;
+        return this.reportDefinition;
     }
 
     @Override
-    public ReportPage generateReport(final ReportRequest reportRequest, final int pageIndex, final int size) {
+    public ReportPage generateReport(final ReportRequest reportRequest, final int pageIndex, final int size,
+                                     final PageCursor pageCursor) {
         final ReportDefinition reportDefinition = this.getReportDefinition();
         this.logger.info("Generating report {0}.", reportDefinition.getIdentifier());
 
@@ -97,20 +108,40 @@ public class OfficeListReportSpecification implements ReportSpecification {
         reportPage.setDescription(reportDefinition.getDescription());
         reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-        final Query customerQuery = this.entityManager.createNativeQuery(this.buildOfficeQuery(reportRequest, pageIndex, size));
-        final List<?> customerResultList =  customerQuery.getResultList();
-        reportPage.setRows(this.buildRows(reportRequest, customerResultList));
-
-        reportPage.setHasMore(
-                !this.entityManager.createNativeQuery(this.buildOfficeQuery(reportRequest, pageIndex + 1, size))
-                        .getResultList().isEmpty()
+        final Pagination pagination = Pagination.of(pageIndex, size, pageCursor);
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        final QueryTemplate officeQueryTemplate = this.queryTemplateCache.get(reportRequest, bindParameters,
+                () -> new QueryTemplate(this.buildOfficeQuery(reportRequest, pagination, bindParameters))
+        );
+        final Query officeQuery = bindParameters.createNativeQuery(this.entityManager, officeQueryTemplate);
+        final List<?> officeResultList = pagination.apply(
+                reportPage,
+                officeQuery.getResultList(),
+                result -> PageCursor.of(((Object[]) result)[0], ((Object[]) result)[1])
         );
+        reportPage.setRows(this.buildRows(officeResultList));
 
         reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
         reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
         return reportPage;
     }
 
+    @Override
+    public void streamReport(final ReportRequest reportRequest, final RowSink rowSink) throws IOException {
+        this.logger.info("Streaming report {0}.", this.getReportDefinition().getIdentifier());
+        final Pagination pagination = Pagination.unpaged();
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        ResultStreamer.stream(
+                this.entityManager,
+                this.queryTemplateCache.get(reportRequest, bindParameters,
+                        () -> new QueryTemplate(this.buildOfficeQuery(reportRequest, pagination, bindParameters))
+                ),
+                bindParameters,
+                this::buildRow,
+                rowSink
+        );
+    }
+
     @Override
     public void validate(final ReportRequest reportRequest) throws IllegalArgumentException {
         final ArrayList<String> unknownFields =  new ArrayList<>();
@@ -139,9 +170,9 @@ public class OfficeListReportSpecification implements ReportSpecification {
         this.officeColumnMapping.put(DESCRIPTION, "ho.description");
         this.officeColumnMapping.put(CREATED_BY, "ho.created_by");
 
-        this.addressColumnMapping.put(ADDRESS, "CONCAT(IFNULL(ha.street, ', '), " +
-                "IFNULL(ha.postal_code, ', '), IFNULL(ha.city, ', ')," +
-                " IFNULL(ha.region, ', '), IFNULL(ha.country, ','))");
+        this.addressColumnMapping.put(ADDRESS, "CONCAT(COALESCE(ha.street, ', '), " +
+                "COALESCE(ha.postal_code, ', '), COALESCE(ha.city, ', ')," +
+                " COALESCE(ha.region, ', '), COALESCE(ha.country, ','))");
 
         this.allColumnMapping.putAll(officeColumnMapping);
         this.allColumnMapping.putAll(addressColumnMapping);
@@ -175,58 +206,42 @@ public class OfficeListReportSpecification implements ReportSpecification {
         );
     }
 
-    private List<Row> buildRows(final ReportRequest reportRequest, final List<?> officeResultList) {
-        final ArrayList<Row> rows = new ArrayList<>();
-
-        officeResultList.forEach(result -> {
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
-
-            final String officeIdentifier;
-
-            if (result instanceof Object[]) {
-                final Object[] resultValues = (Object[]) result;
+    private List<Row> buildRows(final List<?> officeResultList) {
+        return officeResultList
+                .stream()
+                .map(this::buildRow)
+                .collect(Collectors.toList());
+    }
 
-                officeIdentifier = resultValues[0].toString();
+    private Row buildRow(final Object result) {
+        final Row row = new Row();
+        row.setValues(new ArrayList<>());
 
-                for (final Object resultValue : resultValues) {
-                    final Value value = new Value();
-                    if (resultValue != null) {
-                        value.setValues(new String[]{resultValue.toString()});
-                    } else {
-                        value.setValues(new String[]{});
-                    }
+        final Object[] resultValues = (Object[]) result;
 
-                    row.getValues().add(value);
-                }
+        // the first two columns are the office name and identifier used as ordering key
+        for (int i = 2; i < resultValues.length; i++) {
+            final Value value = new Value();
+            if (resultValues[i] != null) {
+                value.setValues(new String[]{resultValues[i].toString()});
             } else {
-                officeIdentifier = result.toString();
-
-                final Value value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
-            }
-
-            final String addressQueryString = this.buildAddressQuery(reportRequest, officeIdentifier);
-            if (addressQueryString != null) {
-                final Query addressQuery = this.entityManager.createNativeQuery(addressQueryString);
-                final List<?> resultList = addressQuery.getResultList();
-                final Value addressValue = new Value();
-                addressValue.setValues(new String[]{resultList.get(0).toString()});
-                row.getValues().add(addressValue);
+                value.setValues(new String[]{});
             }
 
-            rows.add(row);
-        });
+            row.getValues().add(value);
+        }
 
-        return rows;
+        return row;
     }
 
-    private String buildOfficeQuery(final ReportRequest reportRequest, int pageIndex, int size) {
+    private String buildOfficeQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                    final BindParameters bindParameters) {
         final StringBuilder query = new StringBuilder("SELECT ");
 
         final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
         final ArrayList<String> columns = new ArrayList<>();
+        columns.add("ho.a_name");
+        columns.add("ho.id");
         displayableFields.forEach(displayableField -> {
             final String column = this.officeColumnMapping.get(displayableField.getName());
             if (column != null) {
@@ -234,58 +249,49 @@ public class OfficeListReportSpecification implements ReportSpecification {
             }
         });
 
+        // address columns are appended last and only then is horus_addresses joined at all
+        final ArrayList<String> addressColumns = new ArrayList<>();
+        displayableFields.forEach(displayableField -> {
+            final String column = this.addressColumnMapping.get(displayableField.getName());
+            if (column != null) {
+                addressColumns.add(column);
+            }
+        });
+        columns.addAll(addressColumns);
+
         query.append(columns.stream().collect(Collectors.joining(", ")))
                 .append(" FROM ")
                 .append("horus_offices ho ");
 
-        final List<QueryParameter> queryParameters = reportRequest.getQueryParameters();
-        if (!queryParameters.isEmpty()) {
-            final ArrayList<String> criteria = new ArrayList<>();
-            queryParameters.forEach(queryParameter -> {
-                if(queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
-                    criteria.add(
-                            CriteriaBuilder.buildCriteria(this.officeColumnMapping.get(queryParameter.getName()), queryParameter)
-                    );
-                }
-            });
-
-            if (!criteria.isEmpty()) {
-                query.append(" WHERE ");
-                query.append(criteria.stream().collect(Collectors.joining(" AND ")));
+        if (!addressColumns.isEmpty()) {
+            query.append("LEFT JOIN horus_addresses ha on ha.office_id = ho.id ");
+        }
+
+        final ArrayList<String> criteria = new ArrayList<>();
+        reportRequest.getQueryParameters().forEach(queryParameter -> {
+            if(queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
+                criteria.add(
+                        CriteriaBuilder.buildCriteria(
+                                this.officeColumnMapping.get(queryParameter.getName()), queryParameter, bindParameters
+                        )
+                );
             }
+        });
 
+        if (pagination.getPageCursor() != null) {
+            criteria.add(pagination.getPageCursor().buildCriteria(bindParameters, "ho.a_name", "ho.id"));
         }
-        query.append(" ORDER BY ho.a_name");
 
-        query.append(" LIMIT ");
-        query.append(size);
-        if (pageIndex > 0) {
-            query.append(" OFFSET ");
-            query.append(size * pageIndex);
+        if (!criteria.isEmpty()) {
+            query.append(" WHERE ");
+            query.append(criteria.stream().collect(Collectors.joining(" AND ")));
         }
 
-        return query.toString();
-    }
-
-    private String buildAddressQuery(final ReportRequest reportRequest, final String officeIdentifier) {
+        // office names are not unique, the identifier keeps the order stable for seeking
+        query.append(" ORDER BY ho.a_name, ho.id");
 
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
-        final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.addressColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
-            }
-        });
+        pagination.appendLimit(query, bindParameters);
 
-        if (!columns.isEmpty()) {
-            return "SELECT " + columns.stream().collect(Collectors.joining(", ")) + " " +
-                    "FROM horus_addresses ha " +
-                    "LEFT JOIN horus_offices ho on ha.office_id = ho.id " +
-                    "WHERE ho.id ='" + officeIdentifier + "' ";
-        }
-        return null;
+        return query.toString();
     }
 }
-
-
@@ -28,11 +28,20 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.CriteriaBuilder;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
 import org.apache.fineract.cn.reporting.service.spi.QueryParameterBuilder;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplate;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplateCache;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import org.apache.fineract.cn.reporting.service.spi.ResultStreamer;
+import org.apache.fineract.cn.reporting.service.spi.RowSink;
+import java.io.IOException;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -48,7 +57,7 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-@Report(category = "Teller" , identifier = "Listing")
+@Report(category = "Teller" , identifier = "Listing", timeToLive = 300)
 public class TellerListReportSpecification implements ReportSpecification {
 
     private static final String TELLER = "Teller";
@@ -61,9 +70,11 @@ public class TellerListReportSpecification implements ReportSpecification {
     private final Logger logger;
 
     private final EntityManager entityManager;
+    private final ReportDefinition reportDefinition;
 
     private final HashMap<String, String> tellerColumnMapping = new HashMap<>();
     private final HashMap<String, String> allColumnMapping = new HashMap<>();
+    private final QueryTemplateCache queryTemplateCache = new QueryTemplateCache();
 
 
     @Autowired
@@ -73,21 +84,20 @@ public class TellerListReportSpecification implements ReportSpecification {
         this.logger = logger;
         this.entityManager = entityManager;
         this.initializeMapping();
+        this.reportDefinition = ReportDefinitionBuilder.create("Listing", "Teller Listing")
+                .description("List of all Tellers.")
+                .queryParameters(this.buildQueryParameters())
+                .displayableFields(this.buildDisplayableFields())
+                .build();
     }
 
     @Override
     public ReportDefinition getReportDefinition() {
-        final ReportDefinition reportDefinition = new ReportDefinition();
-        reportDefinition.setIdentifier("Listing");
-        reportDefinition.setName("Teller Listing");
-        reportDefinition.setDescription("List of all Tellers.");
-        reportDefinition.setQueryParameters(this.buildQueryParameters());
-        reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-        return reportDefinition;
+        return this.reportDefinition;
     }
 
     @Override
-    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size) {
+    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size, PageCursor pageCursor) {
         final ReportDefinition reportDefinition = this.getReportDefinition();
         this.logger.info("Generating report {0}.", reportDefinition.getIdentifier());
 
@@ -96,20 +106,40 @@ public class TellerListReportSpecification implements ReportSpecification {
         reportPage.setDescription(reportDefinition.getDescription());
         reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-        final Query tellerQuery = this.entityManager.createNativeQuery(this.buildTellerQuery(reportRequest, pageIndex, size));
-        final List<?> tellerResultList =  tellerQuery.getResultList();
-        reportPage.setRows(this.buildRows(tellerResultList));
-
-        reportPage.setHasMore(
-                !this.entityManager.createNativeQuery(this.buildTellerQuery(reportRequest, pageIndex + 1, size))
-                        .getResultList().isEmpty()
+        final Pagination pagination = Pagination.of(pageIndex, size, pageCursor);
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        final QueryTemplate tellerQueryTemplate = this.queryTemplateCache.get(reportRequest, bindParameters,
+                () -> new QueryTemplate(this.buildTellerQuery(reportRequest, pagination, bindParameters))
+        );
+        final Query tellerQuery = bindParameters.createNativeQuery(this.entityManager, tellerQueryTemplate);
+        final List<?> tellerResultList = pagination.apply(
+                reportPage,
+                tellerQuery.getResultList(),
+                result -> PageCursor.of(result instanceof Object[] ? ((Object[]) result)[0] : result)
         );
+        reportPage.setRows(this.buildRows(tellerResultList));
 
         reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
         reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
         return reportPage;
     }
 
+    @Override
+    public void streamReport(final ReportRequest reportRequest, final RowSink rowSink) throws IOException {
+        this.logger.info("Streaming report {0}.", this.getReportDefinition().getIdentifier());
+        final Pagination pagination = Pagination.unpaged();
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        ResultStreamer.stream(
+                this.entityManager,
+                this.queryTemplateCache.get(reportRequest, bindParameters,
+                        () -> new QueryTemplate(this.buildTellerQuery(reportRequest, pagination, bindParameters))
+                ),
+                bindParameters,
+                this::buildRow,
+                rowSink
+        );
+    }
+
     @Override
     public void validate(final ReportRequest reportRequest) throws IllegalArgumentException {
         final ArrayList<String> unknownFields =  new ArrayList<>();
@@ -155,35 +185,35 @@ public class TellerListReportSpecification implements ReportSpecification {
     }
 
     private List<Row> buildRows(final List<?> tellerResultList) {
-        final ArrayList<Row> rows = new ArrayList<>();
-        tellerResultList.forEach(result -> {
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
-            
-            if (result instanceof Object[]) {
-                final Object[] resultValues = (Object[]) result;
-
-                for(final Object resultVal : resultValues) {
-                    final Value val;
-                    val = new Value();
-
-                    if (resultVal != null) {
-                        val.setValues(new String[]{resultVal.toString()});
-                    } else {
-                        val.setValues(new String[]{});
-                    }
-
-                    row.getValues().add(val);
+        return tellerResultList
+                .stream()
+                .map(this::buildRow)
+                .collect(Collectors.toList());
+    }
+
+    private Row buildRow(final Object result) {
+        final Row row = new Row();
+        row.setValues(new ArrayList<>());
+
+        // the first column is the teller identifier used as ordering key
+        if (result instanceof Object[]) {
+            final Object[] resultValues = (Object[]) result;
+
+            for (int i = 1; i < resultValues.length; i++) {
+                final Value val;
+                val = new Value();
+
+                if (resultValues[i] != null) {
+                    val.setValues(new String[]{resultValues[i].toString()});
+                } else {
+                    val.setValues(new String[]{});
                 }
-            } else {
-                final Value value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
+
+                row.getValues().add(val);
             }
-            rows.add(row);
-        });
+        }
 
-        return rows;
+        return row;
     }
 
     private List<QueryParameter> buildQueryParameters() {
@@ -203,11 +233,12 @@ public class TellerListReportSpecification implements ReportSpecification {
         );
     }
 
-    private String buildTellerQuery(ReportRequest reportRequest, int pageIndex, int size) {
+    private String buildTellerQuery(ReportRequest reportRequest, Pagination pagination, BindParameters bindParameters) {
         final StringBuilder query = new StringBuilder("SELECT ");
 
         final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
         final ArrayList<String> columns = new ArrayList<>();
+        columns.add("tl.identifier");
         displayableFields.forEach(displayableField -> {
             final String column = this.tellerColumnMapping.get(displayableField.getName());
             if (column != null) {
@@ -219,32 +250,30 @@ public class TellerListReportSpecification implements ReportSpecification {
                 .append(" FROM ")
                 .append("tajet_teller tl ");
 
-        final List<QueryParameter> queryParameters = reportRequest.getQueryParameters();
-        if (!queryParameters.isEmpty()) {
-            final ArrayList<String> criteria = new ArrayList<>();
-            queryParameters.forEach(queryParameter -> {
-                if(queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
-                    criteria.add(
-                            CriteriaBuilder.buildCriteria(this.tellerColumnMapping.get(queryParameter.getName()), queryParameter)
-                    );
-                }
-            });
-
-            if (!criteria.isEmpty()) {
-                query.append(" WHERE ");
-                query.append(criteria.stream().collect(Collectors.joining(" AND ")));
+        final ArrayList<String> criteria = new ArrayList<>();
+        reportRequest.getQueryParameters().forEach(queryParameter -> {
+            if(queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
+                criteria.add(
+                        CriteriaBuilder.buildCriteria(
+                                this.tellerColumnMapping.get(queryParameter.getName()), queryParameter, bindParameters
+                        )
+                );
             }
+        });
 
+        if (pagination.getPageCursor() != null) {
+            criteria.add(pagination.getPageCursor().buildCriteria(bindParameters, "tl.identifier"));
         }
-        query.append(" ORDER BY tl.identifier");
 
-        query.append(" LIMIT ");
-        query.append(size);
-        if (pageIndex > 0) {
-            query.append(" OFFSET ");
-            query.append(size * pageIndex);
+        if (!criteria.isEmpty()) {
+            query.append(" WHERE ");
+            query.append(criteria.stream().collect(Collectors.joining(" AND ")));
         }
 
+        query.append(" ORDER BY tl.identifier");
+
+        pagination.appendLimit(query, bindParameters);
+
         return query.toString();
     }
 }
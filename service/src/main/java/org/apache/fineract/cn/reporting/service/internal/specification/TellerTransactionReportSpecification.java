@@ -28,16 +28,24 @@ import org.apache.fineract.cn.reporting.api.v1.domain.Row;
 import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.apache.fineract.cn.reporting.api.v1.domain.Value;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
+import org.apache.fineract.cn.reporting.service.spi.BindParameters;
 import org.apache.fineract.cn.reporting.service.spi.CriteriaBuilder;
 import org.apache.fineract.cn.reporting.service.spi.DisplayableFieldBuilder;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
+import org.apache.fineract.cn.reporting.service.spi.Pagination;
 import org.apache.fineract.cn.reporting.service.spi.QueryParameterBuilder;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplate;
+import org.apache.fineract.cn.reporting.service.spi.QueryTemplateCache;
 import org.apache.fineract.cn.reporting.service.spi.Report;
+import org.apache.fineract.cn.reporting.service.spi.ReportClass;
+import org.apache.fineract.cn.reporting.service.spi.ReportDefinitionBuilder;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.stream.Collectors;
 import javax.persistence.EntityManager;
@@ -48,7 +56,7 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
-@Report(category = "Teller", identifier = "Transactions")
+@Report(category = "Teller", identifier = "Transactions", timeToLive = 300, timeout = 30, reportClass = ReportClass.BULK)
 public class TellerTransactionReportSpecification implements ReportSpecification {
 
     private static final String TELLER_ID = "Teller Id";
@@ -61,37 +69,44 @@ public class TellerTransactionReportSpecification implements ReportSpecification
     private static final String CLERK = "Clerk";
     private static final String AMOUNT = "Amount";
     private static final String STATUS = "Status";
+    private static final String MORE_TRANSACTIONS = "More Transactions";
 
     private final Logger logger;
 
     private final EntityManager entityManager;
+    private final ReportDefinition reportDefinition;
     private final HashMap<String, String> tellerColumnMapping = new HashMap<>();
     private final HashMap<String, String> transactionColumnMapping = new HashMap<>();
     private final HashMap<String, String> allColumnMapping = new HashMap<>();
+    private final QueryTemplateCache queryTemplateCache = new QueryTemplateCache();
+
+    private final int transactionLimit;
 
     @Autowired
     public TellerTransactionReportSpecification(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
-                                                final EntityManager entityManager) {
+                                                final EntityManager entityManager,
+                                                @org.springframework.beans.factory.annotation.Value("${reporting.teller.transactionLimit:100}")
+                                                final int transactionLimit) {
         super();
         this.logger = logger;
         this.entityManager = entityManager;
+        this.transactionLimit = transactionLimit;
         this.initializeMapping();
+        this.reportDefinition = ReportDefinitionBuilder.create("Transactions", "Teller Transactions")
+                .description("List all teller-cashier transactions.")
+                .queryParameters(this.buildQueryParameters())
+                .displayableFields(this.buildDisplayableFields())
+                .build();
     }
 
     @Override
     public ReportDefinition getReportDefinition() {
-        final ReportDefinition reportDefinition = new ReportDefinition();
-        reportDefinition.setIdentifier("Transactions");
-        reportDefinition.setName("Teller Transactions");
-        reportDefinition.setDescription("List all teller-cashier transactions.");
-        reportDefinition.setQueryParameters(this.buildQueryParameters());
-        reportDefinition.setDisplayableFields(this.buildDisplayableFields());
-        return reportDefinition;
+        return this.reportDefinition;
     }
 
 
     @Override
-    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size) {
+    public ReportPage generateReport(ReportRequest reportRequest, int pageIndex, int size, PageCursor pageCursor) {
         final ReportDefinition reportDefinition = this.getReportDefinition();
         this.logger.info("Generating report {0}.", reportDefinition.getIdentifier());
 
@@ -100,14 +115,23 @@ public class TellerTransactionReportSpecification implements ReportSpecification
         reportPage.setDescription(reportDefinition.getDescription());
         reportPage.setHeader(this.createHeader(reportRequest.getDisplayableFields()));
 
-        final Query tellerQuery = this.entityManager.createNativeQuery(this.buildTellerQuery(reportRequest, pageIndex, size));
-        final List<?> tellerResultList = tellerQuery.getResultList();
-        reportPage.setRows(this.buildRows(reportRequest, tellerResultList));
-
-        reportPage.setHasMore(
-                !this.entityManager.createNativeQuery(this.buildTellerQuery(reportRequest, pageIndex + 1, size))
-                        .getResultList().isEmpty()
+        final Pagination pagination = Pagination.of(pageIndex, size, pageCursor);
+        final BindParameters bindParameters = BindParameters.of(reportRequest, pagination);
+        final QueryTemplate tellerTransactionQueryTemplate = this.queryTemplateCache.get(reportRequest, bindParameters,
+                () -> new QueryTemplate(
+                        this.buildTellerTransactionQuery(reportRequest, pagination, bindParameters),
+                        this.collectColumns(reportRequest, this.tellerColumnMapping).size(),
+                        this.collectColumns(reportRequest, this.transactionColumnMapping).size()
+                )
         );
+        final Query tellerTransactionQuery =
+                bindParameters.createNativeQuery(this.entityManager, tellerTransactionQueryTemplate);
+        final List<TellerTransactions> tellerTransactions = pagination.apply(
+                reportPage,
+                this.collectTellerTransactions(tellerTransactionQueryTemplate, tellerTransactionQuery.getResultList()),
+                transactions -> PageCursor.of(transactions.tellerIdentifier)
+        );
+        reportPage.setRows(this.buildRows(reportRequest, tellerTransactions));
 
         reportPage.setGeneratedBy(UserContextHolder.checkedGetUser());
         reportPage.setGeneratedOn(DateConverter.toIsoString(LocalDateTime.now(Clock.systemUTC())));
@@ -123,8 +147,10 @@ public class TellerTransactionReportSpecification implements ReportSpecification
             }
         });
 
+        // more transactions is derived from the rank of the transactions, it has no column to filter on
         reportRequest.getDisplayableFields().forEach(displayableField -> {
-            if (!this.allColumnMapping.keySet().contains(displayableField.getName())) {
+            if (!this.allColumnMapping.keySet().contains(displayableField.getName())
+                    && !MORE_TRANSACTIONS.equals(displayableField.getName())) {
                 unknownFields.add(displayableField.getName());
             }
         });
@@ -152,7 +178,6 @@ public class TellerTransactionReportSpecification implements ReportSpecification
 
         this.allColumnMapping.putAll(tellerColumnMapping);
         this.allColumnMapping.putAll(transactionColumnMapping);
-
     }
 
 
@@ -168,126 +193,79 @@ public class TellerTransactionReportSpecification implements ReportSpecification
     }
 
 
-    private List<Row> buildRows(final ReportRequest reportRequest, final List<?> tellerResultList) {
-        final ArrayList<Row> rows = new ArrayList<>();
+    private List<TellerTransactions> collectTellerTransactions(final QueryTemplate tellerTransactionQueryTemplate,
+                                                               final List<?> tellerTransactionResultList) {
+        final int tellerColumnCount = tellerTransactionQueryTemplate.getColumnCount(0);
+        final int transactionColumnCount = tellerTransactionQueryTemplate.getColumnCount(1);
 
-        tellerResultList.forEach(result -> {
-            final Row row = new Row();
-            row.setValues(new ArrayList<>());
+        final LinkedHashMap<String, TellerTransactions> tellerTransactions = new LinkedHashMap<>();
 
-            final String tellerIdentifier;
+        tellerTransactionResultList.forEach(result -> {
+            final Object[] resultValues = (Object[]) result;
 
-            if (result instanceof Object[]) {
-                final Object[] resultValues = (Object[]) result;
-
-                tellerIdentifier = resultValues[0].toString();
-
-                for (final Object resultValue : resultValues) {
+            final TellerTransactions transactions = tellerTransactions.computeIfAbsent(resultValues[0].toString(), key -> {
+                final TellerTransactions newTransactions = new TellerTransactions(resultValues[0], transactionColumnCount);
+                for (int i = 1; i <= tellerColumnCount; i++) {
                     final Value value = new Value();
-                    if (resultValue != null) {
-                        value.setValues(new String[]{resultValue.toString()});
+                    if (resultValues[i] != null) {
+                        value.setValues(new String[]{resultValues[i].toString()});
                     } else {
                         value.setValues(new String[]{});
                     }
 
-                    row.getValues().add(value);
+                    newTransactions.row.getValues().add(value);
                 }
-            } else {
-                tellerIdentifier = result.toString();
+                return newTransactions;
+            });
 
-                final Value value = new Value();
-                value.setValues(new String[]{result.toString()});
-                row.getValues().add(value);
+            // tellers without transactions come back with a single row without a rank
+            final Object rank = resultValues[resultValues.length - 1];
+            if (rank == null) {
+                return;
             }
 
-            final String transactionQueryString = this.buildTellerTransactionQuery(reportRequest, tellerIdentifier);
-
-            final Query transactionQuery = this.entityManager.createNativeQuery(transactionQueryString);
-            final List<?> resultList = transactionQuery.getResultList();
-
-            final ArrayList<String> transactionType = new ArrayList<>();
-            final ArrayList<String> transactionDate = new ArrayList<>();
-            final ArrayList<String> customer = new ArrayList<>();
-            final ArrayList<String> source = new ArrayList<>();
-            final ArrayList<String> target = new ArrayList<>();
-            final ArrayList<String> clerk = new ArrayList<>();
-            final ArrayList<String> amount = new ArrayList<>();
-            final ArrayList<String> status = new ArrayList<>();
-            resultList.forEach(transaction -> {
-                        final Object[] transactionValue = (Object[]) transaction;
-
-                        for (int i = 0; i < transactionValue.length; i++) {
-                            if (i == 0 && transactionValue[0] != null) {
-                                transactionType.add(transactionValue[0].toString());
-                            }
-
-                            if (i == 1 && transactionValue[1] != null) {
-                                transactionDate.add(transactionValue[1].toString());
-                            }
-
-                            if (i == 2 && transactionValue[2] != null) {
-                                customer.add(transactionValue[2].toString());
-                            }
-
-                            if (i == 3 && transactionValue[3] != null) {
-                                source.add(transactionValue[3].toString());
-                            }
-
-                            if (i == 4 && transactionValue[4] != null) {
-                                target.add(transactionValue[4].toString());
-                            }
-                            if (i == 5 && transactionValue[5] != null) {
-                                clerk.add(transactionValue[5].toString());
-                            }
-                            if (i == 6 && transactionValue[6] != null) {
-                                amount.add(transactionValue[6].toString());
-                            }
-                            if (i == 7 && transactionValue[7] != null) {
-                                status.add(transactionValue[7].toString());
-                            }
-                        }
-                    }
-            );
-
-            final Value transactionTypeValue = new Value();
-            transactionTypeValue.setValues(transactionType.toArray(new String[transactionType.size()]));
-            row.getValues().add(transactionTypeValue);
-
-            final Value transactionDateValue = new Value();
-            transactionDateValue.setValues(transactionDate.toArray(new String[transactionDate.size()]));
-            row.getValues().add(transactionDateValue);
-
-            final Value customerValue = new Value();
-            customerValue.setValues(customer.toArray(new String[customer.size()]));
-            row.getValues().add(customerValue);
+            // one transaction beyond the limit is fetched to tell whether the teller has more of them
+            if (((Number) rank).intValue() > this.transactionLimit) {
+                transactions.hasMore = true;
+                return;
+            }
 
-            final Value sourceValue = new Value();
-            sourceValue.setValues(source.toArray(new String[source.size()]));
-            row.getValues().add(sourceValue);
+            for (int i = 0; i < transactionColumnCount; i++) {
+                final Object transactionValue = resultValues[tellerColumnCount + 1 + i];
+                if (transactionValue != null) {
+                    transactions.transactionValues.get(i).add(transactionValue.toString());
+                }
+            }
+        });
 
-            final Value targetValue = new Value();
-            targetValue.setValues(target.toArray(new String[target.size()]));
-            row.getValues().add(targetValue);
+        return new ArrayList<>(tellerTransactions.values());
+    }
 
-            final Value clerkValue = new Value();
-            clerkValue.setValues(clerk.toArray(new String[clerk.size()]));
-            row.getValues().add(clerkValue);
+    private List<Row> buildRows(final ReportRequest reportRequest, final List<TellerTransactions> tellerTransactions) {
+        final boolean includeMoreTransactions = reportRequest.getDisplayableFields()
+                .stream()
+                .anyMatch(displayableField -> MORE_TRANSACTIONS.equals(displayableField.getName()));
 
-            final Value amountValue = new Value();
-            amountValue.setValues(amount.toArray(new String[amount.size()]));
-            row.getValues().add(amountValue);
+        final ArrayList<Row> rows = new ArrayList<>(tellerTransactions.size());
+        tellerTransactions.forEach(transactions -> {
+            transactions.transactionValues.forEach(values -> {
+                final Value value = new Value();
+                value.setValues(values.toArray(new String[values.size()]));
+                transactions.row.getValues().add(value);
+            });
 
-            final Value statusValue = new Value();
-            statusValue.setValues(status.toArray(new String[status.size()]));
-            row.getValues().add(statusValue);
+            if (includeMoreTransactions) {
+                final Value moreTransactionsValue = new Value();
+                moreTransactionsValue.setValues(new String[]{Boolean.toString(transactions.hasMore)});
+                transactions.row.getValues().add(moreTransactionsValue);
+            }
 
-            rows.add(row);
+            rows.add(transactions.row);
         });
 
         return rows;
     }
 
-
     private List<DisplayableField> buildDisplayableFields() {
         return Arrays.asList(
                 DisplayableFieldBuilder.create(TELLER_ID, Type.TEXT).mandatory().build(),
@@ -300,7 +278,8 @@ public class TellerTransactionReportSpecification implements ReportSpecification
                 DisplayableFieldBuilder.create(TARGET, Type.TEXT).mandatory().build(),
                 DisplayableFieldBuilder.create(CLERK, Type.TEXT).mandatory().build(),
                 DisplayableFieldBuilder.create(AMOUNT, Type.TEXT).mandatory().build(),
-                DisplayableFieldBuilder.create(STATUS, Type.TEXT).mandatory().build()
+                DisplayableFieldBuilder.create(STATUS, Type.TEXT).mandatory().build(),
+                DisplayableFieldBuilder.create(MORE_TRANSACTIONS, Type.TEXT).build()
         );
     }
 
@@ -311,53 +290,39 @@ public class TellerTransactionReportSpecification implements ReportSpecification
         );
     }
 
-    private String buildTellerQuery(ReportRequest reportRequest, int pageIndex, int size) {
-        final StringBuilder query = new StringBuilder("SELECT ");
-
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
-        final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.tellerColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
-            }
-        });
+    private String buildTellerQuery(final Pagination pagination, final BindParameters bindParameters) {
+        final StringBuilder query = new StringBuilder("SELECT teller.* FROM tajet_teller teller ");
 
-        query.append(columns.stream().collect(Collectors.joining(", ")))
-                .append(" FROM ")
-                .append("tajet_teller teller ");
+        if (pagination.getPageCursor() != null) {
+            query.append(" WHERE ");
+            query.append(pagination.getPageCursor().buildCriteria(bindParameters, "teller.id"));
+        }
 
         query.append(" ORDER BY teller.id");
-
-        query.append(" LIMIT ");
-        query.append(size);
-        if (pageIndex > 0) {
-            query.append(" OFFSET ");
-            query.append(size * pageIndex);
-        }
+        pagination.appendLimit(query, bindParameters);
 
         return query.toString();
     }
 
-    private String buildTellerTransactionQuery(final ReportRequest reportRequest, final String tellerIdentifier) {
-
-        final StringBuilder query = new StringBuilder("SELECT ");
-
-        final List<DisplayableField> displayableFields = reportRequest.getDisplayableFields();
+    private String buildTellerTransactionQuery(final ReportRequest reportRequest, final Pagination pagination,
+                                               final BindParameters bindParameters) {
         final ArrayList<String> columns = new ArrayList<>();
-        displayableFields.forEach(displayableField -> {
-            final String column = this.transactionColumnMapping.get(displayableField.getName());
-            if (column != null) {
-                columns.add(column);
-            }
-        });
-
-        query.append(columns.stream().collect(Collectors.joining(", ")))
-                .append(" FROM ")
-                .append("tajet_teller_transactions trx " +
-                        "LEFT JOIN tajet_teller teller on trx.teller_id = teller.id ");
-
-        query.append("WHERE teller.id ='" + tellerIdentifier + "'");
+        columns.add("teller.id");
+        columns.addAll(this.collectColumns(reportRequest, this.tellerColumnMapping));
+        columns.addAll(this.collectColumns(reportRequest, this.transactionColumnMapping));
+        columns.add("trx.trx_rank");
+
+        final StringBuilder query = new StringBuilder("WITH teller AS (")
+                .append(this.buildTellerQuery(pagination, bindParameters))
+                .append(") ");
+
+        query.append("SELECT ")
+                .append(columns.stream().collect(Collectors.joining(", ")))
+                .append(" FROM teller ")
+                .append("LEFT JOIN (")
+                .append("SELECT trx.*, ROW_NUMBER() OVER (PARTITION BY trx.teller_id ORDER BY trx.transaction_date DESC) AS trx_rank ")
+                .append("FROM tajet_teller_transactions trx ")
+                .append("WHERE trx.teller_id IN (SELECT id FROM teller)");
 
         final List<QueryParameter> queryParameters = reportRequest.getQueryParameters();
         if (!queryParameters.isEmpty()) {
@@ -365,7 +330,9 @@ public class TellerTransactionReportSpecification implements ReportSpecification
             queryParameters.forEach(queryParameter -> {
                 if (queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
                     criteria.add(
-                            CriteriaBuilder.buildCriteria(this.transactionColumnMapping.get(queryParameter.getName()), queryParameter)
+                            CriteriaBuilder.buildCriteria(
+                                    this.transactionColumnMapping.get(queryParameter.getName()), queryParameter, bindParameters
+                            )
                     );
                 }
             });
@@ -377,8 +344,40 @@ public class TellerTransactionReportSpecification implements ReportSpecification
 
         }
 
+        query.append(") trx on trx.teller_id = teller.id AND trx.trx_rank <= ")
+                .append(this.transactionLimit + 1)
+                .append(" ORDER BY teller.id, trx.trx_rank");
+
         return query.toString();
     }
 
+    private List<String> collectColumns(final ReportRequest reportRequest, final HashMap<String, String> columnMapping) {
+        final ArrayList<String> columns = new ArrayList<>();
+        reportRequest.getDisplayableFields().forEach(displayableField -> {
+            final String column = columnMapping.get(displayableField.getName());
+            if (column != null) {
+                columns.add(column);
+            }
+        });
+        return columns;
+    }
 
+    private static class TellerTransactions {
+
+        private final Object tellerIdentifier;
+        private final Row row;
+        private final List<ArrayList<String>> transactionValues;
+        private boolean hasMore;
+
+        private TellerTransactions(final Object tellerIdentifier, final int transactionColumnCount) {
+            super();
+            this.tellerIdentifier = tellerIdentifier;
+            this.row = new Row();
+            this.row.setValues(new ArrayList<>());
+            this.transactionValues = new ArrayList<>(transactionColumnCount);
+            for (int i = 0; i < transactionColumnCount; i++) {
+                this.transactionValues.add(new ArrayList<>());
+            }
+        }
+    }
 }
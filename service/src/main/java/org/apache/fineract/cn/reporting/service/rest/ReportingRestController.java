@@ -18,18 +18,46 @@
  */
 package org.apache.fineract.cn.reporting.service.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
 import org.apache.fineract.cn.reporting.api.v1.EventConstants;
 import org.apache.fineract.cn.reporting.api.v1.PermittableGroupIds;
-import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
+import org.apache.fineract.cn.reporting.api.v1.ReportingHeaders;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportJob;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportSchedule;
 import org.apache.fineract.cn.reporting.service.ServiceConstants;
 import org.apache.fineract.cn.reporting.service.internal.provider.ReportSpecificationProvider;
+import org.apache.fineract.cn.reporting.service.internal.service.AdmissionRejectedException;
+import org.apache.fineract.cn.reporting.service.internal.service.MigrationService;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportAdmission;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportCancelledException;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportExecution;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportJobService;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportPageCache;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportScheduleService;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportTimeoutException;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportWorkers;
+import org.apache.fineract.cn.reporting.service.internal.service.ReportingMetrics;
+import org.apache.fineract.cn.reporting.service.spi.PageCursor;
 import org.apache.fineract.cn.reporting.service.spi.ReportSpecification;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.fineract.cn.anubis.annotation.AcceptedTokenType;
 import org.apache.fineract.cn.anubis.annotation.Permittable;
 import org.apache.fineract.cn.lang.ApplicationName;
@@ -37,39 +65,79 @@ import org.apache.fineract.cn.lang.ServiceException;
 import org.apache.fineract.cn.lang.TenantContextHolder;
 import org.apache.fineract.cn.lang.config.TenantHeaderFilter;
 import org.slf4j.Logger;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 @SuppressWarnings("unused")
 @RestController
 @RequestMapping("/")
 public class ReportingRestController {
 
+  private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+  // reports time out on their own, the asynchronous request only catches a page that never got a worker
+  private static final long ASYNC_GRACE_MILLIS = 5000L;
+
   private final Logger logger;
   private final ReportSpecificationProvider reportSpecificationProvider;
   private final ApplicationName applicationName;
   private final JmsTemplate jmsTemplate;
+  private final MigrationService migrationService;
+  private final ReportPageCache reportPageCache;
+  private final ReportJobService reportJobService;
+  private final ReportScheduleService reportScheduleService;
+  private final ReportAdmission reportAdmission;
+  private final ReportExecution reportExecution;
+  private final ReportWorkers reportWorkers;
+  private final ReportingMetrics reportingMetrics;
+  private final PrometheusMeterRegistry prometheusMeterRegistry;
+  private final ObjectMapper objectMapper;
 
   @Autowired
   public ReportingRestController(@Qualifier(ServiceConstants.LOGGER_NAME) final Logger logger,
                                  final ReportSpecificationProvider reportSpecificationProvider,
                                  final ApplicationName applicationName,
-                                 final JmsTemplate jmsTemplate) {
+                                 final JmsTemplate jmsTemplate,
+                                 final MigrationService migrationService,
+                                 final ReportPageCache reportPageCache,
+                                 final ReportJobService reportJobService,
+                                 final ReportScheduleService reportScheduleService,
+                                 final ReportAdmission reportAdmission,
+                                 final ReportExecution reportExecution,
+                                 final ReportWorkers reportWorkers,
+                                 final ReportingMetrics reportingMetrics,
+                                 final PrometheusMeterRegistry prometheusMeterRegistry,
+                                 final ObjectMapper objectMapper) {
     super();
     this.logger = logger;
     this.reportSpecificationProvider = reportSpecificationProvider;
     this.applicationName = applicationName;
     this.jmsTemplate = jmsTemplate;
+    this.migrationService = migrationService;
+    this.reportPageCache = reportPageCache;
+    this.reportJobService = reportJobService;
+    this.reportScheduleService = reportScheduleService;
+    this.reportAdmission = reportAdmission;
+    this.reportExecution = reportExecution;
+    this.reportWorkers = reportWorkers;
+    this.reportingMetrics = reportingMetrics;
+    this.prometheusMeterRegistry = prometheusMeterRegistry;
+    this.objectMapper = objectMapper;
   }
 
   @Permittable(value = AcceptedTokenType.SYSTEM)
@@ -82,6 +150,8 @@ public class ReportingRestController {
   public
   @ResponseBody
   ResponseEntity<Void> initialize() {
+    this.migrationService.migrate();
+
     final Gson gson = new GsonBuilder().create();
     this.jmsTemplate.convertAndSend(
         gson.toJson(this.applicationName.getVersionString()),
@@ -110,8 +180,10 @@ public class ReportingRestController {
       consumes = MediaType.ALL_VALUE
   )
   public
-  ResponseEntity<List<String>> fetchCategories() {
-    return ResponseEntity.ok(this.reportSpecificationProvider.getAvailableCategories());
+  ResponseEntity<byte[]> fetchCategories() {
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON_UTF8)
+        .body(this.reportSpecificationProvider.getAvailableCategoriesAsJson());
   }
 
   @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
@@ -121,8 +193,10 @@ public class ReportingRestController {
       produces = MediaType.APPLICATION_JSON_VALUE,
       consumes = MediaType.ALL_VALUE)
   public
-  ResponseEntity<List<ReportDefinition>> fetchReportDefinitions(@PathVariable("category") final String category) {
-    return ResponseEntity.ok(this.reportSpecificationProvider.getAvailableReports(category));
+  ResponseEntity<byte[]> fetchReportDefinitions(@PathVariable("category") final String category) {
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON_UTF8)
+        .body(this.reportSpecificationProvider.getAvailableReportsAsJson(category));
   }
 
   @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
@@ -133,29 +207,259 @@ public class ReportingRestController {
       consumes = MediaType.APPLICATION_JSON_VALUE
   )
   public
-  ResponseEntity<ReportPage> generateReport(@PathVariable("category") final String category,
-                                           @PathVariable("identifier") final String identifier,
-                                           @RequestBody final ReportRequest reportRequest,
-                                           @RequestParam(value = "pageIndex", required = false) final Integer pageIndex,
-                                           @RequestParam(value = "size", required = false) final Integer size) {
+  DeferredResult<ResponseEntity<byte[]>> generateReport(@PathVariable("category") final String category,
+                                                        @PathVariable("identifier") final String identifier,
+                                                        @RequestBody final ReportRequest reportRequest,
+                                                        @RequestParam(value = "pageIndex", required = false) final Integer pageIndex,
+                                                        @RequestParam(value = "size", required = false) final Integer size,
+                                                        @RequestParam(value = "cursor", required = false) final String cursor,
+                                                        @RequestHeader(value = ReportingHeaders.REQUEST_ID, required = false) final String requestId,
+                                                        @RequestHeader(value = ReportingHeaders.DEADLINE, required = false) final Long deadline) {
+    final Long clientDeadlineNanos = clientDeadline(deadline);
 
     final Optional<ReportSpecification> optionalReportSpecification =
         this.reportSpecificationProvider.getReportSpecification(category, identifier);
     if (optionalReportSpecification.isPresent()) {
       final ReportSpecification reportSpecification = optionalReportSpecification.get();
+      final String tenant = TenantContextHolder.checkedGetIdentifier();
 
+      final PageCursor pageCursor;
       try {
-        reportSpecification.validate(reportRequest);
+        this.validate(tenant, category, identifier, reportSpecification, reportRequest);
+        pageCursor = PageCursor.decode(cursor, category, identifier);
       } catch (final IllegalArgumentException iaex) {
         throw ServiceException.badRequest(iaex.getMessage());
       }
 
-      return ResponseEntity.ok(reportSpecification.generateReport(reportRequest, pageIndex, size));
+      // requests without an identifier of their own get one, so they can be cancelled when the client goes away
+      final String runningId = requestId != null ? requestId : UUID.randomUUID().toString();
+      final long deadlineNanos = this.reportExecution.deadlineOf(reportSpecification, clientDeadlineNanos);
+      final DeferredResult<ResponseEntity<byte[]>> response = new DeferredResult<>(
+          TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()) + ASYNC_GRACE_MILLIS);
+      response.onTimeout(() -> {
+        this.cancelAbandoned(tenant, runningId);
+        response.setErrorResult(new ReportTimeoutException("Report did not finish in time."));
+      });
+      // completed without a result, the connection was closed before the page was ready
+      response.onCompletion(() -> {
+        if (!response.hasResult()) {
+          this.logger.debug("Client of report request {} went away.", runningId);
+          this.cancelAbandoned(tenant, runningId);
+        }
+      });
+
+      try {
+        this.reportWorkers.submit(() -> {
+          try {
+            response.setResult(this.generatePage(tenant, category, identifier, reportSpecification, reportRequest,
+                pageIndex, size, cursor, pageCursor, runningId, clientDeadlineNanos, deadlineNanos, response));
+          } catch (final RuntimeException ex) {
+            response.setErrorResult(ex);
+          }
+        });
+      } catch (final RejectedExecutionException rex) {
+        throw new AdmissionRejectedException("Too many reports pending.");
+      }
+      return response;
     } else {
       throw ServiceException.notFound("Report {0} not found.", identifier);
     }
   }
 
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/categories/{category}/reports/{identifier}/stream",
+      method = RequestMethod.POST,
+      produces = NDJSON_MEDIA_TYPE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  public
+  void streamReport(@PathVariable("category") final String category,
+                    @PathVariable("identifier") final String identifier,
+                    @RequestBody final ReportRequest reportRequest,
+                    @RequestHeader(value = ReportingHeaders.REQUEST_ID, required = false) final String requestId,
+                    @RequestHeader(value = ReportingHeaders.DEADLINE, required = false) final Long deadline,
+                    final HttpServletResponse response) throws IOException {
+    final Long clientDeadlineNanos = clientDeadline(deadline);
+
+    final ReportSpecification reportSpecification =
+        this.reportSpecificationProvider.getReportSpecification(category, identifier)
+            .orElseThrow(() -> ServiceException.notFound("Report {0} not found.", identifier));
+
+    try {
+      this.validate(TenantContextHolder.checkedGetIdentifier(), category, identifier, reportSpecification,
+          reportRequest);
+
+      response.setContentType(NDJSON_MEDIA_TYPE);
+      response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+      try (final ReportAdmission.Permit ignored =
+               this.reportAdmission.acquire(TenantContextHolder.checkedGetIdentifier(), category, identifier)) {
+        // rows are rendered like the page responses, the writer stays open for the next row
+        final ObjectWriter rowWriter =
+            this.objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        final Writer writer = response.getWriter();
+        this.reportExecution.execute(requestId, reportSpecification, clientDeadlineNanos, () -> {
+          try {
+            reportSpecification.streamReport(reportRequest, row -> {
+              rowWriter.writeValue(writer, row);
+              writer.write('\n');
+            });
+            writer.flush();
+            return null;
+          } catch (final IOException ioex) {
+            // mostly the client going away, leaving the transaction rolls back and closes the cursor
+            throw new UncheckedIOException(ioex);
+          }
+        });
+      }
+    } catch (final IllegalArgumentException iaex) {
+      throw ServiceException.badRequest(iaex.getMessage());
+    } catch (final UncheckedIOException uioex) {
+      this.logger.debug("Streaming report {} aborted.", identifier, uioex);
+      throw uioex.getCause();
+    }
+  }
+
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/categories/{category}/reports/{identifier}/jobs",
+      method = RequestMethod.POST,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  public
+  ResponseEntity<ReportJob> submitReportJob(@PathVariable("category") final String category,
+                                            @PathVariable("identifier") final String identifier,
+                                            @RequestBody final ReportRequest reportRequest,
+                                            @RequestParam(value = "size", required = false) final Integer size) {
+
+    final ReportSpecification reportSpecification =
+        this.reportSpecificationProvider.getReportSpecification(category, identifier)
+            .orElseThrow(() -> ServiceException.notFound("Report {0} not found.", identifier));
+
+    try {
+      this.validate(TenantContextHolder.checkedGetIdentifier(), category, identifier, reportSpecification,
+          reportRequest);
+      final ReportJob reportJob = this.reportJobService.submit(category, identifier, reportSpecification,
+          reportRequest, ReportJobService.checkedPageSize(size));
+      return ResponseEntity.accepted().body(reportJob);
+    } catch (final IllegalArgumentException iaex) {
+      throw ServiceException.badRequest(iaex.getMessage());
+    } catch (final RejectedExecutionException rex) {
+      throw new AdmissionRejectedException("Too many report jobs pending.");
+    }
+  }
+
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/jobs/{jobIdentifier}",
+      method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.ALL_VALUE
+  )
+  public
+  ResponseEntity<ReportJob> fetchReportJob(@PathVariable("jobIdentifier") final String jobIdentifier) {
+    return ResponseEntity.ok(
+        this.reportJobService.findJob(jobIdentifier)
+            .orElseThrow(() -> ServiceException.notFound("Report job {0} not found.", jobIdentifier))
+    );
+  }
+
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/jobs/{jobIdentifier}/pages/{pageIndex}",
+      method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.ALL_VALUE
+  )
+  public
+  ResponseEntity<ReportPage> fetchReportJobPage(@PathVariable("jobIdentifier") final String jobIdentifier,
+                                                @PathVariable("pageIndex") final Integer pageIndex) {
+    final ReportJob reportJob = this.reportJobService.findJob(jobIdentifier)
+        .orElseThrow(() -> ServiceException.notFound("Report job {0} not found.", jobIdentifier));
+
+    // pages become available while the job is still running, later ones are only missing until it is done
+    return ResponseEntity.ok(
+        this.reportJobService.findPage(jobIdentifier, pageIndex)
+            .orElseThrow(() -> reportJob.getState() == ReportJob.State.DONE
+                ? ServiceException.notFound("Page {0} of report job {1} not found.", pageIndex, jobIdentifier)
+                : ServiceException.conflict("Report job {0} is {1}.", jobIdentifier, reportJob.getState()))
+    );
+  }
+
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/requests/{requestId}",
+      method = RequestMethod.DELETE,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.ALL_VALUE
+  )
+  public
+  ResponseEntity<Void> cancelReportRequest(@PathVariable("requestId") final String requestId) {
+    if (!this.reportExecution.cancel(requestId)) {
+      throw ServiceException.notFound("Report request {0} not running.", requestId);
+    }
+    return ResponseEntity.accepted().build();
+  }
+
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/schedules",
+      method = RequestMethod.POST,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.APPLICATION_JSON_VALUE
+  )
+  public
+  ResponseEntity<Void> createReportSchedule(@RequestBody final ReportSchedule reportSchedule) {
+    final ReportSpecification reportSpecification =
+        this.reportSpecificationProvider
+            .getReportSpecification(reportSchedule.getCategory(), reportSchedule.getReportIdentifier())
+            .orElseThrow(() -> ServiceException.notFound("Report {0} not found.", reportSchedule.getReportIdentifier()));
+
+    if (this.reportScheduleService.exists(reportSchedule.getIdentifier())) {
+      throw ServiceException.conflict("Report schedule {0} already exists.", reportSchedule.getIdentifier());
+    }
+
+    try {
+      if (reportSchedule.getReportRequest() == null) {
+        throw new IllegalArgumentException("Report request missing.");
+      }
+      reportSpecification.validate(reportSchedule.getReportRequest());
+      this.reportScheduleService.create(reportSchedule);
+    } catch (final IllegalArgumentException iaex) {
+      throw ServiceException.badRequest(iaex.getMessage());
+    }
+    return ResponseEntity.accepted().build();
+  }
+
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/schedules",
+      method = RequestMethod.GET,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.ALL_VALUE
+  )
+  public
+  ResponseEntity<List<ReportSchedule>> fetchReportSchedules() {
+    return ResponseEntity.ok(this.reportScheduleService.findAll());
+  }
+
+  @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
+  @RequestMapping(
+      value = "/schedules/{identifier}",
+      method = RequestMethod.DELETE,
+      produces = MediaType.APPLICATION_JSON_VALUE,
+      consumes = MediaType.ALL_VALUE
+  )
+  public
+  ResponseEntity<Void> deleteReportSchedule(@PathVariable("identifier") final String identifier) {
+    if (!this.reportScheduleService.delete(identifier)) {
+      throw ServiceException.notFound("Report schedule {0} not found.", identifier);
+    }
+    return ResponseEntity.accepted().build();
+  }
+
   @Permittable(value = AcceptedTokenType.TENANT, groupId = PermittableGroupIds.REPORT_MANAGEMENT)
   @RequestMapping(
       value = "categories/{category}/definitions/{identifier}",
@@ -163,12 +467,134 @@ public class ReportingRestController {
       produces = MediaType.APPLICATION_JSON_VALUE,
       consumes = MediaType.ALL_VALUE)
   public
-  ResponseEntity<ReportDefinition> findReportDefinition(
+  ResponseEntity<byte[]> findReportDefinition(
       @PathVariable("category") final String category,
       @PathVariable("identifier") final String identifier) {
-    return ResponseEntity.ok(
-        this.reportSpecificationProvider.findReportDefinition(category, identifier)
-            .orElseThrow(() -> ServiceException.notFound("Report definition {0} not found.", identifier))
-    );
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON_UTF8)
+        .body(
+            this.reportSpecificationProvider.findReportDefinitionAsJson(category, identifier)
+                .orElseThrow(() -> ServiceException.notFound("Report definition {0} not found.", identifier))
+        );
+  }
+
+  @Permittable(value = AcceptedTokenType.SYSTEM)
+  @RequestMapping(
+      value = "/metrics",
+      method = RequestMethod.GET,
+      produces = TextFormat.CONTENT_TYPE_004,
+      consumes = MediaType.ALL_VALUE
+  )
+  public
+  ResponseEntity<String> scrapeMetrics() {
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(TextFormat.CONTENT_TYPE_004))
+        .body(this.prometheusMeterRegistry.scrape());
+  }
+
+  @ExceptionHandler(AdmissionRejectedException.class)
+  public
+  ResponseEntity<String> rejectAdmission(final AdmissionRejectedException arex) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .contentType(MediaType.TEXT_PLAIN)
+        .body(arex.getMessage());
+  }
+
+  @ExceptionHandler(ReportTimeoutException.class)
+  public
+  ResponseEntity<String> timeOut(final ReportTimeoutException rtex) {
+    return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+        .contentType(MediaType.TEXT_PLAIN)
+        .body(rtex.getMessage());
+  }
+
+  @ExceptionHandler(ReportCancelledException.class)
+  public
+  ResponseEntity<String> cancelled(final ReportCancelledException rcex) {
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+        .contentType(MediaType.TEXT_PLAIN)
+        .body(rcex.getMessage());
+  }
+
+  private void validate(final String tenant, final String category, final String identifier,
+                        final ReportSpecification reportSpecification, final ReportRequest reportRequest) {
+    final long start = System.nanoTime();
+    try {
+      reportSpecification.validate(reportRequest);
+    } finally {
+      this.reportingMetrics.recordPhase(tenant, category, identifier, ReportingMetrics.VALIDATE,
+          System.nanoTime() - start);
+    }
+  }
+
+  private ResponseEntity<byte[]> generatePage(final String tenant, final String category, final String identifier,
+                                              final ReportSpecification reportSpecification,
+                                              final ReportRequest reportRequest, final Integer pageIndex,
+                                              final Integer size, final String cursor, final PageCursor pageCursor,
+                                              final String requestId, final Long clientDeadlineNanos,
+                                              final long deadlineNanos, final DeferredResult<?> response) {
+    try {
+      final AtomicBoolean generated = new AtomicBoolean();
+      final ReportPage reportPage = this.reportPageCache.get(category, identifier, reportSpecification,
+          reportRequest, pageIndex, size, cursor, deadlineNanos,
+          () -> {
+            generated.set(true);
+            return this.reportScheduleService
+                .findScheduledPage(category, identifier, reportRequest, pageIndex, size, cursor)
+                .orElseGet(() -> this.generateLive(category, identifier, reportSpecification, reportRequest,
+                    pageIndex, size, pageCursor, requestId, clientDeadlineNanos, response));
+          });
+      this.reportingMetrics.recordCacheLookup(tenant, category, identifier, !generated.get());
+
+      final long serializing = System.nanoTime();
+      final byte[] body = this.objectMapper.writeValueAsBytes(reportPage);
+      this.reportingMetrics.recordPhase(tenant, category, identifier, ReportingMetrics.SERIALIZE,
+          System.nanoTime() - serializing);
+      return ResponseEntity.ok()
+          .contentType(MediaType.APPLICATION_JSON_UTF8)
+          .body(body);
+    } catch (final IllegalArgumentException iaex) {
+      throw ServiceException.badRequest(iaex.getMessage());
+    } catch (final JsonProcessingException jpex) {
+      throw ServiceException.internalError("Could not serialize report {0}.", identifier);
+    }
+  }
+
+  private ReportPage generateLive(final String category, final String identifier,
+                                  final ReportSpecification reportSpecification, final ReportRequest reportRequest,
+                                  final Integer pageIndex, final Integer size, final PageCursor pageCursor,
+                                  final String requestId, final Long clientDeadlineNanos,
+                                  final DeferredResult<?> response) {
+    try (final ReportAdmission.Permit ignored =
+             this.reportAdmission.acquire(TenantContextHolder.checkedGetIdentifier(), category, identifier)) {
+      final ReportPage reportPage = this.reportExecution.execute(requestId, reportSpecification, clientDeadlineNanos,
+          () -> {
+            // checked once the request is registered, a cancel arriving earlier found nothing to cancel
+            if (response.isSetOrExpired()) {
+              throw new ReportCancelledException("Report request was abandoned.");
+            }
+            return reportSpecification.generateReport(reportRequest, pageIndex, size, pageCursor);
+          });
+      reportPage.setCursor(PageCursor.bind(reportPage.getCursor(), category, identifier));
+      return reportPage;
+    }
+  }
+
+  // called back on a container thread, which doesn't carry the tenant of the request any more
+  private void cancelAbandoned(final String tenant, final String runningId) {
+    TenantContextHolder.setIdentifier(tenant);
+    try {
+      this.reportExecution.cancel(runningId);
+    } finally {
+      TenantContextHolder.clear();
+    }
+  }
+
+  // the deadline header counts from the arrival of the request, time spent waiting for admission included
+  private static Long clientDeadline(final Long deadline) {
+    return deadline != null && deadline > 0L
+        ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline)
+        : null;
   }
 }
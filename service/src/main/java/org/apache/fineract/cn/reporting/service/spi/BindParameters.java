@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import org.apache.fineract.cn.reporting.api.v1.domain.QueryParameter;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds the values of a native query. Values taken from the request get their position from the
+ * shape of the request alone, in request order, followed by the cursor keys, limit and offset.
+ * So the same shape always yields the same SQL text, whichever order a query binds them in.
+ */
+public class BindParameters {
+
+  private static final Set<String> EXECUTING_METHODS =
+      new HashSet<>(Arrays.asList("getResultList", "getSingleResult", "executeUpdate"));
+
+  private final List<Object> values = new ArrayList<>();
+  private final IdentityHashMap<QueryParameter, List<Integer>> queryParameterPositions = new IdentityHashMap<>();
+  private final List<Integer> cursorPositions = new ArrayList<>();
+  private final StringBuilder shape = new StringBuilder();
+  private final BitSet usedPositions = new BitSet();
+  private int limitPosition = 0;
+  private int offsetPosition = 0;
+
+  public BindParameters() {
+    super();
+  }
+
+  public static BindParameters of(final ReportRequest reportRequest, final Pagination pagination)
+      throws IllegalArgumentException {
+    final BindParameters bindParameters = new BindParameters();
+
+    reportRequest.getQueryParameters().forEach(queryParameter -> {
+      if (queryParameter.getValue() != null && !queryParameter.getValue().isEmpty()) {
+        final List<Object> queryParameterValues = CriteriaBuilder.toBindValues(queryParameter);
+        final ArrayList<Integer> positions = new ArrayList<>(queryParameterValues.size());
+        queryParameterValues.forEach(value -> positions.add(bindParameters.add(value)));
+        bindParameters.queryParameterPositions.put(queryParameter, positions);
+        bindParameters.shape.append(queryParameter.getName())
+            .append('|').append(queryParameter.getOperator())
+            .append('|').append(positions.size()).append(';');
+      }
+    });
+
+    final PageCursor pageCursor = pagination.getPageCursor();
+    if (pageCursor != null) {
+      pageCursor.getKeys().forEach(key -> bindParameters.cursorPositions.add(bindParameters.add(key)));
+      bindParameters.shape.append("cursor|").append(pageCursor.getKeys().size()).append(';');
+    }
+
+    if (pagination.isPaged()) {
+      bindParameters.limitPosition = bindParameters.add(pagination.getSize() + 1);
+      bindParameters.shape.append("limit;");
+      if (pageCursor == null && pagination.getPageIndex() > 0) {
+        bindParameters.offsetPosition = bindParameters.add(pagination.getSize() * pagination.getPageIndex());
+        bindParameters.shape.append("offset;");
+      }
+    }
+
+    return bindParameters;
+  }
+
+  public String bind(final Object value) {
+    return this.use(this.add(value));
+  }
+
+  /**
+   * Binds all values as one array, so the SQL text stays the same whatever the number of values.
+   * Compare against it with {@code = ANY(...)}.
+   */
+  public String bindArray(final Collection<?> values, final String elementType) {
+    final StringBuilder literal = new StringBuilder("{");
+    values.forEach(value -> {
+      if (literal.length() > 1) {
+        literal.append(',');
+      }
+      literal.append('"')
+          .append(value.toString().replace("\\", "\\\\").replace("\"", "\\\""))
+          .append('"');
+    });
+    literal.append('}');
+    return "CAST(" + this.bind(literal.toString()) + " AS " + elementType + "[])";
+  }
+
+  public List<String> placeholdersOf(final QueryParameter queryParameter) {
+    final List<Integer> positions = this.queryParameterPositions.get(queryParameter);
+    if (positions == null) {
+      throw new IllegalArgumentException("Query parameter " + queryParameter.getName() + " has no value.");
+    }
+    final ArrayList<String> placeholders = new ArrayList<>(positions.size());
+    positions.forEach(position -> placeholders.add(this.use(position)));
+    return placeholders;
+  }
+
+  public List<String> cursorPlaceholders() {
+    final ArrayList<String> placeholders = new ArrayList<>(this.cursorPositions.size());
+    this.cursorPositions.forEach(position -> placeholders.add(this.use(position)));
+    return placeholders;
+  }
+
+  public String limitPlaceholder() {
+    return this.limitPosition > 0 ? this.use(this.limitPosition) : null;
+  }
+
+  public String offsetPlaceholder() {
+    return this.offsetPosition > 0 ? this.use(this.offsetPosition) : null;
+  }
+
+  public String getShape() {
+    return this.shape.toString();
+  }
+
+  public List<Object> getValues() {
+    return Collections.unmodifiableList(this.values);
+  }
+
+  public BitSet getUsedPositions() {
+    return (BitSet) this.usedPositions.clone();
+  }
+
+  public Query createNativeQuery(final EntityManager entityManager, final String query) {
+    return this.createNativeQuery(entityManager, query, this.usedPositions);
+  }
+
+  public Query createNativeQuery(final EntityManager entityManager, final QueryTemplate queryTemplate) {
+    return this.createNativeQuery(entityManager, queryTemplate.getQuery(), queryTemplate.getPositions());
+  }
+
+  private Query createNativeQuery(final EntityManager entityManager, final String query, final BitSet positions) {
+    QueryDeadline.apply(entityManager);
+    final Query nativeQuery = entityManager.createNativeQuery(query);
+    positions.stream().forEach(position -> nativeQuery.setParameter(position, this.values.get(position - 1)));
+
+    final ReportPhases reportPhases = ReportPhases.current();
+    if (reportPhases == null) {
+      return nativeQuery;
+    }
+    reportPhases.queryCreated();
+    return timed(nativeQuery, reportPhases);
+  }
+
+  // times the methods running the query, all others pass through and keep answering the timed query
+  private static Query timed(final Query nativeQuery, final ReportPhases reportPhases) {
+    return (Query) Proxy.newProxyInstance(Query.class.getClassLoader(), new Class<?>[]{Query.class},
+        (proxy, method, args) -> {
+          final boolean executing = EXECUTING_METHODS.contains(method.getName());
+          final long start = System.nanoTime();
+          final Object result;
+          try {
+            result = method.invoke(nativeQuery, args);
+          } catch (final InvocationTargetException itex) {
+            throw itex.getTargetException();
+          }
+          if (executing) {
+            reportPhases.executed(System.nanoTime() - start, result instanceof List ? ((List<?>) result).size() : 1L);
+          }
+          return result == nativeQuery ? proxy : result;
+        });
+  }
+
+  private int add(final Object value) {
+    this.values.add(value);
+    return this.values.size();
+  }
+
+  private String use(final int position) {
+    this.usedPositions.set(position);
+    return "?" + position;
+  }
+}
@@ -19,79 +19,116 @@
 package org.apache.fineract.cn.reporting.service.spi;
 
 import org.apache.fineract.cn.reporting.api.v1.domain.QueryParameter;
-import org.owasp.esapi.ESAPI;
-import org.owasp.esapi.Encoder;
-import org.owasp.esapi.codecs.MySQLCodec;
+import org.apache.fineract.cn.reporting.api.v1.domain.Type;
 import org.springframework.util.StringUtils;
 
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class CriteriaBuilder {
 
-  // https://www.owasp.org/index.php/SQL_Injection_Prevention_Cheat_Sheet
-  public static Encoder ENCODER;
-  public static MySQLCodec MY_SQL_CODEC;
-
-  static {
-    // TODO move this code into bean
-    try {
-      ENCODER = ESAPI.encoder();
-      MY_SQL_CODEC = new MySQLCodec(MySQLCodec.Mode.ANSI);
-    } catch(final Exception e) {
-      System.out.println(e.getMessage());
-    }
-  }
-
   private CriteriaBuilder() {
     super();
   }
 
-  public static String buildCriteria(final String field, final QueryParameter queryParameter) {
+  public static String buildCriteria(final String field, final QueryParameter queryParameter,
+                                     final BindParameters bindParameters) throws IllegalArgumentException {
     final StringBuilder criteria = new StringBuilder(field);
+    final List<String> placeholders = bindParameters.placeholdersOf(queryParameter);
 
     switch (queryParameter.getOperator()) {
       case EQUALS:
-        criteria.append(" = '");
-        criteria.append(CriteriaBuilder.ENCODER.encodeForSQL(CriteriaBuilder.MY_SQL_CODEC, queryParameter.getValue()));
-        criteria.append("'");
+        criteria.append(" = ");
+        criteria.append(placeholders.get(0));
         break;
       case LIKE:
-        criteria.append(" LIKE '%");
-        criteria.append(CriteriaBuilder.ENCODER.encodeForSQL(CriteriaBuilder.MY_SQL_CODEC, queryParameter.getValue()));
-        criteria.append("%'");
+        criteria.append(" LIKE ");
+        criteria.append(placeholders.get(0));
         break;
       case GREATER:
-        criteria.append(" > '");
-        criteria.append(CriteriaBuilder.ENCODER.encodeForSQL(CriteriaBuilder.MY_SQL_CODEC, queryParameter.getValue()));
-        criteria.append("'");
+        criteria.append(" > ");
+        criteria.append(placeholders.get(0));
         break;
       case LESSER:
-        criteria.append(" < '");
-        criteria.append(CriteriaBuilder.ENCODER.encodeForSQL(CriteriaBuilder.MY_SQL_CODEC, queryParameter.getValue()));
-        criteria.append("'");
+        criteria.append(" < ");
+        criteria.append(placeholders.get(0));
         break;
       case IN:
         criteria.append(" in (");
-        final Set<String> strings = StringUtils.commaDelimitedListToSet(queryParameter.getValue());
-        criteria.append(
-            strings
-                .stream()
-                .map(s -> "'" + CriteriaBuilder.ENCODER.encodeForSQL(CriteriaBuilder.MY_SQL_CODEC, s) + "'")
-                .collect(Collectors.joining(","))
-        );
+        criteria.append(placeholders.stream().collect(Collectors.joining(",")));
         criteria.append(")");
         break;
       case BETWEEN:
-        final String[] splitString = queryParameter.getValue().split("\\.\\.");
-        criteria.append(" BETWEEN '");
-        criteria.append(CriteriaBuilder.ENCODER.encodeForSQL(CriteriaBuilder.MY_SQL_CODEC, splitString[0]));
-        criteria.append("' AND '");
-        criteria.append(CriteriaBuilder.ENCODER.encodeForSQL(CriteriaBuilder.MY_SQL_CODEC, splitString[1]));
-        criteria.append("'");
+        criteria.append(" BETWEEN ");
+        criteria.append(placeholders.get(0));
+        criteria.append(" AND ");
+        criteria.append(placeholders.get(1));
         break;
     }
 
     return criteria.toString();
   }
+
+  public static List<Object> toBindValues(final QueryParameter queryParameter) throws IllegalArgumentException {
+    final Type type = queryParameter.getType();
+
+    switch (queryParameter.getOperator()) {
+      case LIKE:
+        return Collections.singletonList("%" + queryParameter.getValue() + "%");
+      case IN:
+        final Set<String> strings = StringUtils.commaDelimitedListToSet(queryParameter.getValue());
+        return strings
+            .stream()
+            .map(s -> CriteriaBuilder.toBindValue(type, s))
+            .collect(Collectors.toList());
+      case BETWEEN:
+        final String[] splitString = queryParameter.getValue().split("\\.\\.");
+        if (splitString.length != 2) {
+          throw new IllegalArgumentException("Invalid range " + queryParameter.getValue() + ".");
+        }
+        return Arrays.asList(
+            CriteriaBuilder.toBindValue(type, splitString[0]),
+            CriteriaBuilder.toBindValue(type, splitString[1])
+        );
+      default:
+        return Collections.singletonList(CriteriaBuilder.toBindValue(type, queryParameter.getValue()));
+    }
+  }
+
+  private static Object toBindValue(final Type type, final String value) throws IllegalArgumentException {
+    if (type == null) {
+      return value;
+    }
+
+    switch (type) {
+      case NUMBER:
+        return new BigDecimal(value.trim());
+      case DATE:
+        // ISO dates and date-times, with or without the UTC designator clients usually send
+        final String date = value.trim();
+        try {
+          if (date.length() <= 11) {
+            return Date.valueOf(LocalDate.parse(date.endsWith("Z") ? date.substring(0, 10) : date));
+          }
+          return date.endsWith("Z")
+              ? Timestamp.valueOf(LocalDateTime.ofInstant(Instant.parse(date), ZoneOffset.UTC))
+              : Timestamp.valueOf(LocalDateTime.parse(date));
+        } catch (final DateTimeException | IndexOutOfBoundsException ex) {
+          throw new IllegalArgumentException("Invalid date " + value + ".");
+        }
+      default:
+        return value;
+    }
+  }
 }
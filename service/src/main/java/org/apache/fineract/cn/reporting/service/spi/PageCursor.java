@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Opaque continuation token carrying the ordering key of the last row of a page,
+ * used to seek to the next page instead of skipping rows with an offset. Cursors handed
+ * to clients are bound to the report that issued them.
+ */
+public class PageCursor {
+
+  private static final Gson GSON = new Gson();
+
+  private final List<Object> keys;
+
+  private PageCursor(final List<Object> keys) {
+    super();
+    this.keys = keys;
+  }
+
+  public static PageCursor of(final Object... keys) {
+    return new PageCursor(Collections.unmodifiableList(Arrays.asList(keys)));
+  }
+
+  public static PageCursor decode(final String cursor) throws IllegalArgumentException {
+    if (cursor == null || cursor.isEmpty()) {
+      return null;
+    }
+
+    try {
+      final String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      final JsonArray jsonKeys = GSON.fromJson(json, JsonArray.class);
+      if (jsonKeys == null || jsonKeys.size() == 0) {
+        throw new IllegalArgumentException("Invalid cursor " + cursor + ".");
+      }
+
+      // numeric keys keep their type, so they can be bound against numeric ordering columns
+      final ArrayList<Object> keys = new ArrayList<>(jsonKeys.size());
+      for (final JsonElement jsonKey : jsonKeys) {
+        if (!jsonKey.isJsonPrimitive()) {
+          throw new IllegalArgumentException("Invalid cursor " + cursor + ".");
+        }
+        final JsonPrimitive primitive = jsonKey.getAsJsonPrimitive();
+        keys.add(primitive.isNumber() ? PageCursor.toNumber(primitive.getAsBigDecimal()) : primitive.getAsString());
+      }
+      return new PageCursor(Collections.unmodifiableList(keys));
+    } catch (final IllegalArgumentException | JsonParseException ex) {
+      throw new IllegalArgumentException("Invalid cursor " + cursor + ".");
+    }
+  }
+
+  /**
+   * Binds an encoded cursor to the report that issued it, only that report decodes it again.
+   */
+  public static String bind(final String cursor, final String category, final String identifier) {
+    if (cursor == null) {
+      return null;
+    }
+
+    final JsonObject boundCursor = new JsonObject();
+    boundCursor.addProperty("report", category + "/" + identifier);
+    boundCursor.addProperty("keys", cursor);
+    return PageCursor.encode(GSON.toJson(boundCursor));
+  }
+
+  public static PageCursor decode(final String cursor, final String category, final String identifier)
+      throws IllegalArgumentException {
+    if (cursor == null || cursor.isEmpty()) {
+      return null;
+    }
+
+    final String report;
+    final String keys;
+    try {
+      final String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      final JsonObject boundCursor = GSON.fromJson(json, JsonObject.class);
+      report = boundCursor.get("report").getAsString();
+      keys = boundCursor.get("keys").getAsString();
+    } catch (final RuntimeException ex) {
+      throw new IllegalArgumentException("Invalid cursor " + cursor + ".");
+    }
+
+    if (!report.equals(category + "/" + identifier)) {
+      throw new IllegalArgumentException("Cursor was not issued by report " + category + " " + identifier + ".");
+    }
+    return PageCursor.decode(keys);
+  }
+
+  public String encode() {
+    return PageCursor.encode(GSON.toJson(this.keys));
+  }
+
+  public List<Object> getKeys() {
+    return this.keys;
+  }
+
+  public String buildCriteria(final BindParameters bindParameters, final String... columns)
+      throws IllegalArgumentException {
+    if (columns.length != this.keys.size()) {
+      throw new IllegalArgumentException("Cursor does not match the ordering of this report.");
+    }
+
+    final String placeholders = String.join(", ", bindParameters.cursorPlaceholders());
+
+    if (columns.length == 1) {
+      return columns[0] + " > " + placeholders;
+    } else {
+      return "(" + String.join(", ", columns) + ") > (" + placeholders + ")";
+    }
+  }
+
+  private static String encode(final String json) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Object toNumber(final BigDecimal number) {
+    try {
+      return number.longValueExact();
+    } catch (final ArithmeticException aex) {
+      return number;
+    }
+  }
+}
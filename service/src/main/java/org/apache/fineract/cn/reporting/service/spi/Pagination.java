@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Fetches one row more than the requested page size, so whether another page exists is known
+ * from the page query itself instead of running the query for the next page again.
+ */
+public class Pagination {
+
+  private final int pageIndex;
+  private final int size;
+  private final PageCursor pageCursor;
+
+  private Pagination(final int pageIndex, final int size, final PageCursor pageCursor) {
+    super();
+    this.pageIndex = pageIndex;
+    this.size = size;
+    this.pageCursor = pageCursor;
+  }
+
+  public static Pagination unpaged() {
+    return new Pagination(0, -1, null);
+  }
+
+  public static Pagination of(final int pageIndex, final int size, final PageCursor pageCursor) {
+    return new Pagination(pageIndex, size, pageCursor);
+  }
+
+  public int getPageIndex() {
+    return this.pageIndex;
+  }
+
+  public int getSize() {
+    return this.size;
+  }
+
+  public PageCursor getPageCursor() {
+    return this.pageCursor;
+  }
+
+  public boolean isPaged() {
+    return this.size >= 0;
+  }
+
+  public void appendLimit(final StringBuilder query, final BindParameters bindParameters) {
+    if (!this.isPaged()) {
+      return;
+    }
+    query.append(" LIMIT ");
+    query.append(bindParameters.limitPlaceholder());
+    final String offsetPlaceholder = bindParameters.offsetPlaceholder();
+    if (offsetPlaceholder != null) {
+      query.append(" OFFSET ");
+      query.append(offsetPlaceholder);
+    }
+  }
+
+  public <T> List<T> apply(final ReportPage reportPage, final List<T> results, final Function<T, PageCursor> cursorMapper) {
+    if (!this.isPaged()) {
+      reportPage.setHasMore(false);
+      return results;
+    }
+
+    if (results.size() <= this.size) {
+      reportPage.setHasMore(false);
+      return results;
+    }
+
+    final List<T> page = new ArrayList<>(results.subList(0, this.size));
+    reportPage.setHasMore(true);
+    if (!page.isEmpty()) {
+      reportPage.setCursor(cursorMapper.apply(page.get(page.size() - 1)).encode());
+    }
+    return page;
+  }
+}
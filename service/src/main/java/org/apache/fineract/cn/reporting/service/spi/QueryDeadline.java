@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.QueryTimeoutException;
+import java.sql.Connection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * The point in time by which all queries of the report running on this thread have to finish.
+ * What is left of it is set as the PostgreSQL statement timeout of each connection working on the
+ * report, once when the connection starts to, and again by {@link BindParameters} only when so much
+ * time has passed since that a statement could overrun the deadline noticeably. A report issuing
+ * several queries therefore cannot exceed it by much in total. Only takes effect inside a
+ * transaction, since the timeout is set local to it. The backends working
+ * on the report are attached to it while they do, so all of them can be cancelled at once.
+ */
+public class QueryDeadline {
+
+  private static final ThreadLocal<QueryDeadline> CURRENT = new ThreadLocal<>();
+  // a timeout set this long ago lets a statement starting now overrun the deadline by as much
+  private static final long MINIMUM_OVERRUN_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+  private final long deadlineNanos;
+  private final HashSet<Integer> backendPids = new HashSet<>();
+  private final IdentityHashMap<Connection, Long> appliedAt = new IdentityHashMap<>();
+  private volatile boolean cancelled;
+
+  public QueryDeadline(final long deadlineNanos) {
+    super();
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  public static void set(final QueryDeadline queryDeadline) {
+    CURRENT.set(queryDeadline);
+  }
+
+  public static void clear() {
+    CURRENT.remove();
+  }
+
+  public static QueryDeadline current() {
+    return CURRENT.get();
+  }
+
+  public synchronized void attach(final int backendPid) {
+    this.backendPids.add(backendPid);
+  }
+
+  // a backend has to be detached before its connection goes back to the pool, cancelling it later would hit somebody else
+  public synchronized void detach(final int backendPid) {
+    this.backendPids.remove(backendPid);
+  }
+
+  public synchronized void cancel(final IntConsumer canceller) {
+    this.cancelled = true;
+    this.backendPids.forEach(canceller::accept);
+  }
+
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Sets what is left of the deadline of the report running on this thread as statement timeout of
+   * the connection of the entity manager, unless it was set recently enough. Binds the connection
+   * to the current transaction if it wasn't yet.
+   */
+  public static void apply(final EntityManager entityManager) {
+    final QueryDeadline queryDeadline = CURRENT.get();
+    if (queryDeadline == null) {
+      return;
+    }
+    if (queryDeadline.cancelled) {
+      throw new QueryTimeoutException("Report request was cancelled.");
+    }
+    final long now = System.nanoTime();
+    final long remainingNanos = queryDeadline.deadlineNanos - now;
+    if (TimeUnit.NANOSECONDS.toMillis(remainingNanos) <= 0L) {
+      throw new QueryTimeoutException("Report deadline exceeded.");
+    }
+    final Connection connection = entityManager.unwrap(Session.class).doReturningWork(bound -> bound);
+    if (!queryDeadline.isDue(connection, now)) {
+      return;
+    }
+    entityManager.createNativeQuery("SELECT set_config('statement_timeout', ?1, true)")
+        .setParameter(1, Long.toString(TimeUnit.NANOSECONDS.toMillis(remainingNanos)))
+        .getSingleResult();
+  }
+
+  // tolerates an overrun of a tenth of the timeout left when it was last set, but at least a second
+  private synchronized boolean isDue(final Connection connection, final long now) {
+    final Long lastApplied = this.appliedAt.get(connection);
+    if (lastApplied != null
+        && now - lastApplied <= Math.max(MINIMUM_OVERRUN_NANOS, (this.deadlineNanos - lastApplied) / 10L)) {
+      return false;
+    }
+    this.appliedAt.put(connection, now);
+    return true;
+  }
+}
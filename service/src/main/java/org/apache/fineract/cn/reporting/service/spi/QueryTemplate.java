@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import java.util.BitSet;
+
+/**
+ * Final SQL of a report query with its bind placeholders, together with the number of columns
+ * each section of a result row has, so neither is rebuilt for a request of the same shape.
+ */
+public class QueryTemplate {
+
+  private final String query;
+  private final int[] columnCounts;
+  private BitSet positions = new BitSet();
+
+  public QueryTemplate(final String query, final int... columnCounts) {
+    super();
+    this.query = query;
+    this.columnCounts = columnCounts;
+  }
+
+  public String getQuery() {
+    return this.query;
+  }
+
+  public int getColumnCount(final int section) {
+    return this.columnCounts[section];
+  }
+
+  BitSet getPositions() {
+    return this.positions;
+  }
+
+  void setPositions(final BitSet positions) {
+    this.positions = positions;
+  }
+}
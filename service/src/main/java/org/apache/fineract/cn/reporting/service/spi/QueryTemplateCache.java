@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import org.apache.fineract.cn.reporting.api.v1.domain.DisplayableField;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded least recently used cache of compiled report queries, keyed by the requested
+ * displayable fields and the shape of the bound values, never by the values themselves.
+ */
+public class QueryTemplateCache {
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+  private final LinkedHashMap<String, QueryTemplate> queryTemplates;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  public QueryTemplateCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  public QueryTemplateCache(final int maximumSize) {
+    super();
+    this.queryTemplates = new LinkedHashMap<String, QueryTemplate>(16, 0.75F, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, QueryTemplate> eldest) {
+        return this.size() > maximumSize;
+      }
+    };
+  }
+
+  public QueryTemplate get(final ReportRequest reportRequest, final BindParameters bindParameters,
+                           final Supplier<QueryTemplate> compiler) {
+    final StringBuilder key = new StringBuilder();
+    reportRequest.getDisplayableFields()
+        .stream()
+        .map(DisplayableField::getName)
+        .forEach(name -> key.append(name).append(';'));
+    key.append('#').append(bindParameters.getShape());
+    final String queryTemplateKey = key.toString();
+
+    synchronized (this.queryTemplates) {
+      final QueryTemplate queryTemplate = this.queryTemplates.get(queryTemplateKey);
+      if (queryTemplate != null) {
+        this.hitCount.incrementAndGet();
+        this.recordLookup(true);
+        return queryTemplate;
+      }
+    }
+
+    this.missCount.incrementAndGet();
+    this.recordLookup(false);
+    final QueryTemplate queryTemplate = compiler.get();
+    queryTemplate.setPositions(bindParameters.getUsedPositions());
+    synchronized (this.queryTemplates) {
+      this.queryTemplates.put(queryTemplateKey, queryTemplate);
+    }
+    return queryTemplate;
+  }
+
+  private void recordLookup(final boolean hit) {
+    final ReportPhases reportPhases = ReportPhases.current();
+    if (reportPhases != null) {
+      reportPhases.templateLookedUp(hit);
+    }
+  }
+
+  public long getHitCount() {
+    return this.hitCount.get();
+  }
+
+  public long getMissCount() {
+    return this.missCount.get();
+  }
+
+  public int size() {
+    synchronized (this.queryTemplates) {
+      return this.queryTemplates.size();
+    }
+  }
+}
@@ -33,4 +33,13 @@ import java.lang.annotation.Target;
 public @interface Report {
   String category();
   String identifier();
+  // seconds a generated page may be served again to the same tenant, 0 disables caching
+  long timeToLive() default 0L;
+  // seconds all queries of a single page may take together, 0 uses reporting.query.timeout
+  long timeout() default 0L;
+  // seconds the read replica may lag behind for this report, 0 always reads the primary,
+  // a negative value uses reporting.replica.maximumStaleness
+  long maximumStaleness() default -1L;
+  // connection bulkhead serving the report's queries, sized with reporting.bulkheads
+  ReportClass reportClass() default ReportClass.INTERACTIVE;
 }
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import org.apache.fineract.cn.reporting.api.v1.domain.AutoCompleteResource;
+import org.apache.fineract.cn.reporting.api.v1.domain.DisplayableField;
+import org.apache.fineract.cn.reporting.api.v1.domain.QueryParameter;
+import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
+import org.apache.fineract.cn.reporting.api.v1.domain.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ReportDefinitionBuilder {
+
+  private final String identifier;
+  private final String name;
+  private String description;
+  private List<QueryParameter> queryParameters = Collections.emptyList();
+  private List<DisplayableField> displayableFields = Collections.emptyList();
+
+  private ReportDefinitionBuilder(final String identifier, final String name) {
+    super();
+    this.identifier = identifier;
+    this.name = name;
+  }
+
+  public static ReportDefinitionBuilder create(final String identifier, final String name) {
+    return new ReportDefinitionBuilder(identifier, name);
+  }
+
+  public ReportDefinitionBuilder description(final String description) {
+    this.description = description;
+    return this;
+  }
+
+  public ReportDefinitionBuilder queryParameters(final List<QueryParameter> queryParameters) {
+    this.queryParameters = queryParameters;
+    return this;
+  }
+
+  public ReportDefinitionBuilder displayableFields(final List<DisplayableField> displayableFields) {
+    this.displayableFields = displayableFields;
+    return this;
+  }
+
+  /**
+   * Report definitions are built once per specification and shared by every request, so the
+   * returned definition rejects any modification. Query parameters and displayable fields are
+   * copied as well, so neither the definition nor the objects it was built from leak changes.
+   */
+  public ReportDefinition build() {
+    final ArrayList<QueryParameter> queryParameterCopies = new ArrayList<>(this.queryParameters.size());
+    this.queryParameters.forEach(queryParameter ->
+        queryParameterCopies.add(new ImmutableQueryParameter(queryParameter)));
+    final ArrayList<DisplayableField> displayableFieldCopies = new ArrayList<>(this.displayableFields.size());
+    this.displayableFields.forEach(displayableField ->
+        displayableFieldCopies.add(new ImmutableDisplayableField(displayableField)));
+
+    return new ImmutableReportDefinition(
+        this.identifier,
+        this.name,
+        this.description,
+        Collections.unmodifiableList(queryParameterCopies),
+        Collections.unmodifiableList(displayableFieldCopies)
+    );
+  }
+
+  private static class ImmutableReportDefinition extends ReportDefinition {
+
+    private ImmutableReportDefinition(final String identifier, final String name, final String description,
+                                      final List<QueryParameter> queryParameters,
+                                      final List<DisplayableField> displayableFields) {
+      super();
+      super.setIdentifier(identifier);
+      super.setName(name);
+      super.setDescription(description);
+      super.setQueryParameters(queryParameters);
+      super.setDisplayableFields(displayableFields);
+    }
+
+    @Override
+    public void setIdentifier(final String identifier) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setName(final String name) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setDescription(final String description) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setQueryParameters(final List<QueryParameter> queryParameters) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setDisplayableFields(final List<DisplayableField> displayableFields) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+  }
+
+  private static class ImmutableQueryParameter extends QueryParameter {
+
+    private ImmutableQueryParameter(final QueryParameter queryParameter) {
+      super();
+      super.setName(queryParameter.getName());
+      super.setType(queryParameter.getType());
+      super.setOperator(queryParameter.getOperator());
+      super.setValue(queryParameter.getValue());
+      super.setMandatory(queryParameter.getMandatory());
+      if (queryParameter.getAutoCompleteResource() != null) {
+        super.setAutoCompleteResource(new ImmutableAutoCompleteResource(queryParameter.getAutoCompleteResource()));
+      }
+    }
+
+    @Override
+    public void setName(final String name) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setType(final Type type) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setOperator(final Operator operator) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setValue(final String value) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setMandatory(final Boolean mandatory) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setAutoCompleteResource(final AutoCompleteResource autoCompleteResource) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+  }
+
+  private static class ImmutableAutoCompleteResource extends AutoCompleteResource {
+
+    private ImmutableAutoCompleteResource(final AutoCompleteResource autoCompleteResource) {
+      super();
+      super.setPath(autoCompleteResource.getPath());
+      if (autoCompleteResource.getTerms() != null) {
+        super.setTerms(Collections.unmodifiableList(new ArrayList<>(autoCompleteResource.getTerms())));
+      }
+    }
+
+    @Override
+    public void setPath(final String path) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setTerms(final List<String> terms) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+  }
+
+  private static class ImmutableDisplayableField extends DisplayableField {
+
+    private ImmutableDisplayableField(final DisplayableField displayableField) {
+      super();
+      super.setName(displayableField.getName());
+      super.setType(displayableField.getType());
+      super.setMandatory(displayableField.getMandatory());
+    }
+
+    @Override
+    public void setName(final String name) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setType(final Type type) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+
+    @Override
+    public void setMandatory(final Boolean mandatory) {
+      throw new UnsupportedOperationException("Report definitions are immutable.");
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+/**
+ * Splits the time a report spends on this thread into its phases, using the queries it issues as
+ * boundaries: time until a query is created goes to building SQL, time the database takes to
+ * answer to executing, and time after an answer to mapping rows. Streamed reports also time the
+ * writing of each row. Recorded by {@link BindParameters}, {@link ResultStreamer} and
+ * {@link QueryTemplateCache}, so specifications need not take part.
+ */
+public class ReportPhases {
+
+  private static final ThreadLocal<ReportPhases> CURRENT = new ThreadLocal<>();
+
+  private long mark;
+  private boolean answered;
+  private long buildNanos;
+  private long executeNanos;
+  private long mapNanos;
+  private long serializeNanos;
+  private long queryCount;
+  private long rowCount;
+  private long templateHitCount;
+  private long templateMissCount;
+
+  private ReportPhases() {
+    super();
+    this.mark = System.nanoTime();
+  }
+
+  public static ReportPhases start() {
+    final ReportPhases reportPhases = new ReportPhases();
+    CURRENT.set(reportPhases);
+    return reportPhases;
+  }
+
+  public static void set(final ReportPhases reportPhases) {
+    if (reportPhases != null) {
+      CURRENT.set(reportPhases);
+    } else {
+      CURRENT.remove();
+    }
+  }
+
+  public static void clear() {
+    CURRENT.remove();
+  }
+
+  public static ReportPhases current() {
+    return CURRENT.get();
+  }
+
+  public void finish() {
+    this.boundary();
+  }
+
+  // sections ran on other threads while this one waited, their phases add up beyond the time waited
+  public void merge(final Iterable<ReportPhases> sectionPhases, final long waitedNanos) {
+    this.boundary();
+    if (this.answered) {
+      this.mapNanos -= waitedNanos;
+    } else {
+      this.buildNanos -= waitedNanos;
+    }
+    sectionPhases.forEach(section -> {
+      this.buildNanos += section.buildNanos;
+      this.executeNanos += section.executeNanos;
+      this.mapNanos += section.mapNanos;
+      this.serializeNanos += section.serializeNanos;
+      this.queryCount += section.queryCount;
+      this.rowCount += section.rowCount;
+      this.templateHitCount += section.templateHitCount;
+      this.templateMissCount += section.templateMissCount;
+    });
+  }
+
+  void queryCreated() {
+    this.boundary();
+    this.answered = false;
+    this.queryCount++;
+  }
+
+  void executed(final long nanos, final long rows) {
+    this.boundary();
+    // the query ran inside the segment just closed, which is not building SQL
+    this.buildNanos -= nanos;
+    this.executeNanos += nanos;
+    this.rowCount += rows;
+    this.answered = true;
+  }
+
+  void streamed(final long executeNanos, final long mapNanos, final long serializeNanos, final long rows) {
+    this.boundary();
+    this.buildNanos -= executeNanos + mapNanos + serializeNanos;
+    this.executeNanos += executeNanos;
+    this.mapNanos += mapNanos;
+    this.serializeNanos += serializeNanos;
+    this.rowCount += rows;
+    this.answered = true;
+  }
+
+  void fetched(final long nanos) {
+    this.boundary();
+    this.reclassify(nanos);
+    this.executeNanos += nanos;
+    this.answered = true;
+  }
+
+  void serialized(final long nanos) {
+    this.boundary();
+    this.reclassify(nanos);
+    this.serializeNanos += nanos;
+    this.rowCount++;
+  }
+
+  void templateLookedUp(final boolean hit) {
+    if (hit) {
+      this.templateHitCount++;
+    } else {
+      this.templateMissCount++;
+    }
+  }
+
+  // the time passed inside the segment just closed, which counted it as building or mapping
+  private void reclassify(final long nanos) {
+    if (this.answered) {
+      this.mapNanos -= nanos;
+    } else {
+      this.buildNanos -= nanos;
+    }
+  }
+
+  private void boundary() {
+    final long now = System.nanoTime();
+    if (this.answered) {
+      this.mapNanos += now - this.mark;
+    } else {
+      this.buildNanos += now - this.mark;
+    }
+    this.mark = now;
+  }
+
+  public long getBuildNanos() {
+    return this.buildNanos;
+  }
+
+  public long getExecuteNanos() {
+    return this.executeNanos;
+  }
+
+  public long getMapNanos() {
+    return this.mapNanos;
+  }
+
+  public long getSerializeNanos() {
+    return this.serializeNanos;
+  }
+
+  public long getQueryCount() {
+    return this.queryCount;
+  }
+
+  public long getRowCount() {
+    return this.rowCount;
+  }
+
+  public long getTemplateHitCount() {
+    return this.templateHitCount;
+  }
+
+  public long getTemplateMissCount() {
+    return this.templateMissCount;
+  }
+}
@@ -21,12 +21,44 @@ package org.apache.fineract.cn.reporting.service.spi;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportDefinition;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportPage;
 import org.apache.fineract.cn.reporting.api.v1.domain.ReportRequest;
+import org.apache.fineract.cn.reporting.api.v1.domain.Row;
+
+import java.io.IOException;
 
 public interface ReportSpecification {
 
   ReportDefinition getReportDefinition();
 
-  ReportPage generateReport(final ReportRequest reportRequest, int pageIndex, int size);
+  /**
+   * Generates the page at the given index, callers without a cursor may keep using this one.
+   */
+  default ReportPage generateReport(final ReportRequest reportRequest, int pageIndex, int size) {
+    return this.generateReport(reportRequest, pageIndex, size, null);
+  }
+
+  /**
+   * Generates the page following the given cursor, or the page at the given index without one.
+   * Specifications without keyset pagination reject a cursor with an {@link IllegalArgumentException}.
+   */
+  ReportPage generateReport(final ReportRequest reportRequest, int pageIndex, int size, final PageCursor pageCursor);
 
   void validate(final ReportRequest reportRequest) throws IllegalArgumentException;
+
+  /**
+   * Writes all rows of the report to the given sink. Walks the report page by page unless a
+   * specification streams its query directly, so at most one page is held in memory.
+   */
+  default void streamReport(final ReportRequest reportRequest, final RowSink rowSink) throws IOException {
+    int pageIndex = 0;
+    PageCursor pageCursor = null;
+    ReportPage reportPage;
+    do {
+      reportPage = this.generateReport(reportRequest, pageIndex, ResultStreamer.FETCH_SIZE, pageCursor);
+      for (final Row row : reportPage.getRows()) {
+        rowSink.write(row);
+      }
+      pageIndex++;
+      pageCursor = PageCursor.decode(reportPage.getCursor());
+    } while (reportPage.isHasMore());
+  }
 }
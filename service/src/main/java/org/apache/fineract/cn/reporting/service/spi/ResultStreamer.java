@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.fineract.cn.reporting.service.spi;
+
+import org.apache.fineract.cn.reporting.api.v1.domain.Row;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * Runs a native query on a forward only JDBC cursor and hands each result to a sink as soon as it
+ * is read, so only one fetch of rows is held in memory. PostgreSQL only honors the fetch size
+ * inside a transaction, callers are expected to open one.
+ */
+public class ResultStreamer {
+
+  public static final int FETCH_SIZE = 500;
+
+  private ResultStreamer() {
+    super();
+  }
+
+  public static void stream(final EntityManager entityManager, final QueryTemplate queryTemplate,
+                            final BindParameters bindParameters, final Function<Object, Row> rowMapper,
+                            final RowSink rowSink) throws IOException {
+    final org.hibernate.Query query = bindParameters.createNativeQuery(entityManager, queryTemplate)
+        .unwrap(org.hibernate.Query.class)
+        .setFetchSize(FETCH_SIZE)
+        .setReadOnly(true);
+    final long opening = System.nanoTime();
+    final ScrollableResults scrollableResults = query.scroll(ScrollMode.FORWARD_ONLY);
+
+    final ReportPhases reportPhases = ReportPhases.current();
+    long executeNanos = System.nanoTime() - opening;
+    long mapNanos = 0L;
+    long serializeNanos = 0L;
+    long rows = 0L;
+    try {
+      long start = System.nanoTime();
+      while (scrollableResults.next()) {
+        final Object[] resultValues = scrollableResults.get();
+        final long fetched = System.nanoTime();
+        // keep the shape of getResultList, which returns single columns unwrapped
+        final Row row = rowMapper.apply(resultValues.length == 1 ? resultValues[0] : resultValues);
+        final long mapped = System.nanoTime();
+        rowSink.write(row);
+        final long written = System.nanoTime();
+
+        executeNanos += fetched - start;
+        mapNanos += mapped - fetched;
+        serializeNanos += written - mapped;
+        rows++;
+        start = written;
+      }
+    } finally {
+      scrollableResults.close();
+      if (reportPhases != null) {
+        reportPhases.streamed(executeNanos, mapNanos, serializeNanos, rows);
+      }
+    }
+  }
+
+  /**
+   * Like {@link #stream(EntityManager, QueryTemplate, BindParameters, Function, RowSink)}, for reports
+   * folding several results into one row or completing rows with queries of their own. The handler
+   * is given every result along with the sink to write finished rows to, and is finished once the
+   * cursor is closed to write the rows it still holds.
+   */
+  public static void scroll(final EntityManager entityManager, final QueryTemplate queryTemplate,
+                            final BindParameters bindParameters, final ResultHandler resultHandler,
+                            final RowSink rowSink) throws IOException {
+    final org.hibernate.Query query = bindParameters.createNativeQuery(entityManager, queryTemplate)
+        .unwrap(org.hibernate.Query.class)
+        .setFetchSize(FETCH_SIZE)
+        .setReadOnly(true);
+
+    // the queries of the handler account for themselves, so phases are told of every step as it happens
+    final ReportPhases reportPhases = ReportPhases.current();
+    final RowSink timedSink = reportPhases == null ? rowSink : row -> {
+      final long writing = System.nanoTime();
+      rowSink.write(row);
+      reportPhases.serialized(System.nanoTime() - writing);
+    };
+
+    long start = System.nanoTime();
+    final ScrollableResults scrollableResults = query.scroll(ScrollMode.FORWARD_ONLY);
+    try {
+      while (scrollableResults.next()) {
+        final Object[] resultValues = scrollableResults.get();
+        if (reportPhases != null) {
+          reportPhases.fetched(System.nanoTime() - start);
+        }
+        resultHandler.handle(resultValues.length == 1 ? resultValues[0] : resultValues, timedSink);
+        start = System.nanoTime();
+      }
+    } finally {
+      scrollableResults.close();
+    }
+    resultHandler.finish(timedSink);
+  }
+
+  public interface ResultHandler {
+
+    void handle(final Object result, final RowSink rowSink) throws IOException;
+
+    default void finish(final RowSink rowSink) throws IOException {
+    }
+  }
+}
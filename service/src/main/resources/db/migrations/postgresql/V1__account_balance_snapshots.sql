@@ -0,0 +1,30 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements.  See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership.  The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License.  You may obtain a copy of the License at
+--
+--   http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied.  See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+CREATE TABLE reporting_account_balances (
+  id                 BIGSERIAL      NOT NULL,
+  period_end         DATE           NOT NULL,
+  account_identifier VARCHAR(34)    NOT NULL,
+  account_name       VARCHAR(256)   NOT NULL,
+  account_type       VARCHAR(32)    NOT NULL,
+  balance            NUMERIC(15, 5) NOT NULL,
+  captured_on        TIMESTAMP(3)   NOT NULL,
+  CONSTRAINT reporting_account_balances_pk PRIMARY KEY (id),
+  CONSTRAINT reporting_account_balances_uq UNIQUE (period_end, account_identifier)
+);
@@ -0,0 +1,37 @@
+--
+-- Licensed to the Apache Software Foundation (ASF) under one
+-- or more contributor license agreements.  See the NOTICE file
+-- distributed with this work for additional information
+-- regarding copyright ownership.  The ASF licenses this file
+-- to you under the Apache License, Version 2.0 (the
+-- "License"); you may not use this file except in compliance
+-- with the License.  You may obtain a copy of the License at
+--
+--   http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an
+-- "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+-- KIND, either express or implied.  See the License for the
+-- specific language governing permissions and limitations
+-- under the License.
+--
+
+CREATE TABLE reporting_schedules (
+  id                  BIGSERIAL     NOT NULL,
+  identifier          VARCHAR(32)   NOT NULL,
+  category            VARCHAR(256)  NOT NULL,
+  report_identifier   VARCHAR(256)  NOT NULL,
+  cron_expression     VARCHAR(256)  NOT NULL,
+  request_key         TEXT          NOT NULL,
+  report_request      TEXT          NOT NULL,
+  page_size           INTEGER       NOT NULL,
+  last_run_on         TIMESTAMP(3)  NULL,
+  last_job_identifier VARCHAR(36)   NULL,
+  created_by          VARCHAR(32)   NOT NULL,
+  created_on          TIMESTAMP(3)  NOT NULL,
+  CONSTRAINT reporting_schedules_pk PRIMARY KEY (id),
+  CONSTRAINT reporting_schedules_identifier_uq UNIQUE (identifier)
+);
+
+CREATE INDEX reporting_schedules_request_idx ON reporting_schedules (category, report_identifier, page_size);